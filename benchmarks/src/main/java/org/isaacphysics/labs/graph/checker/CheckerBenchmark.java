@@ -0,0 +1,64 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/**
+ * Full checks with Checker.test. Answers are compiled once and cached by Checker, as in the servlet, so these measure
+ * checking user's graph against an answer already compiled.
+ */
+@State(Scope.Benchmark)
+public class CheckerBenchmark {
+
+    private String target;
+    private String test;
+    private String[][] cases;
+
+    @Setup
+    public void setUp() throws IOException {
+        target = Fixtures.json("target.json");
+        test = Fixtures.json("test.json");
+        cases = Fixtures.testCases();
+    }
+
+    @Benchmark
+    public String fixture() throws CheckerException, ParseException {
+        return Checker.test(target, test);
+    }
+
+    /**
+     * check every case of checkerTestcase.txt that parses, which is all 13 of them. Each is graded to a verdict, right
+     * or wrong; none is rejected.
+     * @param blackhole consumes results
+     * @throws CheckerException thrown when a case cannot be checked
+     * @throws ParseException thrown when a case cannot be parsed
+     */
+    @Benchmark
+    public void testCases(final Blackhole blackhole) throws CheckerException, ParseException {
+        for (String[] pair : cases) {
+            blackhole.consume(Checker.test(pair[0], pair[1]));
+        }
+    }
+}
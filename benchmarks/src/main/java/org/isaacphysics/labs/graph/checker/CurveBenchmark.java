@@ -0,0 +1,74 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splitting the curves of a graph into sections, and normalising the sections, as Checker does for user's graph.
+ */
+@State(Scope.Benchmark)
+public class CurveBenchmark {
+
+    @Param({"target.json", "test.json"})
+    private String fixture;
+
+    private Curve[] curves;
+    private Section[] sections;
+
+    @Setup
+    public void setUp() throws IOException, CheckerException, ParseException {
+        curves = Parser.parseGraph(Fixtures.json(fixture)).getCurves();
+        List<Section> all = new ArrayList<>();
+        for (Curve curve : curves) {
+            all.addAll(Arrays.asList(Checker.splitCurve(curve)));
+        }
+        sections = all.toArray(new Section[all.size()]);
+    }
+
+    @Benchmark
+    public void splitCurve(final Blackhole blackhole) {
+        for (Curve curve : curves) {
+            blackhole.consume(Checker.splitCurve(curve));
+        }
+    }
+
+    @Benchmark
+    public void normaliseShape(final Blackhole blackhole) {
+        for (Section section : sections) {
+            blackhole.consume(Checker.normaliseShape(section));
+        }
+    }
+
+    @Benchmark
+    public void normalisePosition(final Blackhole blackhole) {
+        for (Curve curve : curves) {
+            blackhole.consume(Checker.normalisePosition(curve.getSection()));
+        }
+    }
+}
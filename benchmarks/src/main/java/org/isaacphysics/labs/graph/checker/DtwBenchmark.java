@@ -0,0 +1,69 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * DTW between two sections of the same length, over a sweep of lengths. The sections are a sine wave and the same wave
+ * shifted and stretched slightly, so that the warping path is not the diagonal.
+ */
+@State(Scope.Benchmark)
+public class DtwBenchmark {
+
+    @Param({"16", "64", "256", "1024"})
+    private int length;
+
+    private Section trusted;
+    private Section untrusted;
+
+    @Setup
+    public void setUp() {
+        trusted = wave(length, 0, 1);
+        untrusted = wave(length, 0.1, 1.05);
+    }
+
+    /**
+     * @param n number of points
+     * @param phase phase shift of the wave
+     * @param stretch horizontal stretch of the wave
+     * @return points of the wave over [-1, 1]
+     */
+    private static Section wave(final int n, final double phase, final double stretch) {
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = -1 + 2.0 * i / (n - 1);
+            ys[i] = Math.sin(Math.PI * (xs[i] * stretch + phase));
+        }
+        return new Section(xs, ys);
+    }
+
+    @Benchmark
+    public double error() {
+        return Dtw.error(trusted, untrusted);
+    }
+
+    @Benchmark
+    public double errorWithThreshold() {
+        return Dtw.error(trusted, untrusted, 0.1);
+    }
+}
@@ -0,0 +1,102 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * The graphs the benchmarks run on: the JSON files in src/main/json, and the cases in checkerTestcase.txt.
+ */
+final class Fixtures {
+
+    /**
+     * Name of the system property that points at the root of the checker project. By default it is the parent of the
+     * working directory, as when the benchmarks are run from the benchmarks module.
+     */
+    static final String ROOT_PROPERTY = "isaac.graphChecker.root";
+
+    private static final String JSON_DIR = "src/main/json";
+    private static final String TEST_CASES = "src/test/java/org/isaacphysics/labs/graph/checker/checkerTestcase.txt";
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return the root of the checker project
+     */
+    static File root() {
+        return new File(System.getProperty(ROOT_PROPERTY, ".."));
+    }
+
+    /**
+     * read a JSON file of src/main/json.
+     * @param name name of the file, such as 'target.json'
+     * @return content of the file
+     * @throws IOException thrown when the file cannot be read
+     */
+    static String json(final String name) throws IOException {
+        return WholeFileReader.readFile(new File(new File(root(), JSON_DIR), name).getPath()).trim();
+    }
+
+    /**
+     * read the answer and user's graph of every case in checkerTestcase.txt. Each case is six lines: a description,
+     * the answer, user's graph, the expected result, the expected errCause and an empty line. Cases with a graph that
+     * does not parse are left out, so that the benchmarks measure checking rather than rejecting; all 13 cases of the
+     * file parse at present.
+     * @return pairs of answer and user's graph
+     * @throws IOException thrown when the file cannot be read
+     */
+    static String[][] testCases() throws IOException {
+        ArrayList<String[]> cases = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(new File(root(), TEST_CASES)))) {
+            while (true) {
+                br.readLine();
+                String trustedJSONString = br.readLine();
+                String untrustedJSONString = br.readLine();
+                br.readLine();
+                br.readLine();
+                br.readLine();
+                if (trustedJSONString == null || untrustedJSONString == null) {
+                    break;
+                }
+                if (parses(trustedJSONString) && parses(untrustedJSONString)) {
+                    cases.add(new String[] {trustedJSONString, untrustedJSONString});
+                }
+            }
+        }
+        return cases.toArray(new String[cases.size()][]);
+    }
+
+    /**
+     * @param jsonString a graph in JSON
+     * @return whether Parser accepts the graph
+     */
+    private static boolean parses(final String jsonString) {
+        try {
+            Parser.parseGraph(jsonString);
+            return true;
+        } catch (CheckerException | ParseException e) {
+            return false;
+        }
+    }
+}
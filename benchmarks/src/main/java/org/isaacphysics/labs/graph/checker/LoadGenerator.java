@@ -0,0 +1,246 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An open-loop load generator: requests are sent at a fixed rate whether or not earlier ones have been answered, as
+ * independent users would send them.
+ *
+ * The latency of a request is measured from the time it was meant to be sent, not from the time it was sent. When the
+ * server falls behind, requests wait for a free connection, and that wait is counted; measuring from the time of
+ * sending would hide it, which is known as coordinated omission. Both are reported, to show the difference.
+ */
+final class LoadGenerator {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final long DRAIN_SECONDS = 60;
+    private static final String ERROR = "\"error\"";
+
+    private final URL url;
+    private final List<byte[]> bodies;
+    private final double rate;
+    private final int connections;
+
+    /**
+     * constructor for LoadGenerator.
+     * @param url where requests are posted to
+     * @param bodies bodies of requests, sent in turn
+     * @param rate requests per second
+     * @param connections maximum number of requests waiting for their response at a time
+     */
+    LoadGenerator(final URL url, final List<byte[]> bodies, final double rate, final int connections) {
+        if (bodies.isEmpty() || rate <= 0 || connections <= 0) {
+            throw new IllegalArgumentException("bodies must not be empty, and rate and connections must be positive");
+        }
+        this.url = url;
+        this.bodies = bodies;
+        this.rate = rate;
+        this.connections = connections;
+    }
+
+    /**
+     * send requests for a while, and wait for their responses.
+     * @param seconds how long to send requests for
+     * @return what happened to the requests
+     * @throws InterruptedException thrown when interrupted
+     */
+    Result run(final double seconds) throws InterruptedException {
+        int total = (int) Math.max(1, Math.round(rate * seconds));
+        double interval = 1e9 / rate;
+        Result result = new Result(total, rate);
+
+        ExecutorService workers = Executors.newFixedThreadPool(connections);
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long intended = start + (long) (i * interval);
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final int idx = i;
+            final byte[] body = bodies.get(i % bodies.size());
+            workers.execute(() -> send(idx, intended, body, result));
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+        result.elapsed = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * send one request and record its outcome.
+     * @param idx index of the request
+     * @param intended System.nanoTime() when the request was meant to be sent
+     * @param body body of the request
+     * @param result where the outcome is recorded
+     */
+    private void send(final int idx, final long intended, final byte[] body, final Result result) {
+        long sent = System.nanoTime();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream()
+                    : connection.getErrorStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            if (in != null) {
+                // read the whole response, so that the connection can be reused
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    response.write(buffer, 0, n);
+                }
+                in.close();
+            }
+            long done = System.nanoTime();
+            boolean error = status == HttpURLConnection.HTTP_OK
+                    && new String(response.toByteArray(), StandardCharsets.UTF_8).contains(ERROR);
+            result.record(idx, status, error, done - intended, done - sent);
+        } catch (IOException e) {
+            result.fail(idx);
+        }
+    }
+
+    /**
+     * What happened to the requests of one run. Each request is recorded by one thread, at its own index.
+     */
+    static final class Result {
+        private final double rate;
+        private final int[] statuses;
+        private final boolean[] errors;
+        private final long[] corrected;
+        private final long[] uncorrected;
+        private volatile long elapsed;
+
+        private Result(final int total, final double rate) {
+            this.rate = rate;
+            this.statuses = new int[total];
+            this.errors = new boolean[total];
+            this.corrected = new long[total];
+            this.uncorrected = new long[total];
+        }
+
+        private synchronized void record(final int idx, final int status, final boolean error,
+                                         final long fromIntended, final long fromSent) {
+            statuses[idx] = status;
+            errors[idx] = error;
+            corrected[idx] = fromIntended;
+            uncorrected[idx] = fromSent;
+        }
+
+        private synchronized void fail(final int idx) {
+            statuses[idx] = -1;
+        }
+
+        /**
+         * @param status an HTTP status, or -1 for requests that got no response
+         * @return number of requests with that status
+         */
+        synchronized int count(final int status) {
+            int count = 0;
+            for (int s : statuses) {
+                if (s == status) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return number of requests answered with status 200 and a body reporting an "error", which the servlet sends
+         * for requests it could not grade
+         */
+        synchronized int errors() {
+            int count = 0;
+            for (boolean error : errors) {
+                if (error) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @param latencies latency of every request, 0 for those that got no response
+         * @param p a percentile, between 0 and 100
+         * @return the latency at that percentile of requests that got a response, in nanoseconds
+         */
+        private synchronized long percentile(final long[] latencies, final double p) {
+            long[] answered = new long[latencies.length];
+            int n = 0;
+            for (int i = 0; i < latencies.length; i++) {
+                if (statuses[i] > 0) {
+                    answered[n++] = latencies[i];
+                }
+            }
+            if (n == 0) {
+                return 0;
+            }
+            Arrays.sort(answered, 0, n);
+            int rank = (int) Math.ceil(p / 100 * n);
+            return answered[Math.min(n, Math.max(1, rank)) - 1];
+        }
+
+        /**
+         * write a summary of the run.
+         * @param out where to write to
+         */
+        void print(final PrintStream out) {
+            int total = statuses.length;
+            int answered = total - count(-1) - count(0);
+            double seconds = elapsed / 1e9;
+            out.printf("requests:   %d sent, %d ok (%d with an error), %d rejected (503), %d other status, %d failed%n",
+                    total, count(HttpURLConnection.HTTP_OK), errors(), count(HttpURLConnection.HTTP_UNAVAILABLE),
+                    answered - count(HttpURLConnection.HTTP_OK) - count(HttpURLConnection.HTTP_UNAVAILABLE),
+                    total - answered);
+            out.printf("throughput: %.1f req/s offered, %.1f req/s answered over %.1f s%n", rate, answered / seconds,
+                    seconds);
+            out.printf("latency ms  %10s %10s %10s %10s%n", "p50", "p99", "p99.9", "max");
+            printLatencies(out, "corrected", corrected);
+            printLatencies(out, "sent", uncorrected);
+        }
+
+        private void printLatencies(final PrintStream out, final String name, final long[] latencies) {
+            out.printf("%-11s %10.2f %10.2f %10.2f %10.2f%n", name, percentile(latencies, 50) / 1e6,
+                    percentile(latencies, 99) / 1e6, percentile(latencies, 99.9) / 1e6,
+                    percentile(latencies, 100) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Load test of CheckerServlet. The servlet is started in embedded Jetty on a local port, and LoadGenerator posts the
+ * cases of checkerTestcase.txt to it, together with synthetic submissions: user's graph of each case with every point
+ * moved slightly, so that they are not answered from the verdict cache. Every request is meant to be graded, so the
+ * run fails if any response reports an error.
+ *
+ * Options, all optional:
+ *   --rate N          requests per second (default 100)
+ *   --seconds N       how long to measure for (default 30)
+ *   --warmup N        how long to send requests before measuring (default 10)
+ *   --connections N   maximum number of requests waiting for their response (default 64)
+ *   --synthetic N     synthetic submissions per case (default 20)
+ *   --port N          port to listen on, 0 for any free port (default 0)
+ *   --init name=value an init parameter of CheckerServlet, may be repeated
+ */
+public final class LoadTest {
+
+    private static final long SEED = 42;
+    private static final double JITTER = 0.002;
+    private static final String[] KNOTS = {"interX", "interY", "maxima", "minima"};
+    private static final String[] SYMBOLS = {"symbol", "xSymbol", "ySymbol"};
+
+    private LoadTest() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        HashMap<String, String> options = new HashMap<>();
+        HashMap<String, String> initParameters = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--init")) {
+                String[] parameter = args[i + 1].split("=", 2);
+                initParameters.put(parameter[0], parameter.length > 1 ? parameter[1] : "");
+            } else {
+                options.put(args[i], args[i + 1]);
+            }
+        }
+        double rate = Double.parseDouble(options.getOrDefault("--rate", "100"));
+        double seconds = Double.parseDouble(options.getOrDefault("--seconds", "30"));
+        double warmup = Double.parseDouble(options.getOrDefault("--warmup", "10"));
+        int connections = Integer.parseInt(options.getOrDefault("--connections", "64"));
+        int synthetic = Integer.parseInt(options.getOrDefault("--synthetic", "20"));
+        int port = Integer.parseInt(options.getOrDefault("--port", "0"));
+
+        List<byte[]> bodies = requests(Fixtures.testCases(), synthetic);
+
+        Server server = new Server(port);
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        ServletHolder holder = new ServletHolder(new CheckerServlet());
+        holder.setAsyncSupported(true);
+        for (Map.Entry<String, String> parameter : initParameters.entrySet()) {
+            holder.setInitParameter(parameter.getKey(), parameter.getValue());
+        }
+        context.addServlet(holder, "/test");
+        server.setHandler(context);
+        server.start();
+        try {
+            int localPort = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            URL url = new URL("http://localhost:" + localPort + "/test");
+            System.out.printf("%d request bodies, %.1f req/s, %d connections, %s%n", bodies.size(), rate,
+                    connections, url);
+
+            LoadGenerator generator = new LoadGenerator(url, bodies, rate, connections);
+            if (warmup > 0) {
+                generator.run(warmup);
+            }
+            LoadGenerator.Result result = generator.run(seconds);
+            result.print(System.out);
+            if (result.errors() > 0) {
+                throw new IllegalStateException(result.errors() + " requests were answered with an error");
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * build the bodies of requests to '/test'.
+     * @param cases pairs of answer and user's graph
+     * @param synthetic number of synthetic submissions made from each case
+     * @return the bodies, each case followed by its synthetic submissions
+     * @throws IOException thrown when a body cannot be written
+     */
+    static List<byte[]> requests(final String[][] cases, final int synthetic) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Random random = new Random(SEED);
+        ArrayList<byte[]> bodies = new ArrayList<>();
+        for (String[] pair : cases) {
+            bodies.add(body(mapper, pair[0], pair[1]));
+
+            JsonNode graph = mapper.readTree(pair[1]);
+            for (int k = 0; k < synthetic; k++) {
+                JsonNode moved = graph.deepCopy();
+                jitter(moved, random);
+                bodies.add(body(mapper, pair[0], mapper.writeValueAsString(moved)));
+            }
+        }
+        return bodies;
+    }
+
+    /**
+     * @param mapper writes JSON
+     * @param target the answer
+     * @param test user's graph
+     * @return the body of a request to '/test' that checks user's graph against the answer
+     * @throws IOException thrown when the body cannot be written
+     */
+    private static byte[] body(final ObjectMapper mapper, final String target, final String test)
+            throws IOException {
+        HashMap<String, String> request = new HashMap<>();
+        request.put("target", target);
+        request.put("test", test);
+        return mapper.writeValueAsBytes(request);
+    }
+
+    /**
+     * move every point of every curve of a graph slightly. Each knot, with its symbols, is moved together with the
+     * point it is at, so that it stays at that point; a point at an intercept is only moved along its axis. The bounds
+     * of each curve are updated to the moved points.
+     * @param graph the graph, changed in place
+     * @param random source of the movements
+     */
+    private static void jitter(final JsonNode graph, final Random random) {
+        for (JsonNode curve : graph.path("curves")) {
+            JsonNode pts = curve.path("pts");
+            double[] dx = new double[pts.size()];
+            double[] dy = new double[pts.size()];
+            for (int i = 0; i < pts.size(); i++) {
+                dx[i] = random.nextGaussian() * JITTER;
+                dy[i] = random.nextGaussian() * JITTER;
+            }
+
+            // find the point at each knot before any is moved
+            IdentityHashMap<JsonNode, Integer> knots = new IdentityHashMap<>();
+            for (String name : KNOTS) {
+                for (JsonNode knot : curve.path(name)) {
+                    int i = nearest(pts, knot);
+                    if (i < 0) {
+                        continue;
+                    }
+                    knots.put(knot, i);
+                    if (name.equals("interX")) {
+                        dy[i] = 0;
+                    } else if (name.equals("interY")) {
+                        dx[i] = 0;
+                    }
+                }
+            }
+
+            for (int i = 0; i < pts.size(); i++) {
+                move(pts.get(i), dx[i], dy[i]);
+            }
+            for (Map.Entry<JsonNode, Integer> knot : knots.entrySet()) {
+                int i = knot.getValue();
+                move(knot.getKey(), dx[i], dy[i]);
+                for (String name : SYMBOLS) {
+                    move(knot.getKey().path(name), dx[i], dy[i]);
+                }
+            }
+
+            if (curve instanceof ObjectNode && curve.has("minX") && pts.size() > 0) {
+                double minX = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                for (JsonNode pt : pts) {
+                    minX = Math.min(minX, pt.path("x").asDouble());
+                    maxX = Math.max(maxX, pt.path("x").asDouble());
+                    minY = Math.min(minY, pt.path("y").asDouble());
+                    maxY = Math.max(maxY, pt.path("y").asDouble());
+                }
+                ((ObjectNode) curve).put("minX", minX).put("maxX", maxX).put("minY", minY).put("maxY", maxY);
+            }
+        }
+    }
+
+    /**
+     * @param pts points of a curve
+     * @param knot a knot of the curve
+     * @return index of the point nearest to the knot, or -1 if the knot or no point has a position
+     */
+    private static int nearest(final JsonNode pts, final JsonNode knot) {
+        if (!knot.path("x").isNumber() || !knot.path("y").isNumber()) {
+            return -1;
+        }
+        int nearest = -1;
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < pts.size(); i++) {
+            JsonNode pt = pts.get(i);
+            if (!pt.path("x").isNumber() || !pt.path("y").isNumber()) {
+                continue;
+            }
+            double dx = pt.get("x").asDouble() - knot.get("x").asDouble();
+            double dy = pt.get("y").asDouble() - knot.get("y").asDouble();
+            if (dx * dx + dy * dy < best) {
+                best = dx * dx + dy * dy;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @param node a point, knot or symbol, changed in place; anything without a position is left alone
+     * @param dx how far to move it along x
+     * @param dy how far to move it along y
+     */
+    private static void move(final JsonNode node, final double dx, final double dy) {
+        if (node instanceof ObjectNode && node.path("x").isNumber() && node.path("y").isNumber()) {
+            ObjectNode point = (ObjectNode) node;
+            point.put("x", point.get("x").asDouble() + dx);
+            point.put("y", point.get("y").asDouble() + dy);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Parsing the graphs of src/main/json, and decoding them in the binary encoding of GraphCodec.
+ */
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"target.json", "test.json"})
+    private String fixture;
+
+    private String json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws IOException, CheckerException, ParseException {
+        json = Fixtures.json(fixture);
+        binary = GraphCodec.encode(Parser.parseGraph(json));
+    }
+
+    @Benchmark
+    public HashMap<String, Object> parseInputJSONString() throws CheckerException, ParseException {
+        return Parser.parseInputJSONString(json);
+    }
+
+    @Benchmark
+    public Graph parseGraph() throws CheckerException, ParseException {
+        return Parser.parseGraph(json);
+    }
+
+    @Benchmark
+    public Graph decodeBinary() throws CheckerException {
+        return GraphCodec.decode(binary);
+    }
+}
@@ -0,0 +1,127 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe, least-recently-used cache of compiled answers, keyed by the content hash of the answer's
+ * JSON string.
+ */
+public final class AnswerCache {
+
+    private final int capacity;
+    private final LinkedHashMap<String, CompiledAnswer> answers;
+
+    /**
+     * constructor for AnswerCache.
+     * @param capacity the maximum number of answers kept in the cache
+     */
+    public AnswerCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.answers = new LinkedHashMap<String, CompiledAnswer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CompiledAnswer> eldest) {
+                return size() > AnswerCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * get the compiled answer of a JSON string, compiling it if it is not in the cache.
+     *
+     * Compilation happens outside the lock, so two threads missing on the same answer at once may both compile it;
+     * the results are identical and only one is kept.
+     *
+     * @param targetJSONString a JSON String which contains the correct answer
+     * @return the compiled answer
+     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
+     *      in the correct format.
+     * @throws ParseException it is thrown when input JSON string cannot be parsed.
+     */
+    public CompiledAnswer get(final String targetJSONString) throws CheckerException, ParseException {
+        String hash = ContentHash.of(targetJSONString);
+        CompiledAnswer answer = lookup(hash);
+        if (answer != null) {
+            return answer;
+        }
+        return keep(CompiledAnswer.compile(hash, targetJSONString));
+    }
+
+    /**
+     * get the compiled answer of a graph that has already been parsed, compiling it if it is not in the cache.
+     *
+     * @param hash content hash of the answer's JSON
+     * @param target the correct answer
+     * @return the compiled answer
+     */
+    public CompiledAnswer get(final String hash, final Graph target) {
+        CompiledAnswer answer = lookup(hash);
+        if (answer != null) {
+            return answer;
+        }
+        return keep(CompiledAnswer.compile(hash, target));
+    }
+
+    /**
+     * @param hash content hash of an answer
+     * @return the compiled answer in the cache, or null if there is none
+     */
+    private CompiledAnswer lookup(final String hash) {
+        synchronized (answers) {
+            return answers.get(hash);
+        }
+    }
+
+    /**
+     * put a compiled answer into the cache, unless another thread has already put one there.
+     * @param compiled the compiled answer
+     * @return the compiled answer that is in the cache
+     */
+    private CompiledAnswer keep(final CompiledAnswer compiled) {
+        synchronized (answers) {
+            CompiledAnswer answer = answers.get(compiled.getHash());
+            if (answer != null) {
+                return answer;
+            }
+            answers.put(compiled.getHash(), compiled);
+            return compiled;
+        }
+    }
+
+    /**
+     * @return the number of answers currently in the cache
+     */
+    public int size() {
+        synchronized (answers) {
+            return answers.size();
+        }
+    }
+
+    /**
+     * @return the maximum number of answers kept in the cache
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,333 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * The compiled answers of the questions whose graphs are in a directory, one '.json' file per question named after
+ * its ID. Answers are compiled when they are loaded, so a check against a question does not parse its answer again.
+ *
+ * Once watched, a file that is created or changed is compiled again and replaces the answer of its question, and a
+ * file that is deleted removes it. An answer is replaced only once the new one has compiled, so checks already running
+ * keep the answer they started with and are never blocked. A file that does not compile is reported and leaves the
+ * previous answer of its question in place.
+ *
+ * With an AnswerSnapshot, answers whose JSON has not changed since the snapshot was written are decoded from it the
+ * first time they are asked for, instead of being compiled when they are loaded. If any answer had to be compiled from
+ * JSON, or the snapshot has answers that are no longer in the directory, the snapshot is written again. A snapshot
+ * written by another version of the compiler is not used at all, and every answer is compiled from JSON.
+ */
+public final class AnswerRegistry implements AutoCloseable {
+
+    private static final String EXTENSION = ".json";
+    private static final long CLOSE_MILLIS = 5000;
+
+    private final Path directory;
+    private final Path snapshotFile;
+    private final ConcurrentHashMap<String, CompiledAnswer> answers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AnswerSnapshot> pending = new ConcurrentHashMap<>();
+    private WatchService watcher;
+    private Thread reloader;
+    private volatile boolean closed;
+
+    /**
+     * constructor for AnswerRegistry. No answer is loaded until load is called.
+     * @param directory the directory of the answers
+     */
+    public AnswerRegistry(final Path directory) {
+        this(directory, null);
+    }
+
+    /**
+     * constructor for AnswerRegistry. No answer is loaded until load is called.
+     * @param directory the directory of the answers
+     * @param snapshotFile snapshot of the compiled answers, which need not exist yet, or null to always compile them
+     */
+    public AnswerRegistry(final Path directory, final Path snapshotFile) {
+        this.directory = directory;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * @param file a file in the directory of the answers
+     * @return the ID of the question the file is the answer of, or null if it is not an answer
+     */
+    static String questionId(final Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(EXTENSION) || name.length() == EXTENSION.length()) {
+            return null;
+        }
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+    /**
+     * read a whole file through a memory mapping of it.
+     * @param file the file
+     * @return its content
+     * @throws IOException thrown if the file cannot be read
+     */
+    static byte[] read(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] content = new byte[mapped.remaining()];
+            mapped.get(content);
+            return content;
+        }
+    }
+
+    /**
+     * load every answer in the directory, from the snapshot where it is up to date, and write the snapshot again if
+     * it is not. This is done once, before the directory is watched.
+     * @return the number of answers loaded
+     * @throws IOException thrown if the directory cannot be listed
+     */
+    public int load() throws IOException {
+        AnswerSnapshot snapshot = null;
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            try {
+                snapshot = AnswerSnapshot.open(snapshotFile);
+            } catch (IOException e) {
+                Diagnostics.error("Cannot use the answer snapshot, compiling answers from JSON!", e);
+            }
+        }
+
+        int loaded = load(snapshot);
+
+        if (snapshotFile != null && (snapshot == null || !answers.isEmpty()
+                || pending.size() != snapshot.getQuestionIds().size())) {
+            writeSnapshot();
+        }
+        return loaded;
+    }
+
+    /**
+     * load every answer in the directory.
+     * @param snapshot snapshot to take answers whose JSON has not changed from, or null
+     * @return the number of answers loaded
+     * @throws IOException thrown if the directory cannot be listed
+     */
+    private int load(final AnswerSnapshot snapshot) throws IOException {
+        int loaded = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                if (reload(file, snapshot)) {
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * write every answer to the snapshot file.
+     */
+    private void writeSnapshot() {
+        TreeMap<String, CompiledAnswer> all = new TreeMap<>();
+        for (String questionId : questionIds()) {
+            CompiledAnswer answer = get(questionId);
+            if (answer != null) {
+                all.put(questionId, answer);
+            }
+        }
+        try {
+            AnswerSnapshot.write(snapshotFile, all);
+        } catch (IOException e) {
+            Diagnostics.error("Cannot write the answer snapshot " + snapshotFile + "!", e);
+        }
+    }
+
+    /**
+     * compile the answer in a file, and make it the answer of its question.
+     * @param file the file
+     * @param snapshot snapshot to take the answer from if the file has not changed since it was written, or null
+     * @return whether the file holds a valid answer
+     */
+    private boolean reload(final Path file, final AnswerSnapshot snapshot) {
+        String questionId = questionId(file);
+        if (questionId == null) {
+            return false;
+        }
+        try {
+            byte[] content = read(file);
+            String hash = ContentHash.of(content);
+            if (snapshot != null && hash.equals(snapshot.getHash(questionId))) {
+                pending.put(questionId, snapshot);
+                return true;
+            }
+            CompiledAnswer current = answers.get(questionId);
+            if (current == null || !current.getHash().equals(hash)) {
+                answers.put(questionId, CompiledAnswer.compile(hash, Parser.parseGraph(content)));
+            }
+            pending.remove(questionId);
+            return true;
+        } catch (IOException | CheckerException | RuntimeException e) {
+            Diagnostics.error("Cannot load the answer of question " + questionId + "!", e);
+        } catch (ParseException e) {
+            Diagnostics.error("Cannot load the answer of question " + questionId + ": " + e);
+        }
+        return false;
+    }
+
+    /**
+     * decode the answer of a question from the snapshot, or compile it from JSON if its entry is corrupt.
+     * @param questionId ID of the question
+     * @return the compiled answer, or null if there is none
+     */
+    private CompiledAnswer decode(final String questionId) {
+        AnswerSnapshot snapshot = pending.remove(questionId);
+        if (snapshot == null) {
+            return null;
+        }
+        try {
+            return snapshot.get(questionId);
+        } catch (IOException e) {
+            Diagnostics.error("Cannot decode the answer of question " + questionId + ", compiling it from JSON!", e);
+        }
+        try {
+            byte[] content = read(directory.resolve(questionId + EXTENSION));
+            return CompiledAnswer.compile(ContentHash.of(content), Parser.parseGraph(content));
+        } catch (IOException | CheckerException | RuntimeException e) {
+            Diagnostics.error("Cannot load the answer of question " + questionId + "!", e);
+        } catch (ParseException e) {
+            Diagnostics.error("Cannot load the answer of question " + questionId + ": " + e);
+        }
+        return null;
+    }
+
+    /**
+     * start reloading answers when their files change, on a background thread.
+     * @throws IOException thrown if the directory cannot be watched
+     */
+    public synchronized void watch() throws IOException {
+        if (watcher != null || closed) {
+            return;
+        }
+        watcher = directory.getFileSystem().newWatchService();
+        directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        reloader = new Thread(this::reloadChanges, "graph-checker-answers");
+        reloader.setDaemon(true);
+        reloader.start();
+    }
+
+    /**
+     * reload the answers whose files change, until the registry is closed.
+     */
+    private void reloadChanges() {
+        try {
+            while (!closed) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        // some changes were lost, so look at every file again
+                        load(null);
+                        continue;
+                    }
+                    Path file = directory.resolve((Path) event.context());
+                    String questionId = questionId(file);
+                    if (questionId == null) {
+                        continue;
+                    }
+                    if (event.kind() == ENTRY_DELETE) {
+                        pending.remove(questionId);
+                        answers.remove(questionId);
+                    } else {
+                        reload(file, null);
+                    }
+                }
+                if (!key.reset()) {
+                    Diagnostics.error("Answers in " + directory + " can no longer be watched!");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed
+        } catch (IOException e) {
+            Diagnostics.error("Cannot reload answers in " + directory + "!", e);
+        }
+    }
+
+    /**
+     * @param questionId ID of a question
+     * @return the compiled answer of the question, or null if there is none
+     */
+    public CompiledAnswer get(final String questionId) {
+        CompiledAnswer answer = answers.get(questionId);
+        if (answer != null || !pending.containsKey(questionId)) {
+            return answer;
+        }
+        return answers.computeIfAbsent(questionId, this::decode);
+    }
+
+    /**
+     * @return ID of every question that has an answer, whether or not it has been decoded from the snapshot yet
+     */
+    private Set<String> questionIds() {
+        Set<String> questionIds = new HashSet<>(answers.keySet());
+        questionIds.addAll(pending.keySet());
+        return questionIds;
+    }
+
+    /**
+     * @return the number of questions that have an answer
+     */
+    public int size() {
+        return questionIds().size();
+    }
+
+    /**
+     * stop watching the directory.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (watcher == null) {
+            return;
+        }
+        try {
+            watcher.close();
+            reloader.join(CLOSE_MILLIS);
+        } catch (IOException e) {
+            Diagnostics.error("Cannot stop watching answers in " + directory + "!", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
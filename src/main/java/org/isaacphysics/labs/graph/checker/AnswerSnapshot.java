@@ -0,0 +1,558 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A file of compiled answers, so a server can start without parsing and compiling every answer of the question bank.
+ *
+ * The file is memory-mapped when it is opened, and only its index is read then: an answer is decoded the first time
+ * it is asked for. Each answer keeps the content hash of the JSON it was compiled from, so the answers whose JSON has
+ * changed since the snapshot was written can be found and compiled from JSON again.
+ *
+ * The file starts with the magic bytes 'G' 'C' 'S' 'N', a u32 format version, the u32 CompiledAnswer.COMPILER_VERSION
+ * the answers were compiled by, a u32 number of answers and the CRC-32 of the index that follows. For each answer, the
+ * index has its question ID and content hash, and the offset, length and CRC-32 of its entry. An entry holds the
+ * options of the question, and for each color its curves: the points, bounds and knot tables of the curve after point
+ * reduction, the split sections as ranges of its points, the shape-normalised sections and the position-normalised
+ * points. Envelopes and coarse-to-fine levels depend only on these and the options, and are derived again when the
+ * entry is decoded. All numbers are big-endian, coordinates are doubles, and strings are a u16 number of bytes followed
+ * by UTF-8.
+ */
+public final class AnswerSnapshot {
+
+    static final int FORMAT_VERSION = 2;
+
+    private static final byte[] MAGIC = {'G', 'C', 'S', 'N'};
+    private static final int SYMBOL = 1;
+    private static final int X_SYMBOL = 2;
+    private static final int Y_SYMBOL = 4;
+    private static final int MAX_U16 = 0xffff;
+
+    private final Path file;
+    private final ByteBuffer mapped;
+    private final Map<String, Entry> index;
+
+    /**
+     * Where the entry of an answer is in the file.
+     */
+    private static final class Entry {
+        private final String hash;
+        private final long offset;
+        private final int length;
+        private final int crc;
+
+        private Entry(final String hash, final long offset, final int length, final int crc) {
+            this.hash = hash;
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+
+    /**
+     * constructor for AnswerSnapshot.
+     * @param file the snapshot file
+     * @param mapped the whole file, mapped
+     * @param index entries of the file by question ID
+     */
+    private AnswerSnapshot(final Path file, final ByteBuffer mapped, final Map<String, Entry> index) {
+        this.file = file;
+        this.mapped = mapped;
+        this.index = index;
+    }
+
+    /**
+     * map a snapshot file and read its index.
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException thrown if the file cannot be read, is not a snapshot, has another format version, was written
+     *      by another version of the compiler, or its index is corrupt
+     */
+    public static AnswerSnapshot open(final Path file) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            for (byte b : MAGIC) {
+                if (mapped.get() != b) {
+                    throw new IOException(file + " is not an answer snapshot");
+                }
+            }
+            int version = mapped.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(file + " has format version " + version + ", not " + FORMAT_VERSION);
+            }
+            int compiler = mapped.getInt();
+            if (compiler != CompiledAnswer.COMPILER_VERSION) {
+                throw new IOException(file + " was compiled by compiler version " + compiler + ", not "
+                        + CompiledAnswer.COMPILER_VERSION);
+            }
+            int count = mapped.getInt();
+            int indexCrc = mapped.getInt();
+
+            int start = mapped.position();
+            Map<String, Entry> index = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String questionId = readString(mapped);
+                String hash = readString(mapped);
+                index.put(questionId, new Entry(hash, mapped.getLong(), mapped.getInt(), mapped.getInt()));
+            }
+            if (crc(mapped, start, mapped.position() - start) != indexCrc) {
+                throw new IOException(file + " has a corrupt index");
+            }
+            for (Entry entry : index.values()) {
+                if (entry.offset < mapped.position() || entry.offset + entry.length > mapped.limit()) {
+                    throw new IOException(file + " is truncated");
+                }
+            }
+            return new AnswerSnapshot(file, mapped, index);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated");
+        }
+    }
+
+    /**
+     * @return ID of every question that has an answer in the snapshot
+     */
+    public Set<String> getQuestionIds() {
+        return index.keySet();
+    }
+
+    /**
+     * @param questionId ID of a question
+     * @return content hash of the JSON the answer of the question was compiled from, or null if it has none
+     */
+    public String getHash(final String questionId) {
+        Entry entry = index.get(questionId);
+        return entry == null ? null : entry.hash;
+    }
+
+    /**
+     * decode the answer of a question.
+     *
+     * @param questionId ID of the question
+     * @return the compiled answer, or null if the question has no answer in the snapshot
+     * @throws IOException thrown if the entry of the answer is corrupt
+     */
+    public CompiledAnswer get(final String questionId) throws IOException {
+        Entry entry = index.get(questionId);
+        if (entry == null) {
+            return null;
+        }
+
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position((int) entry.offset);
+        buffer.limit((int) entry.offset + entry.length);
+        if (crc(buffer, buffer.position(), entry.length) != entry.crc) {
+            throw new IOException("The answer of question " + questionId + " in " + file + " is corrupt");
+        }
+        try {
+            return decodeAnswer(buffer, entry.hash);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("The answer of question " + questionId + " in " + file + " is corrupt", e);
+        }
+    }
+
+    /**
+     * write a snapshot file. The file is written next to its final place and then moved there, so a server never maps
+     * a half-written snapshot.
+     *
+     * @param file the snapshot file
+     * @param answers compiled answers by question ID
+     * @throws IOException thrown if the file cannot be written
+     */
+    public static void write(final Path file, final Map<String, CompiledAnswer> answers) throws IOException {
+        TreeMap<String, byte[]> entries = new TreeMap<>();
+        for (Map.Entry<String, CompiledAnswer> answer : answers.entrySet()) {
+            entries.put(answer.getKey(), encodeAnswer(answer.getValue()));
+        }
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        long offset = MAGIC.length + 4 * Integer.BYTES;
+        for (String questionId : entries.keySet()) {
+            offset += 2 * Short.BYTES + utf8(questionId).length + utf8(answers.get(questionId).getHash()).length
+                    + Long.BYTES + 2 * Integer.BYTES;
+        }
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            byte[] bytes = entry.getValue();
+            writeString(index, entry.getKey());
+            writeString(index, answers.get(entry.getKey()).getHash());
+            index.writeLong(offset);
+            index.writeInt(bytes.length);
+            index.writeInt(crc(ByteBuffer.wrap(bytes), 0, bytes.length));
+            offset += bytes.length;
+        }
+        index.flush();
+        byte[] indexArray = indexBytes.toByteArray();
+
+        Path staged = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(staged);
+             DataOutputStream out = new DataOutputStream(stream)) {
+            out.write(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(CompiledAnswer.COMPILER_VERSION);
+            out.writeInt(entries.size());
+            out.writeInt(crc(ByteBuffer.wrap(indexArray), 0, indexArray.length));
+            out.write(indexArray);
+            for (byte[] bytes : entries.values()) {
+                out.write(bytes);
+            }
+        }
+        Files.move(staged, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * compile every answer in a directory into a snapshot file.
+     *
+     * @param directory the directory of the answers, one '.json' file per question named after its ID
+     * @param file the snapshot file
+     * @return the number of answers written
+     * @throws IOException thrown if a file cannot be read or the snapshot cannot be written
+     * @throws CheckerException thrown if an answer is not valid
+     * @throws ParseException thrown if an answer is not well-formed JSON
+     */
+    public static int build(final Path directory, final Path file)
+                                                    throws IOException, CheckerException, ParseException {
+        TreeMap<String, CompiledAnswer> answers = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.json")) {
+            for (Path json : files) {
+                String questionId = AnswerRegistry.questionId(json);
+                if (questionId != null) {
+                    byte[] content = AnswerRegistry.read(json);
+                    answers.put(questionId, CompiledAnswer.compile(ContentHash.of(content),
+                            Parser.parseGraph(content)));
+                }
+            }
+        }
+        write(file, answers);
+        return answers.size();
+    }
+
+    /**
+     * compile the answers of a question bank into a snapshot file, when the server is built or deployed.
+     *
+     * @param args the directory of the answers, and the snapshot file to write
+     * @throws IOException thrown if a file cannot be read or the snapshot cannot be written
+     * @throws CheckerException thrown if an answer is not valid
+     * @throws ParseException thrown if an answer is not well-formed JSON
+     */
+    public static void main(final String[] args) throws IOException, CheckerException, ParseException {
+        if (args.length != 2) {
+            System.err.println("usage: AnswerSnapshot <answer directory> <snapshot file>");
+            System.exit(2);
+        }
+        int count = build(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("Wrote " + count + " answers to " + args[1]);
+    }
+
+    /**
+     * @param answer the compiled answer
+     * @return its entry
+     */
+    private static byte[] encodeAnswer(final CompiledAnswer answer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            CheckerOptions options = answer.getOptions();
+            out.writeDouble(options.getWarpingWindow());
+            out.writeBoolean(options.isCoarseToFine());
+            writeString(out, options.getPointReduction());
+            out.writeDouble(options.getRdpTolerance());
+            out.writeInt(options.getArcLengthPoints());
+            writeString(out, options.getErrorPrecedence());
+
+            out.writeByte(Checker.NUM_COLOR);
+            for (int i = 0; i < Checker.NUM_COLOR; i++) {
+                CompiledCurve[] curves = answer.getCurves(i);
+                out.writeShort(curves.length);
+                for (CompiledCurve curve : curves) {
+                    encodeCurve(out, curve);
+                }
+            }
+        } catch (IOException e) {
+            // writing to a byte array does not do any I/O
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param buffer the entry of an answer
+     * @param hash content hash of the answer
+     * @return the compiled answer
+     */
+    private static CompiledAnswer decodeAnswer(final ByteBuffer buffer, final String hash) {
+        CheckerOptions options = new CheckerOptions();
+        options.setWarpingWindow(buffer.getDouble());
+        options.setCoarseToFine(buffer.get() != 0);
+        options.setPointReduction(readString(buffer));
+        options.setRdpTolerance(buffer.getDouble());
+        options.setArcLengthPoints(buffer.getInt());
+        options.setErrorPrecedence(readString(buffer));
+
+        int colors = buffer.get();
+        if (colors != Checker.NUM_COLOR) {
+            throw new IllegalArgumentException("snapshot has " + colors + " colors");
+        }
+        CompiledCurve[][] classes = new CompiledCurve[colors][];
+        for (int i = 0; i < colors; i++) {
+            classes[i] = new CompiledCurve[buffer.getShort() & MAX_U16];
+            for (int j = 0; j < classes[i].length; j++) {
+                classes[i][j] = decodeCurve(buffer, options);
+            }
+        }
+        return CompiledAnswer.of(hash, classes, options);
+    }
+
+    /**
+     * @param out stream to write to
+     * @param compiled the compiled curve
+     * @throws IOException thrown by the stream
+     */
+    private static void encodeCurve(final DataOutputStream out, final CompiledCurve compiled) throws IOException {
+        Curve curve = compiled.getCurve();
+        out.writeByte(curve.getColorIdx());
+        out.writeDouble(curve.getMinX());
+        out.writeDouble(curve.getMinY());
+        out.writeDouble(curve.getMaxX());
+        out.writeDouble(curve.getMaxY());
+        encodeSection(out, curve.getSection());
+        encodeKnots(out, curve.getInterX());
+        encodeKnots(out, curve.getInterY());
+        encodeKnots(out, curve.getMaxima());
+        encodeKnots(out, curve.getMinima());
+
+        Section[] sections = compiled.getSections();
+        out.writeShort(sections.length);
+        for (Section section : sections) {
+            if (section.xs != curve.getXs()) {
+                throw new IllegalStateException("section is not a view of its curve");
+            }
+            out.writeInt(section.offset);
+            out.writeInt(section.length());
+        }
+        for (Section shape : compiled.getShapes()) {
+            encodeSection(out, shape);
+        }
+        encodeSection(out, compiled.getPosition());
+    }
+
+    /**
+     * @param buffer buffer to read from
+     * @param options options of the question
+     * @return the compiled curve
+     */
+    private static CompiledCurve decodeCurve(final ByteBuffer buffer, final CheckerOptions options) {
+        Curve curve = new Curve();
+        curve.setColorIdx(buffer.get());
+        curve.setMinX(buffer.getDouble());
+        curve.setMinY(buffer.getDouble());
+        curve.setMaxX(buffer.getDouble());
+        curve.setMaxY(buffer.getDouble());
+        Section points = decodeSection(buffer);
+        curve.setPts(points.xs, points.ys);
+        curve.setInterX(decodeKnots(buffer));
+        curve.setInterY(decodeKnots(buffer));
+        curve.setMaxima(decodeKnots(buffer));
+        curve.setMinima(decodeKnots(buffer));
+
+        Section[] sections = new Section[buffer.getShort() & MAX_U16];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = new Section(points.xs, points.ys, buffer.getInt(), buffer.getInt());
+        }
+        Section[] shapes = new Section[sections.length];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = decodeSection(buffer);
+        }
+        return CompiledCurve.of(curve, sections, shapes, decodeSection(buffer), options);
+    }
+
+    /**
+     * @param out stream to write to
+     * @param section points to write, as an i32 number of points, then their x and then their y coordinates
+     * @throws IOException thrown by the stream
+     */
+    private static void encodeSection(final DataOutputStream out, final Section section) throws IOException {
+        int n = section.length();
+        out.writeInt(n);
+        for (int i = section.offset; i < section.offset + n; i++) {
+            out.writeDouble(section.xs[i]);
+        }
+        for (int i = section.offset; i < section.offset + n; i++) {
+            out.writeDouble(section.ys[i]);
+        }
+    }
+
+    /**
+     * @param buffer buffer to read from
+     * @return the points, in arrays of their own
+     */
+    private static Section decodeSection(final ByteBuffer buffer) {
+        int n = buffer.getInt();
+        if (n < 0 || n > buffer.remaining() / (2 * Double.BYTES)) {
+            throw new IllegalArgumentException("bad number of points " + n);
+        }
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        buffer.asDoubleBuffer().get(xs);
+        buffer.position(buffer.position() + n * Double.BYTES);
+        buffer.asDoubleBuffer().get(ys);
+        buffer.position(buffer.position() + n * Double.BYTES);
+        return new Section(xs, ys);
+    }
+
+    /**
+     * @param out stream to write to
+     * @param knots the knots to write
+     * @throws IOException thrown by the stream
+     */
+    private static void encodeKnots(final DataOutputStream out, final Knot[] knots) throws IOException {
+        out.writeShort(knots.length);
+        for (Knot knot : knots) {
+            out.writeDouble(knot.x);
+            out.writeDouble(knot.y);
+            int flags = (knot.symbol != null ? SYMBOL : 0) | (knot.xSymbol != null ? X_SYMBOL : 0)
+                    | (knot.ySymbol != null ? Y_SYMBOL : 0);
+            out.writeByte(flags);
+            encodeSymbol(out, knot.symbol);
+            encodeSymbol(out, knot.xSymbol);
+            encodeSymbol(out, knot.ySymbol);
+        }
+    }
+
+    /**
+     * @param buffer buffer to read from
+     * @return the knots
+     */
+    private static Knot[] decodeKnots(final ByteBuffer buffer) {
+        Knot[] knots = new Knot[buffer.getShort() & MAX_U16];
+        for (int i = 0; i < knots.length; i++) {
+            double x = buffer.getDouble();
+            double y = buffer.getDouble();
+            int flags = buffer.get();
+            Symbol symbol = (flags & SYMBOL) != 0 ? decodeSymbol(buffer) : null;
+            Symbol xSymbol = (flags & X_SYMBOL) != 0 ? decodeSymbol(buffer) : null;
+            Symbol ySymbol = (flags & Y_SYMBOL) != 0 ? decodeSymbol(buffer) : null;
+            knots[i] = new Knot(x, y, symbol, xSymbol, ySymbol);
+        }
+        return knots;
+    }
+
+    /**
+     * @param out stream to write to
+     * @param symbol the symbol to write, nothing is written if it is null
+     * @throws IOException thrown by the stream
+     */
+    private static void encodeSymbol(final DataOutputStream out, final Symbol symbol) throws IOException {
+        if (symbol == null) {
+            return;
+        }
+        out.writeDouble(symbol.x);
+        out.writeDouble(symbol.y);
+        writeString(out, symbol.text);
+    }
+
+    /**
+     * @param buffer buffer to read from
+     * @return the symbol
+     */
+    private static Symbol decodeSymbol(final ByteBuffer buffer) {
+        double x = buffer.getDouble();
+        double y = buffer.getDouble();
+        return new Symbol(x, y, readString(buffer));
+    }
+
+    /**
+     * @param text a string
+     * @return the string in UTF-8
+     */
+    private static byte[] utf8(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param out stream to write to
+     * @param text the string to write, prefixed by its length in bytes as a u16
+     * @throws IOException thrown by the stream
+     */
+    private static void writeString(final DataOutputStream out, final String text) throws IOException {
+        byte[] bytes = utf8(text);
+        if (bytes.length > MAX_U16) {
+            throw new IllegalArgumentException("string too long for a snapshot: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param buffer buffer to read from
+     * @return the string
+     */
+    private static String readString(final ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & MAX_U16];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param buffer a buffer
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return CRC-32 of the bytes, which the position of buffer is not moved by
+     */
+    private static int crc(final ByteBuffer buffer, final int offset, final int length) {
+        CRC32 crc = new CRC32();
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + offset, length);
+        } else {
+            byte[] chunk = new byte[Math.min(length, 8192)];
+            ByteBuffer bytes = buffer.duplicate();
+            bytes.position(offset);
+            for (int left = length; left > 0; left -= chunk.length) {
+                int n = Math.min(left, chunk.length);
+                bytes.get(chunk, 0, n);
+                crc.update(chunk, 0, n);
+            }
+        }
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,96 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A DiagnosticsSink that hands records to a background thread through a fixed-size ring buffer, so that grading never
+ * waits for output. When the buffer is full, records are dropped and counted rather than blocking.
+ */
+public final class AsyncDiagnosticsSink implements DiagnosticsSink, AutoCloseable {
+
+    private static final long POLL_MILLIS = 100;
+    private static final long CLOSE_MILLIS = 5000;
+
+    private final DiagnosticsSink target;
+    private final ArrayBlockingQueue<String> buffer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * constructor for AsyncDiagnosticsSink.
+     * @param target where the background thread writes records to
+     * @param capacity the number of records the buffer holds
+     */
+    public AsyncDiagnosticsSink(final DiagnosticsSink target, final int capacity) {
+        if (target == null || capacity <= 0) {
+            throw new IllegalArgumentException("target must be set and capacity must be positive");
+        }
+        this.target = target;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drain, "graph-checker-diagnostics");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void write(final String record) {
+        if (closed || !buffer.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * write records until the sink is closed and the buffer is empty.
+     */
+    private void drain() {
+        try {
+            while (!closed || !buffer.isEmpty()) {
+                String record = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    target.write(record);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * stop accepting records, and wait for the ones in the buffer to be written.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(CLOSE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of records dropped because the buffer was full or the sink was closed
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+}
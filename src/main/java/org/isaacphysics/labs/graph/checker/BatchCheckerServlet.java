@@ -0,0 +1,241 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+
+/**
+ * A HttpServlet that grades many submissions against one answer in a single POST request, with url '/test/batch'.
+ *
+ * The request body is newline-delimited JSON. The first line is the correct answer, a graph as sent to '/test' as
+ * 'target'. Every following line is one submission, an object with field 'test' holding user's graph (as an object,
+ * or as a string like '/test' takes it), and optionally field 'id', which is echoed back.
+ *
+ * The answer is compiled once for the whole batch. Submissions are graded concurrently as they are read, and one line
+ * is written back for each as soon as it is graded, so results come back in the order they finish:
+ * {"id": ..., "equal": ..., "errCause": ...}, or {"id": ..., "error": "..."} when the submission cannot be graded.
+ * The number of submissions read but not yet written back is bounded, so memory does not grow with the batch.
+ */
+public class BatchCheckerServlet extends HttpServlet {
+
+    private static final String CONTENT_TYPE = "application/x-ndjson";
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ExecutorService executor;
+    private int maxInFlight;
+
+    /**
+     * set up the threads grading submissions. The init parameter 'batchThreads' sets their number, by default the
+     * number of processors; 'batchMaxInFlight' sets how many submissions of one batch may be read ahead of the
+     * results written back, by default 4 per thread.
+     * @throws ServletException thrown when an init parameter is not a valid number
+     */
+    @Override
+    public void init() throws ServletException {
+        try {
+            int threads = Integer.parseInt(getInitParameter("batchThreads",
+                    Runtime.getRuntime().availableProcessors()));
+            maxInFlight = Integer.parseInt(getInitParameter("batchMaxInFlight", IN_FLIGHT_PER_THREAD * threads));
+            if (threads <= 0 || maxInFlight <= 0) {
+                throw new IllegalArgumentException("batchThreads and batchMaxInFlight must be positive");
+            }
+            executor = Executors.newFixedThreadPool(threads);
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid batch configuration", e);
+        }
+    }
+
+    /**
+     * stop the threads grading submissions.
+     */
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * read a numeric init parameter.
+     * @param name name of the parameter
+     * @param defaultValue value used when the parameter is not set
+     * @return value of the parameter
+     */
+    private String getInitParameter(final String name, final long defaultValue) {
+        String value = getInitParameter(name);
+        if (value == null) {
+            return String.valueOf(defaultValue);
+        }
+        return value.trim();
+    }
+
+    /**
+     * handles POST request with url '/test/batch'.
+     * @param request A HttpServletRequest
+     * @param response A HttpServletResponse
+     * @throws ServletException thrown when some servlet related exceptions occur
+     * @throws IOException thrown when the request cannot be read or the response cannot be written
+     */
+    @Override
+    protected void doPost(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        response.setContentType(CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        BufferedReader reader = request.getReader();
+        PrintWriter writer = response.getWriter();
+
+        String targetLine = reader.readLine();
+        CompiledAnswer answer;
+        try {
+            if (targetLine == null) {
+                throw new CheckerException("No input!");
+            }
+            answer = CompiledAnswer.compile(targetLine);
+        } catch (CheckerException | ParseException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writer.println(errorLine(null, e));
+            return;
+        }
+
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                final String submission = line;
+                inFlight.acquire();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            String result = grade(answer, submission);
+                            synchronized (writer) {
+                                writer.println(result);
+                                writer.flush();
+                            }
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Interrupted while grading a batch", e);
+        } finally {
+            // wait for every submission already read to be written back
+            inFlight.acquireUninterruptibly(maxInFlight);
+        }
+    }
+
+    /**
+     * grade one submission.
+     * @param answer the compiled correct answer
+     * @param submission one line of the request
+     * @return the line to write back
+     */
+    static String grade(final CompiledAnswer answer, final String submission) {
+        String id = null;
+        try {
+            JsonParser json = JSON_FACTORY.createParser(submission);
+            if (json.nextToken() != JsonToken.START_OBJECT) {
+                throw new CheckerException("Invalid JSON: incorrect format");
+            }
+
+            String test = null;
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                String field = json.getCurrentName();
+                JsonToken token = json.nextToken();
+                if ("id".equals(field) && token.isScalarValue()) {
+                    id = json.getText();
+                } else if ("test".equals(field) && token == JsonToken.VALUE_STRING) {
+                    test = json.getText();
+                } else if ("test".equals(field) && token == JsonToken.START_OBJECT) {
+                    StringWriter graph = new StringWriter();
+                    try (JsonGenerator copy = JSON_FACTORY.createGenerator(graph)) {
+                        copy.copyCurrentStructure(json);
+                    }
+                    test = graph.toString();
+                } else {
+                    json.skipChildren();
+                }
+            }
+            if (test == null) {
+                throw new CheckerException("Invalid JSON: key information missing");
+            }
+
+            String result = Checker.test(answer, test);
+            StringWriter line = new StringWriter();
+            JsonGenerator generator = JSON_FACTORY.createGenerator(line);
+            generator.writeStartObject();
+            generator.writeStringField("id", id);
+            // the fields of the result of Checker.test, as '/test' returns them
+            generator.writeRaw("," + result.substring(1, result.length() - 1));
+            generator.writeEndObject();
+            generator.close();
+            return line.toString();
+
+        } catch (Exception e) {
+            return errorLine(id, e);
+        }
+    }
+
+    /**
+     * @param id id of the submission, may be null
+     * @param e the reason the submission cannot be graded
+     * @return the line to write back
+     */
+    private static String errorLine(final String id, final Exception e) {
+        try {
+            StringWriter line = new StringWriter();
+            JsonGenerator generator = JSON_FACTORY.createGenerator(line);
+            generator.writeStartObject();
+            generator.writeStringField("id", id);
+            // json.simple's ParseException only describes itself in toString
+            generator.writeStringField("error", e.getMessage() != null ? e.getMessage() : e.toString());
+            generator.writeEndObject();
+            generator.close();
+            return line.toString();
+        } catch (IOException impossible) {
+            throw new IllegalStateException(impossible);
+        }
+    }
+}
@@ -20,8 +20,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 
@@ -32,7 +31,29 @@ import org.json.simple.parser.ParseException;
 public final class Checker {
 
     static final private double ORIGIN_RADIUS = 0.010;
-    static final private int NUM_COLOR = 3;
+    static final int NUM_COLOR = 3;
+    static final private double POSITION_TOLERANCE = 50;
+    static final private int ANSWER_CACHE_SIZE = 256;
+
+    private static final AnswerCache ANSWERS = new AnswerCache(ANSWER_CACHE_SIZE);
+
+    /**
+     * errorPrecedence: the cheap checks of every color take precedence over shape and position (see CheckerOptions).
+     */
+    static final String BY_STAGE = "stage";
+
+    /**
+     * errorPrecedence: every check of a color takes precedence over the checks of the next color.
+     */
+    static final String BY_COLOR = "color";
+
+    private static final String WRONG_SHAPE = ": curve is the wrong shape!";
+    private static final String WRONG_POSITION = ": curve is positioned incorrectly!";
+    private static final String WRONG_LABELS = ": labels are incorrectly placed!";
+    private static final String WRONG_CURVE_COUNT = ": You've drawn the wrong number of curves!";
+    private static final String CURVE_TOO_SMALL = ": One of the curve is too small!";
+    private static final String WRONG_INTERCEPTS = ": One of the curve contains wrong number of intercepts!";
+    private static final String WRONG_TURNING_POINTS = ":One of the curve contains wrong number of turning points.";
 
     /**
      * Utility class should not have public or default constructor.
@@ -48,40 +69,64 @@ public final class Checker {
      * @param pts points that make up a curve
      * @return normalised points
      */
-    private static Point[] normaliseShape(final Point[] pts) {
-        double minX = pts[0].x;
-        double maxX = pts[0].x;
-        double minY = pts[0].y;
-        double maxY = pts[0].y;
-        for (int i = 1; i < pts.length; i++) {
-            minX = Math.min(minX, pts[i].x);
-            maxX = Math.max(maxX, pts[i].x);
-            minY = Math.min(minY, pts[i].y);
-            maxY = Math.max(maxY, pts[i].y);
+    static Section normaliseShape(final Section pts) {
+        int n = pts.length();
+        return normaliseShape(pts, new double[n], new double[n]);
+    }
+
+    /**
+     * normaliseShape(pts) into buffers of the current thread.
+     *
+     * @param pts points that make up a curve
+     * @param scratch buffers of the current thread
+     * @param slot slot of scratch to write the points into
+     * @return normalised points, valid until the slot is next used
+     */
+    static Section normaliseShape(final Section pts, final Scratch scratch, final int slot) {
+        int n = pts.length();
+        return normaliseShape(pts, scratch.xs(slot, n), scratch.ys(slot, n));
+    }
+
+    /**
+     * @param pts points that make up a curve
+     * @param nxs array to write the normalised x-coordinates into, at least as long as pts
+     * @param nys array to write the normalised y-coordinates into, at least as long as pts
+     * @return normalised points
+     */
+    private static Section normaliseShape(final Section pts, final double[] nxs, final double[] nys) {
+        double[] xs = pts.xs;
+        double[] ys = pts.ys;
+        int offset = pts.offset;
+        int n = pts.length();
+
+        double minX = xs[offset];
+        double maxX = xs[offset];
+        double minY = ys[offset];
+        double maxY = ys[offset];
+        for (int i = offset + 1; i < offset + n; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
         }
         double rangeX = maxX - minX;
         double rangeY = maxY - minY;
 
-        Point[] normalised = new Point[pts.length];
-        for (int i = 0; i < pts.length; i++) {
-            double nx;
+        for (int i = 0; i < n; i++) {
             if (rangeX == 0) {
-                nx = 0;
+                nxs[i] = 0;
             } else {
-                nx = (pts[i].x - minX) / rangeX;
+                nxs[i] = (xs[offset + i] - minX) / rangeX;
             }
 
-            double ny;
             if (rangeY == 0) {
-                ny = 0;
+                nys[i] = 0;
             } else {
-                ny = (pts[i].y - minY) / rangeY;
+                nys[i] = (ys[offset + i] - minY) / rangeY;
             }
-
-            normalised[i] = new Point(nx, ny);
         }
 
-        return normalised;
+        return new Section(nxs, nys, 0, n);
     }
 
     /**
@@ -93,88 +138,61 @@ public final class Checker {
      * @param pts points that make up a curve
      * @return normalised points
      */
-    private static Point[] normalisePosition(final Point[] pts) {
-        double maxX = pts[0].x;
-        double maxY = pts[0].y;
-        for (int i = 1; i < pts.length; i++) {
-            maxX = Math.max(maxX, Math.abs(pts[i].x));
-            maxY = Math.max(maxY, Math.abs(pts[i].y));
-        }
-
-        Point[] normalised = new Point[pts.length];
-        for (int i = 0; i < pts.length; i++) {
-            double nx;
-            if (maxX == 0) {
-                nx = 0;
-            } else {
-                nx = pts[i].x / maxX;
-            }
-
-            double ny;
-            if (maxY == 0) {
-                ny = 0;
-            } else {
-                ny = pts[i].y / maxY;
-            }
-
-            normalised[i] = new Point(nx, ny);
-        }
-
-        return normalised;
+    static Section normalisePosition(final Section pts) {
+        int n = pts.length();
+        return normalisePosition(pts, new double[n], new double[n]);
     }
 
-
     /**
-     * Calculate the error between two curves' points using "dynamic time wrapping". The algorithm is on wikipedia.
-     *
-     * Note the cost is square of distance between two matching points. This is inspired by method in
-     * "least error optimisation".
+     * normalisePosition(pts) into buffers of the current thread.
      *
-     * @param trusted points of curve of answer
-     * @param untrusted points of curve of user
-     * @return the measured error.
+     * @param pts points that make up a curve
+     * @param scratch buffers of the current thread
+     * @param slot slot of scratch to write the points into
+     * @return normalised points, valid until the slot is next used
      */
-    private static double findDtwError(final Point[] trusted, final Point[] untrusted) {
-        int n = trusted.length;
-        int m = untrusted.length;
+    static Section normalisePosition(final Section pts, final Scratch scratch, final int slot) {
+        int n = pts.length();
+        return normalisePosition(pts, scratch.xs(slot, n), scratch.ys(slot, n));
+    }
 
-        double[][] dtw = new double[n + 1][m + 1];
-        for (int i = 1; i <= n; i++) {
-            dtw[i][0] = 10000;
-        }
-        for (int j = 1; j <= m; j++) {
-            dtw[0][j] = 10000;
+    /**
+     * @param pts points that make up a curve
+     * @param nxs array to write the normalised x-coordinates into, at least as long as pts
+     * @param nys array to write the normalised y-coordinates into, at least as long as pts
+     * @return normalised points
+     */
+    private static Section normalisePosition(final Section pts, final double[] nxs, final double[] nys) {
+        double[] xs = pts.xs;
+        double[] ys = pts.ys;
+        int offset = pts.offset;
+        int n = pts.length();
+
+        double maxX = xs[offset];
+        double maxY = ys[offset];
+        for (int i = offset + 1; i < offset + n; i++) {
+            maxX = Math.max(maxX, Math.abs(xs[i]));
+            maxY = Math.max(maxY, Math.abs(ys[i]));
         }
-        dtw[0][0] = 0;
 
-        for (int i = 1; i <= n; i++) {
-            for (int j = 1; j <= m; j++) {
-                double cost = Math.pow(Point.getDist(trusted[i - 1], untrusted[j - 1]), 2.0);
-                dtw[i][j] = cost + Math.min(Math.min(dtw[i - 1][j], dtw[i][j - 1]), dtw[i - 1][j - 1]);
+        for (int i = 0; i < n; i++) {
+            if (maxX == 0) {
+                nxs[i] = 0;
+            } else {
+                nxs[i] = xs[offset + i] / maxX;
             }
-        }
-
-        double err1 = dtw[n][m];
 
-        for (int i = 1; i <= n; i++) {
-            dtw[i][0] = 10000;
-        }
-        for (int j = 1; j <= m; j++) {
-            dtw[0][j] = 10000;
-        }
-        dtw[0][0] = 0;
-
-        for (int i = 1; i <= n; i++) {
-            for (int j = 1; j <= m; j++) {
-                double cost = Math.pow(Point.getDist(trusted[i - 1], untrusted[m - j]), 2.0);
-                dtw[i][j] = cost + Math.min(Math.min(dtw[i - 1][j], dtw[i][j - 1]), dtw[i - 1][j - 1]);
+            if (maxY == 0) {
+                nys[i] = 0;
+            } else {
+                nys[i] = ys[offset + i] / maxY;
             }
         }
-        double err2 = dtw[n][m];
 
-        return Math.min(err1, err2);
+        return new Section(nxs, nys, 0, n);
     }
 
+
     /**
      * test the position of a set of special points (called knots) of user's curve
      * against the corresponding curve in the answer
@@ -291,154 +309,218 @@ public final class Checker {
     }
 
     /**
-     * split a curve into an array of sections. The split points are turning points.
+     * split a curve into an array of sections. The split points are turning points, and each turning point starts the
+     * section after it. The sections are views of the curve's arrays, in order along the curve.
      * @param curve the input curve
      * @return an array of sections
      */
-    private static LinkedList<Point[]> splitCurve(final Curve curve) {
-        LinkedList<Knot> knots = new LinkedList<>();
-        knots.addAll(Arrays.asList(curve.getMaxima()));
-        knots.addAll(Arrays.asList(curve.getMinima()));
-
+    static Section[] splitCurve(final Curve curve) {
+        int[] maxima = curve.indexOf(curve.getMaxima());
+        int[] minima = curve.indexOf(curve.getMinima());
+        int[] splits = Arrays.copyOf(maxima, maxima.length + minima.length);
+        System.arraycopy(minima, 0, splits, maxima.length, minima.length);
+        Arrays.sort(splits);
+
+        Section[] sections = new Section[splits.length + 1];
+        int count = 0;
         int prev = 0;
-        Point[] pts = curve.getPts();
-        LinkedList<Point[]> sections = new LinkedList<>();
-        for (int i = 0; i < pts.length; i++) {
-            for (int j = 0; j < knots.size(); j++) {
-                if (pts[i].x == knots.get(j).x && pts[i].y == knots.get(j).y) {
-                    knots.remove(j);
-                    Point[] tmp = Arrays.copyOfRange(pts, prev, i);
-                    sections.push(tmp);
-                    prev = i;
-                }
-            }
-
-            if (knots.size() == 0) {
-                break;
+        for (int split : splits) {
+            // knots not on the curve, at its first point, or at the same point as another knot do not split it
+            if (split > prev) {
+                sections[count++] = curve.getSection(prev, split);
+                prev = split;
             }
         }
+        sections[count++] = curve.getSection(prev, curve.getNumPts());
 
-        Point[] tmp = Arrays.copyOfRange(pts, prev, pts.length);
-        sections.push(tmp);
-        return sections;
+        return count == sections.length ? sections : Arrays.copyOf(sections, count);
     }
 
 
+    /**
+     * Measure the shape error of one section of user's curve against a section of the answer. Once the error is known
+     * to exceed the tolerance, either from the lower bound of a constrained warping window or part way through DTW,
+     * a lower bound of it is returned instead of the error itself. If the question compares coarse to fine, the error
+     * may be decided at a coarser level of resolution.
+     *
+     * @param trusted compiled curve in the answer
+     * @param idx index of the section in trusted
+     * @param untrusted shape-normalised section of user
+     * @param tolerance largest error the section may have
+     * @return the error, or a lower bound of it larger than tolerance, and the level of resolution that decided it
+     */
+    private static DtwCascade.Decision shapeError(final CompiledCurve trusted, final int idx, final Section untrusted,
+                                                  final double tolerance) {
+        double window = trusted.getWindow();
+        if (trusted.getEnvelopes() != null) {
+            double bound = Dtw.lowerBound(trusted.getEnvelopes()[idx], untrusted, window);
+            if (bound > tolerance) {
+                return new DtwCascade.Decision(bound, 0);
+            }
+        }
+        if (trusted.getShapePyramids() != null) {
+            return DtwCascade.error(trusted.getShapePyramids()[idx], untrusted, tolerance);
+        }
+        return new DtwCascade.Decision(Dtw.error(trusted.getShapes()[idx], untrusted, window, tolerance), 0);
+    }
+
     /**
      * Test the shape of user's curve against the corresponding curve in the answer.
-     * @param trustedCurves curves in the answer
-     * @param untrustedCurves corresponding curves of user
+     * @param trusted compiled curve in the answer
+     * @param untrusted corresponding curve of user
+     * @param i index of the curve, for diagnostics
+     * @param trace diagnostics of the check, or null
      * @return true if two curves are at similar shape, false otherwise
      * @throws CheckerException thrown when one curve is split into wrong number of sections. (this should not happen,
      * if happens, then it is a problem of the splitting algorithm.)
      */
-    private static boolean testShape(final Curve[] trustedCurves, final Curve[] untrustedCurves) throws CheckerException {
+    static boolean testShape(final CompiledCurve trusted, final Curve untrusted, final int i,
+                             final Diagnostics.Trace trace) throws CheckerException {
         double strict = 0.1;
         double loose = 0.5;
+        boolean debug = trace != null && trace.isEnabled(Diagnostics.Level.DEBUG);
 
-        for (int i = 0; i < trustedCurves.length; i++) {
-
-            System.out.println("    Curve " + i);
+        if (debug) {
+            trace.add("    Curve " + i);
+        }
 
-            LinkedList<Point[]> sec1 = splitCurve(trustedCurves[i]);
-            LinkedList<Point[]> sec2 = splitCurve(untrustedCurves[i]);
+        Section[] shapes1 = trusted.getShapes();
+        Section[] sec2 = splitCurve(untrusted);
 
-            if (sec1.size() != sec2.size()) {
-                throw new CheckerException("wrong number of sections.");
-            }
+        if (shapes1.length != sec2.length) {
+            throw new CheckerException("wrong number of sections.");
+        }
 
-            boolean equal = true;
-            for (int j = 0; j < sec1.size(); j++) {
-                Point[] pts1 = normaliseShape(sec1.get(j));
-                Point[] pts2 = normaliseShape(sec2.get(j));
-                double err = findDtwError(pts1, pts2);
-                System.out.println("        sec " + j + ": " + err);
+        Scratch scratch = Scratch.get();
+        Section[] shapes2 = new Section[shapes1.length];
+        for (int j = 0; j < shapes1.length; j++) {
+            shapes2[j] = normaliseShape(sec2[j], scratch, j);
+        }
 
-                double tlr;
-                if (j == 0 || j == sec1.size() - 1) {
-                    tlr = loose;
-                } else {
-                    tlr = strict;
-                }
+        boolean equal = true;
+        for (int j = 0; j < shapes1.length; j++) {
+            double tlr;
+            if (j == 0 || j == shapes1.length - 1) {
+                tlr = loose;
+            } else {
+                tlr = strict;
+            }
 
-                if (err > tlr) {
-                    equal = false;
-                    break;
-                }
+            DtwCascade.Decision decision = shapeError(trusted, j, shapes2[j], tlr);
+            double err = decision.getError();
+            if (debug) {
+                traceSection(trace, trusted, j, decision);
             }
 
-            if (equal) {
-                continue;
+            if (err > tlr) {
+                equal = false;
+                break;
             }
+        }
+
+        if (equal) {
+            return true;
+        }
 
-            System.out.println("        reverse");
+        if (debug) {
+            trace.add("        reverse");
+        }
 
-            for (int j = 0; j < sec1.size(); j++) {
-                Point[] pts1 = normaliseShape(sec1.get(j));
-                Point[] pts2 = normaliseShape(sec2.get(sec1.size() - j - 1));
-                double err = findDtwError(pts1, pts2);
-                System.out.println("        sec " + j + ": " + err);
+        for (int j = 0; j < shapes1.length; j++) {
+            double tlr;
+            if (j == 0 || j == shapes1.length - 1) {
+                tlr = loose;
+            } else {
+                tlr = strict;
+            }
 
-                double tlr;
-                if (j == 0 || j == sec1.size() - 1) {
-                    tlr = loose;
-                } else {
-                    tlr = strict;
-                }
+            DtwCascade.Decision decision = shapeError(trusted, j, shapes2[shapes1.length - j - 1], tlr);
+            double err = decision.getError();
+            if (debug) {
+                traceSection(trace, trusted, j, decision);
+            }
 
-                if (err > tlr) {
-                    return false;
-                }
+            if (err > tlr) {
+                return false;
             }
         }
         return true;
     }
 
     /**
-     * Test the position of user's curve against the corresponding curve in the answer.
+     * add the error of one section to a trace.
+     * @param trace diagnostics of the check
+     * @param trusted compiled curve in the answer
+     * @param j index of the section
+     * @param decision the error of the section, and the level of resolution that decided it
+     */
+    private static void traceSection(final Diagnostics.Trace trace, final CompiledCurve trusted, final int j,
+                                     final DtwCascade.Decision decision) {
+        if (trusted.getShapePyramids() != null) {
+            trace.add("        sec " + j + ": " + decision.getError() + " (level " + decision.getLevel() + ")");
+        } else {
+            trace.add("        sec " + j + ": " + decision.getError());
+        }
+    }
+
+    /**
+     * Test the position of user's curve against the corresponding curve in the answer. The positions of its knots are
+     * tested separately, by testKnots.
      *
-     * @param trustedCurves curves in the answer
-     * @param untrustedCurves corresponding curves of user
+     * @param trustedCurve compiled curve in the answer
+     * @param untrusted corresponding curve of user
+     * @param i index of the curve, for diagnostics
+     * @param trace diagnostics of the check, or null
      * @return true if two curves are at similar position relative to origin, false otherwise
      * @throws CheckerException thrown when two curves have different number of points
      */
-    private static boolean testPosition(final Curve[] trustedCurves, final Curve[] untrustedCurves) throws CheckerException {
-        for (int i = 0; i < trustedCurves.length; i++) {
-            double errPositionDtw = findDtwError(normalisePosition(trustedCurves[i].getPts()), normalisePosition(untrustedCurves[i].getPts()));
-
-            boolean correct = (errPositionDtw < 50)
-                    && testKnotsPosition(trustedCurves[i].getInterX(), untrustedCurves[i].getInterX())
-                    && testKnotsPosition(trustedCurves[i].getInterY(), untrustedCurves[i].getInterY())
-                    && testKnotsPosition(trustedCurves[i].getMaxima(), untrustedCurves[i].getMaxima())
-                    && testKnotsPosition(trustedCurves[i].getMinima(), untrustedCurves[i].getMinima());
-
-            if (!correct) {
-                return false;
+    static boolean testPosition(final CompiledCurve trustedCurve, final Curve untrusted, final int i,
+                                final Diagnostics.Trace trace) throws CheckerException {
+        Section position = normalisePosition(untrusted.getSection(), Scratch.get(), 0);
+        double errPositionDtw;
+        if (trustedCurve.getPositionPyramid() != null) {
+            DtwCascade.Decision decision = DtwCascade.error(trustedCurve.getPositionPyramid(), position,
+                    POSITION_TOLERANCE);
+            errPositionDtw = decision.getError();
+            if (trace != null && trace.isEnabled(Diagnostics.Level.DEBUG)) {
+                trace.add("    position " + i + ": " + errPositionDtw + " (level " + decision.getLevel() + ")");
             }
+        } else {
+            errPositionDtw = Dtw.error(trustedCurve.getPosition(), position, POSITION_TOLERANCE);
         }
 
-        return true;
+        return errPositionDtw < POSITION_TOLERANCE;
     }
 
-
     /**
-     * Test the position of labels.
-     * @param trustedCurves curves in the answer
-     * @param untrustedCurves corresponding curves from user
-     * @return true if the labels are correctly placed in user's curves
+     * Test the position of the intercepts and turning points of user's curve against the corresponding curve in the
+     * answer, which only compares the quadrants they are in.
+     *
+     * @param trustedCurve compiled curve in the answer
+     * @param untrusted corresponding curve of user
+     * @return true if the knots are in the right quadrants, false otherwise
      */
-    private static boolean testSymbols(final Curve[] trustedCurves, final Curve[] untrustedCurves) {
-        for (int i = 0; i < trustedCurves.length; i++) {
-            boolean correct = testKnotsSymbols(trustedCurves[i].getInterX(), untrustedCurves[i].getInterX())
-                    && testKnotsSymbols(trustedCurves[i].getInterY(), untrustedCurves[i].getInterY())
-                    && testKnotsSymbols(trustedCurves[i].getMaxima(), untrustedCurves[i].getMaxima())
-                    && testKnotsSymbols(trustedCurves[i].getMinima(), untrustedCurves[i].getMinima());
-            if (!correct) {
-                return false;
-            }
-        }
+    private static boolean testKnots(final CompiledCurve trustedCurve, final Curve untrusted) {
+        Curve trusted = trustedCurve.getCurve();
+        return testKnotsPosition(trusted.getInterX(), untrusted.getInterX())
+                && testKnotsPosition(trusted.getInterY(), untrusted.getInterY())
+                && testKnotsPosition(trusted.getMaxima(), untrusted.getMaxima())
+                && testKnotsPosition(trusted.getMinima(), untrusted.getMinima());
+    }
 
-        return true;
+
+    /**
+     * Test the position of labels of one curve.
+     * @param trustedCurve compiled curve in the answer
+     * @param untrusted corresponding curve from user
+     * @return true if the labels are correctly placed in user's curve
+     */
+    private static boolean testSymbols(final CompiledCurve trustedCurve, final Curve untrusted) {
+        Curve trusted = trustedCurve.getCurve();
+        return testKnotsSymbols(trusted.getInterX(), untrusted.getInterX())
+                && testKnotsSymbols(trusted.getInterY(), untrusted.getInterY())
+                && testKnotsSymbols(trusted.getMaxima(), untrusted.getMaxima())
+                && testKnotsSymbols(trusted.getMinima(), untrusted.getMinima());
     }
 
 
@@ -447,7 +529,7 @@ public final class Checker {
      * @param curves the input curves
      * @return an array of array of curves, each array of curve corresponds to curves drawn in one color.
      */
-    private static Curve[][] classify(final Curve[] curves) {
+    static Curve[][] classify(final Curve[] curves) {
         int n = NUM_COLOR;
 
         ArrayList<ArrayList<Curve>> result = new ArrayList<>();
@@ -492,6 +574,14 @@ public final class Checker {
         return colors[idx];
     }
 
+    /**
+     * @param precedence value of the errorPrecedence option
+     * @return true if it is known
+     */
+    static boolean isPrecedence(final String precedence) {
+        return BY_STAGE.equals(precedence) || BY_COLOR.equals(precedence);
+    }
+
     /**
      * check the correctness of user-plotted graphs against a pre-defined answer.
      *
@@ -508,119 +598,469 @@ public final class Checker {
 
     static String test(final String targetJSONString, final String testJSONString)
                                                     throws CheckerException, ParseException {
-        // parse JSON string
-        HashMap<String, Object> trustedData = Parser.parseInputJSONString(targetJSONString);
-        Curve[] rawTargetCurves = (Curve[]) trustedData.get("curves");
+        return test(ANSWERS.get(targetJSONString), testJSONString);
+    }
+
+    /**
+     * check the correctness of user-plotted graphs against a pre-defined answer, optionally in parallel.
+     *
+     * @param targetJSONString a JSON String which contains the correct answer
+     * @param testJSONString a JSON String which contains user's answer
+     * @param pool pool to evaluate colors and curves in parallel, or null to evaluate them one after another
+     * @return a JSON string containing two field. 1. the test result; 2. the error if there is one.
+     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
+     *      in the correct format. Also, it will be thrown if the information in JSON string is not valid.
+     * @throws ParseException it is thrown when input JSON string cannot be parsed.
+     */
+    static String test(final String targetJSONString, final String testJSONString, final ForkJoinPool pool)
+                                                    throws CheckerException, ParseException {
+        return test(ANSWERS.get(targetJSONString), testJSONString, pool);
+    }
+
+    /**
+     * check the correctness of user-plotted graphs against a pre-defined answer, adding diagnostics to a trace.
+     *
+     * @param targetJSONString a JSON String which contains the correct answer
+     * @param testJSONString a JSON String which contains user's answer
+     * @param pool pool to evaluate colors and curves in parallel, or null to evaluate them one after another
+     * @param trace diagnostics of the request being graded, or null
+     * @return a JSON string containing two field. 1. the test result; 2. the error if there is one.
+     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
+     *      in the correct format. Also, it will be thrown if the information in JSON string is not valid.
+     * @throws ParseException it is thrown when input JSON string cannot be parsed.
+     */
+    static String test(final String targetJSONString, final String testJSONString, final ForkJoinPool pool,
+                       final Diagnostics.Trace trace) throws CheckerException, ParseException {
+        return test(ANSWERS.get(targetJSONString), testJSONString, pool, trace);
+    }
+
+    /**
+     * check the correctness of user-plotted graphs against a pre-defined answer that has already been compiled.
+     *
+     * @param answer the compiled correct answer
+     * @param testJSONString a JSON String which contains user's answer
+     * @return a JSON string containing two field. 1. the test result; 2. the error if there is one.
+     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
+     *      in the correct format. Also, it will be thrown if the information in JSON string is not valid.
+     * @throws ParseException it is thrown when input JSON string cannot be parsed. It is thrown by the external library
+     *      json.simple.
+     */
+    static String test(final CompiledAnswer answer, final String testJSONString)
+                                                    throws CheckerException, ParseException {
+        return test(answer, testJSONString, null);
+    }
 
-        HashMap<String, Object> untrustedData = Parser.parseInputJSONString(testJSONString);
-        Curve[] rawTestCurves = (Curve[]) untrustedData.get("curves");
+    /**
+     * check the correctness of user-plotted graphs against a pre-defined answer that has already been compiled.
+     *
+     * The cheap checks (counts, positions of knots and labels) of every color run first, and the shape and position
+     * are only compared by DTW if none of them fails. In parallel, the shape and position of every curve of every
+     * color are checked as separate tasks. Either way, the error reported is the first in the order set by the
+     * errorPrecedence option of the answer.
+     *
+     * @param answer the compiled correct answer
+     * @param testJSONString a JSON String which contains user's answer
+     * @param pool pool to evaluate colors and curves in parallel, or null to evaluate them one after another
+     * @return a JSON string containing two field. 1. the test result; 2. the error if there is one.
+     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
+     *      in the correct format. Also, it will be thrown if the information in JSON string is not valid.
+     * @throws ParseException it is thrown when input JSON string cannot be parsed.
+     */
+    static String test(final CompiledAnswer answer, final String testJSONString, final ForkJoinPool pool)
+                                                    throws CheckerException, ParseException {
+        Diagnostics.Trace trace = Diagnostics.trace();
+        try {
+            return test(answer, testJSONString, pool, trace);
+        } finally {
+            if (trace != null) {
+                trace.end();
+            }
+        }
+    }
 
-        // separate curves according to their colors
-        Curve[][] targetClasses = classify(rawTargetCurves);
-        Curve[][] testClasses = classify(rawTestCurves);
+    /**
+     * check the correctness of user-plotted graphs against a compiled answer, adding diagnostics to a trace.
+     *
+     * @param answer the compiled correct answer
+     * @param testJSONString a JSON String which contains user's answer
+     * @param pool pool to evaluate colors and curves in parallel, or null to evaluate them one after another
+     * @param trace diagnostics of the request being graded, or null
+     * @return a JSON string containing two field. 1. the test result; 2. the error if there is one.
+     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
+     *      in the correct format. Also, it will be thrown if the information in JSON string is not valid.
+     * @throws ParseException it is thrown when input JSON string cannot be parsed.
+     */
+    static String test(final CompiledAnswer answer, final String testJSONString, final ForkJoinPool pool,
+                       final Diagnostics.Trace trace) throws CheckerException, ParseException {
+        return test(answer, () -> Parser.parseGraph(testJSONString), pool, trace);
+    }
 
-        // start testing
-        JSONObject jsonResult = new JSONObject();
+    /**
+     * check the correctness of a user-plotted graph in the binary encoding of GraphCodec, adding diagnostics to a
+     * trace.
+     *
+     * @param targetJSONString a JSON String which contains the correct answer
+     * @param testGraph user's answer, encoded by GraphCodec
+     * @param pool pool to evaluate colors and curves in parallel, or null to evaluate them one after another
+     * @param trace diagnostics of the request being graded, or null
+     * @return a JSON string containing two field. 1. the test result; 2. the error if there is one.
+     * @throws CheckerException it is thrown when information are missing in the answer or in user's graph, or they are
+     *      not in the correct format.
+     * @throws ParseException it is thrown when the answer's JSON string cannot be parsed.
+     */
+    static String test(final String targetJSONString, final byte[] testGraph, final ForkJoinPool pool,
+                       final Diagnostics.Trace trace) throws CheckerException, ParseException {
+        return test(ANSWERS.get(targetJSONString), testGraph, pool, trace);
+    }
 
-        for (int j = 0; j < NUM_COLOR; j++) {
+    /**
+     * check the correctness of a user-plotted graph in the binary encoding of GraphCodec against a compiled answer,
+     * adding diagnostics to a trace.
+     *
+     * @param answer the compiled correct answer
+     * @param testGraph user's answer, encoded by GraphCodec
+     * @param pool pool to evaluate colors and curves in parallel, or null to evaluate them one after another
+     * @param trace diagnostics of the request being graded, or null
+     * @return a JSON string containing two field. 1. the test result; 2. the error if there is one.
+     * @throws CheckerException it is thrown when user's graph is truncated, or information in it is not valid.
+     * @throws ParseException never, declared for symmetry with the JSON version
+     */
+    static String test(final CompiledAnswer answer, final byte[] testGraph, final ForkJoinPool pool,
+                       final Diagnostics.Trace trace) throws CheckerException, ParseException {
+        return test(answer, () -> GraphCodec.decode(testGraph), pool, trace);
+    }
 
-            /*
-             Test: Number of curves
-             Test: Size of curves
-             Test: Number of intercepts
-             Test: Number of turning Pts
-             Test: Shape of curve
-                    - total error
-                    - max error (NOT DONE)
-             Test: Position
-                    - total error
-                    - individual error (NOT DONE)
-                    - test positions of intercepts and turning points
-             Test: Labels
-            */
+    /**
+     * check the correctness of a user-plotted graph against a pre-defined answer, both already parsed, adding
+     * diagnostics to a trace.
+     *
+     * @param targetHash content hash of the answer's JSON
+     * @param target the correct answer
+     * @param test user's answer
+     * @param pool pool to evaluate colors and curves in parallel, or null to evaluate them one after another
+     * @param trace diagnostics of the request being graded, or null
+     * @return a JSON string containing two field. 1. the test result; 2. the error if there is one.
+     * @throws CheckerException it will be thrown if the information in user's graph is not valid.
+     * @throws ParseException never, declared for symmetry with the JSON version
+     */
+    static String test(final String targetHash, final Graph target, final Graph test, final ForkJoinPool pool,
+                       final Diagnostics.Trace trace) throws CheckerException, ParseException {
+        return test(ANSWERS.get(targetHash, target), test, pool, trace);
+    }
 
-            String color = getColor(j);
-            Curve[] targetCurves = targetClasses[j];
-            Curve[] testCurves = testClasses[j];
+    /**
+     * check the correctness of a user-plotted graph that has already been parsed against a compiled answer, adding
+     * diagnostics to a trace.
+     *
+     * @param answer the compiled correct answer
+     * @param test user's answer
+     * @param pool pool to evaluate colors and curves in parallel, or null to evaluate them one after another
+     * @param trace diagnostics of the request being graded, or null
+     * @return a JSON string containing two field. 1. the test result; 2. the error if there is one.
+     * @throws CheckerException it will be thrown if the information in user's graph is not valid.
+     * @throws ParseException never, declared for symmetry with the JSON version
+     */
+    static String test(final CompiledAnswer answer, final Graph test, final ForkJoinPool pool,
+                       final Diagnostics.Trace trace) throws CheckerException, ParseException {
+        return test(answer, () -> test, pool, trace);
+    }
 
-            if (targetCurves.length == 0 && testCurves.length == 0) {
-                continue;
+    /**
+     * Where user's graph comes from, in whichever encoding it was sent.
+     */
+    private interface GraphSource {
+        /**
+         * @return user's graph
+         * @throws CheckerException thrown when information in the graph is missing or not valid
+         * @throws ParseException thrown when the graph is not well-formed JSON
+         */
+        Graph get() throws CheckerException, ParseException;
+    }
+
+    /**
+     * check the correctness of user-plotted graphs against a compiled answer, adding diagnostics to a trace.
+     *
+     * @param answer the compiled correct answer
+     * @param source decodes user's graph, timed as part of parsing
+     * @param pool pool to evaluate colors and curves in parallel, or null to evaluate them one after another
+     * @param trace diagnostics of the request being graded, or null
+     * @return a JSON string containing two field. 1. the test result; 2. the error if there is one.
+     * @throws CheckerException thrown by the source, or when information in user's graph is not valid
+     * @throws ParseException thrown by the source
+     */
+    private static String test(final CompiledAnswer answer, final GraphSource source, final ForkJoinPool pool,
+                               final Diagnostics.Trace trace) throws CheckerException, ParseException {
+        Metrics.Timings timings = Metrics.Timings.start(pool != null);
+        String errCause;
+        try {
+            // decode user's graph, and reduce its points in the same way as the answer's
+            long since = System.nanoTime();
+            Curve[] parsedCurves = source.get().getCurves();
+            long points = 0;
+            for (Curve curve : parsedCurves) {
+                points += curve.getNumPts();
+            }
+            Metrics.recordPoints(points);
+            Curve[] rawTestCurves = PointReduction.reduce(parsedCurves, answer.getOptions());
+            timings.add(Metrics.Stage.PARSE, since);
+
+            // separate curves according to their colors
+            since = System.nanoTime();
+            Curve[][] testClasses = classify(rawTestCurves);
+            timings.add(Metrics.Stage.CLASSIFY, since);
+
+            // start testing
+            OrderedChecks checks = checks(answer, testClasses, trace, timings);
+            if (pool == null) {
+                errCause = checks.run();
+            } else {
+                errCause = checks.run(pool);
             }
+        } catch (CheckerException | ParseException | RuntimeException e) {
+            timings.record(Metrics.Outcome.INVALID);
+            throw e;
+        }
+        timings.record(outcome(errCause));
 
-            System.out.println("class " + j + " start test");
+        JSONObject jsonResult = new JSONObject();
+        if (errCause != null) {
+            jsonResult.put("errCause", errCause);
+            jsonResult.put("equal", false);
+            return jsonResult.toJSONString();
+        }
 
-            // make sure two graphs have same number of curves
-            if (targetCurves.length != testCurves.length) {
-                jsonResult.put("errCause", "Color " + color + ": You've drawn the wrong number of curves!");
-                jsonResult.put("equal", false);
-                return jsonResult.toJSONString();
-            }
+        // If we make it to here, we have an exact match with the correct answer.
+        jsonResult.put("errCause", "null");
+        jsonResult.put("equal", true);
+        return jsonResult.toJSONString();
+    }
+
+    /**
+     * @param errCause the cause of the first error found, or null if user's graph is correct
+     * @return the kind of result it is
+     */
+    static Metrics.Outcome outcome(final String errCause) {
+        if (errCause == null) {
+            return Metrics.Outcome.CORRECT;
+        } else if (errCause.endsWith(WRONG_CURVE_COUNT)) {
+            return Metrics.Outcome.WRONG_CURVE_COUNT;
+        } else if (errCause.endsWith(CURVE_TOO_SMALL)) {
+            return Metrics.Outcome.CURVE_TOO_SMALL;
+        } else if (errCause.endsWith(WRONG_INTERCEPTS)) {
+            return Metrics.Outcome.WRONG_INTERCEPTS;
+        } else if (errCause.endsWith(WRONG_TURNING_POINTS)) {
+            return Metrics.Outcome.WRONG_TURNING_POINTS;
+        } else if (errCause.endsWith(WRONG_SHAPE)) {
+            return Metrics.Outcome.WRONG_SHAPE;
+        } else if (errCause.endsWith(WRONG_POSITION)) {
+            return Metrics.Outcome.WRONG_POSITION;
+        } else if (errCause.endsWith(WRONG_LABELS)) {
+            return Metrics.Outcome.WRONG_LABELS;
+        }
+        return Metrics.Outcome.INVALID;
+    }
+
+    /**
+     * The curves of one color. User's curves are paired with the curves of the answer when a check first needs them,
+     * which is only after their counts have been checked, as pairing them may compare their positions.
+     */
+    private static final class ColorCurves {
+        private final int idx;
+        private final String color;
+        private final CompiledCurve[] targetCurves;
+        private final Curve[] testCurves;
+        private final Metrics.Timings timings;
+        private Curve[] paired;
+
+        /**
+         * constructor for ColorCurves.
+         * @param idx index of the color
+         * @param targetCurves compiled curves of the answer in that color
+         * @param testCurves user's curves in that color
+         * @param timings time of each stage of the check
+         */
+        private ColorCurves(final int idx, final CompiledCurve[] targetCurves, final Curve[] testCurves,
+                            final Metrics.Timings timings) {
+            this.idx = idx;
+            this.color = getColor(idx);
+            this.targetCurves = targetCurves;
+            this.testCurves = testCurves;
+            this.timings = timings;
+        }
 
-            // make sure the curve from user is large enough.
-            for (int i = 0; i < testCurves.length; i++) {
-                Curve c = testCurves[i];
-                double rx = c.getMaxX() - c.getMinX();
-                double ry = c.getMaxY() - c.getMinY();
-                if (rx < 0.2 && ry < 0.2) {
-                    jsonResult.put("errCause", "Color " + color + ": One of the curve is too small!");
-                    jsonResult.put("equal", false);
-                    return jsonResult.toJSONString();
-                }
+        /**
+         * @return user's curves, the i-th paired with the i-th curve of the answer
+         */
+        private synchronized Curve[] paired() {
+            if (paired == null) {
+                long since = System.nanoTime();
+                paired = CurveAssignment.match(targetCurves, testCurves);
+                timings.add(Metrics.Stage.ASSIGN, since);
             }
+            return paired;
+        }
+    }
 
-            // make sure each curve has right number of x,y intercepts.
-            for (int i = 0; i < targetCurves.length; i++) {
-                boolean correct = (targetCurves[i].getInterX().length == testCurves[i].getInterX().length)
-                        && (targetCurves[i].getInterY().length == testCurves[i].getInterY().length);
-                if (!correct) {
-                    jsonResult.put("errCause", "Color " + color + ": One of the curve contains wrong number of intercepts!");
-                    jsonResult.put("equal", false);
-                    return jsonResult.toJSONString();
-                }
+    /**
+     * A check of one curve of user against the curve of the answer it is paired with.
+     */
+    private interface CurveCheck {
+        /**
+         * @param trusted compiled curve in the answer
+         * @param untrusted corresponding curve of user
+         * @param i index of the curve, for diagnostics
+         * @return true if the check passes
+         * @throws CheckerException thrown when the check cannot be done
+         */
+        boolean test(CompiledCurve trusted, Curve untrusted, int i) throws CheckerException;
+    }
+
+    /**
+     * list every check of user's graph, in the order of precedence of their errors. With BY_COLOR, the counts, shape,
+     * position and labels of a color come before those of the next color; with BY_STAGE, the counts of every color
+     * come first, then the positions of knots and the labels, then the shapes and positions. Either way, the counts of
+     * a color come before its other checks, which can then rely on its curves being paired.
+     *
+     * @param answer the compiled correct answer
+     * @param testClasses user's curves, classified by color
+     * @param trace diagnostics of the check, or null; lines of checks run in parallel may be in any order
+     * @param timings time of each stage of the check, summed over the checks
+     * @return the checks, of which the counts, positions of knots and labels are cheap
+     */
+    private static OrderedChecks checks(final CompiledAnswer answer, final Curve[][] testClasses,
+                                        final Diagnostics.Trace trace, final Metrics.Timings timings) {
+        ArrayList<ColorCurves> colors = new ArrayList<>();
+        for (int j = 0; j < NUM_COLOR; j++) {
+            if (answer.getCurves(j).length != 0 || testClasses[j].length != 0) {
+                colors.add(new ColorCurves(j, answer.getCurves(j), testClasses[j], timings));
             }
+        }
 
-            // make sure each curve has right number of turning pts
-            for (int i = 0; i < targetCurves.length; i++) {
-                boolean correct = (targetCurves[i].getMaxima().length == testCurves[i].getMaxima().length)
-                        && (targetCurves[i].getMinima().length == testCurves[i].getMinima().length);
-                if (!correct) {
-                    jsonResult.put("errCause", "Color " + color + ":One of the curve contains wrong number of turning points.");
-                    jsonResult.put("equal", false);
-                    return jsonResult.toJSONString();
-                }
+        CurveCheck shape = (trusted, untrusted, i) -> testShape(trusted, untrusted, i, trace);
+        CurveCheck position = (trusted, untrusted, i) -> testPosition(trusted, untrusted, i, trace);
+        CurveCheck knots = (trusted, untrusted, i) -> testKnots(trusted, untrusted);
+        CurveCheck symbols = (trusted, untrusted, i) -> testSymbols(trusted, untrusted);
+
+        OrderedChecks checks = new OrderedChecks();
+        if (BY_COLOR.equals(answer.getOptions().getErrorPrecedence())) {
+            for (ColorCurves curves : colors) {
+                addCounts(checks, curves, trace);
+                addChecks(checks, curves, Metrics.Stage.SHAPE, false, WRONG_SHAPE, shape);
+                addChecks(checks, curves, Metrics.Stage.POSITION, false, WRONG_POSITION, position);
+                addChecks(checks, curves, Metrics.Stage.KNOTS, true, WRONG_POSITION, knots);
+                addChecks(checks, curves, Metrics.Stage.SYMBOLS, true, WRONG_LABELS, symbols);
+            }
+        } else {
+            for (ColorCurves curves : colors) {
+                addCounts(checks, curves, trace);
+            }
+            for (ColorCurves curves : colors) {
+                addChecks(checks, curves, Metrics.Stage.KNOTS, true, WRONG_POSITION, knots);
+            }
+            for (ColorCurves curves : colors) {
+                addChecks(checks, curves, Metrics.Stage.SYMBOLS, true, WRONG_LABELS, symbols);
             }
+            for (ColorCurves curves : colors) {
+                addChecks(checks, curves, Metrics.Stage.SHAPE, false, WRONG_SHAPE, shape);
+            }
+            for (ColorCurves curves : colors) {
+                addChecks(checks, curves, Metrics.Stage.POSITION, false, WRONG_POSITION, position);
+            }
+        }
+        return checks;
+    }
 
-            // Test the shape of the curve
-            if (!testShape(targetCurves, testCurves)) {
-                jsonResult.put("errCause", "Color " + color + ": curve is the wrong shape!");
-                jsonResult.put("equal", false);
-                return jsonResult.toJSONString();
+    /**
+     * add the check of the counts of one color, which pairs user's curves by their counts alone.
+     * @param checks the checks
+     * @param curves the curves of the color
+     * @param trace diagnostics of the check, or null
+     */
+    private static void addCounts(final OrderedChecks checks, final ColorCurves curves,
+                                  final Diagnostics.Trace trace) {
+        checks.add(() -> {
+            if (trace != null && trace.isEnabled(Diagnostics.Level.DEBUG)) {
+                trace.add("class " + curves.idx + " start test");
             }
+            long since = System.nanoTime();
+            String errCause = testCounts(curves.color, curves.targetCurves,
+                    CurveAssignment.matchByCounts(curves.targetCurves, curves.testCurves));
+            curves.timings.add(Metrics.Stage.COUNTS, since);
+            return errCause;
+        }, true);
+    }
+
+    /**
+     * add a check of every curve of one color.
+     * @param checks the checks
+     * @param curves the curves of the color
+     * @param stage the stage the checks are timed as
+     * @param cheap whether the checks are cheap
+     * @param cause the cause of the error if a check fails, after the name of the color
+     * @param check the check
+     */
+    private static void addChecks(final OrderedChecks checks, final ColorCurves curves, final Metrics.Stage stage,
+                                  final boolean cheap, final String cause, final CurveCheck check) {
+        for (int i = 0; i < curves.targetCurves.length; i++) {
+            final int idx = i;
+            checks.add(() -> {
+                Curve untrusted = curves.paired()[idx];
+                long since = System.nanoTime();
+                boolean correct = check.test(curves.targetCurves[idx], untrusted, idx);
+                curves.timings.add(stage, since);
+                return correct ? null : "Color " + curves.color + cause;
+            }, cheap);
+        }
+    }
 
-            // Test the position of knots
-            if (!testPosition(targetCurves, testCurves)) {
-                jsonResult.put("errCause", "Color " + color + ": curve is positioned incorrectly!");
-                jsonResult.put("equal", false);
-                return jsonResult.toJSONString();
+    /**
+     * check the number and size of curves of one color, and the number of their intercepts and turning points.
+     *
+     * @param color name of the color
+     * @param targetCurves compiled curves of the answer in that color
+     * @param testCurves user's curves in that color
+     * @return the cause of the first error found, or null if they are right
+     */
+    private static String testCounts(final String color, final CompiledCurve[] targetCurves,
+                                     final Curve[] testCurves) {
+        // make sure two graphs have same number of curves
+        if (targetCurves.length != testCurves.length) {
+            return "Color " + color + WRONG_CURVE_COUNT;
+        }
+
+        // make sure the curve from user is large enough.
+        for (int i = 0; i < testCurves.length; i++) {
+            Curve c = testCurves[i];
+            double rx = c.getMaxX() - c.getMinX();
+            double ry = c.getMaxY() - c.getMinY();
+            if (rx < 0.2 && ry < 0.2) {
+                return "Color " + color + CURVE_TOO_SMALL;
             }
+        }
 
-            // Check that the labels are correctly positioned
-            if (!testSymbols(targetCurves, testCurves)) {
-                jsonResult.put("errCause", "Color " + color + ": labels are incorrectly placed!");
-                jsonResult.put("equal", false);
-                return jsonResult.toJSONString();
+        // make sure each curve has right number of x,y intercepts.
+        for (int i = 0; i < targetCurves.length; i++) {
+            Curve targetCurve = targetCurves[i].getCurve();
+            boolean correct = (targetCurve.getInterX().length == testCurves[i].getInterX().length)
+                    && (targetCurve.getInterY().length == testCurves[i].getInterY().length);
+            if (!correct) {
+                return "Color " + color + WRONG_INTERCEPTS;
             }
+        }
 
-            System.out.println();
+        // make sure each curve has right number of turning pts
+        for (int i = 0; i < targetCurves.length; i++) {
+            Curve targetCurve = targetCurves[i].getCurve();
+            boolean correct = (targetCurve.getMaxima().length == testCurves[i].getMaxima().length)
+                    && (targetCurve.getMinima().length == testCurves[i].getMinima().length);
+            if (!correct) {
+                return "Color " + color + WRONG_TURNING_POINTS;
+            }
         }
 
-        // If we make it to here, we have an exact match with the correct answer.
-        jsonResult.put("errCause", "null");
-        jsonResult.put("equal", true);
-        return jsonResult.toJSONString();
+        return null;
     }
 
-
     public static void main(final String[] args) throws CheckerException, ParseException, IOException {
 
         String trustedJSONString = WholeFileReader.readFile("/Users/YUAN/Documents/workspace/isaac-graph-checker/src/main/json/target.json");
@@ -0,0 +1,102 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Options set by the author of a question, read from the optional 'options' object of the correct answer. Options in
+ * user's graph are not used. Fields:
+ * warpingWindow: how far, as a percentage of the length of a section of the answer, the warping path may stray from
+ *      the diagonal when comparing the shape of sections. 100 (the default) leaves the path unconstrained.
+ * coarseToFine: whether long sections and curves are compared coarse to fine (see DtwCascade) instead of by full DTW.
+ *      The band of warpingWindow is not applied by the cascade, though its lower bound still is. Default false.
+ * pointReduction: how the points of both graphs are reduced before checking, "none" (the default), "rdp" or
+ *      "arcLength" (see PointReduction).
+ * rdpTolerance: for "rdp", the largest distance of a removed point from the simplified curve, as a fraction of the
+ *      larger side of the curve's bounding box. Default 0.001.
+ * arcLengthPoints: for "arcLength", the largest number of points between two intercepts or turning points. Default
+ *      32.
+ * errorPrecedence: which error is reported when user's graph has several. "stage" (the default) reports errors of
+ *      the cheap checks (counts, positions of knots, labels) of every color before errors of shape and position, so
+ *      a graph with a cheap error is never compared by DTW. "color" reports the first error of the first color, with
+ *      the counts, shape, position and labels of a color checked in that order, as in earlier versions.
+ */
+public class CheckerOptions {
+
+    static final double NO_WARPING_WINDOW = 100;
+
+    private double warpingWindow = NO_WARPING_WINDOW;
+    private boolean coarseToFine = false;
+    private String pointReduction = PointReduction.NONE;
+    private double rdpTolerance = 0.001;
+    private int arcLengthPoints = 32;
+    private String errorPrecedence = Checker.BY_STAGE;
+
+    public double getWarpingWindow() {
+        return warpingWindow;
+    }
+
+    public void setWarpingWindow(final double warpingWindow) {
+        this.warpingWindow = warpingWindow;
+    }
+
+    public boolean isCoarseToFine() {
+        return coarseToFine;
+    }
+
+    public void setCoarseToFine(final boolean coarseToFine) {
+        this.coarseToFine = coarseToFine;
+    }
+
+    public String getPointReduction() {
+        return pointReduction;
+    }
+
+    public void setPointReduction(final String pointReduction) {
+        this.pointReduction = pointReduction;
+    }
+
+    public double getRdpTolerance() {
+        return rdpTolerance;
+    }
+
+    public void setRdpTolerance(final double rdpTolerance) {
+        this.rdpTolerance = rdpTolerance;
+    }
+
+    public int getArcLengthPoints() {
+        return arcLengthPoints;
+    }
+
+    public void setArcLengthPoints(final int arcLengthPoints) {
+        this.arcLengthPoints = arcLengthPoints;
+    }
+
+    public String getErrorPrecedence() {
+        return errorPrecedence;
+    }
+
+    public void setErrorPrecedence(final String errorPrecedence) {
+        this.errorPrecedence = errorPrecedence;
+    }
+
+    /**
+     * @return the warping window as a fraction of section length, 1 or more if the warping path is unconstrained
+     */
+    double getWarpingWindowFraction() {
+        return warpingWindow / NO_WARPING_WINDOW;
+    }
+}
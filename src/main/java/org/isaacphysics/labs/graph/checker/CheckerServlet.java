@@ -16,13 +16,21 @@ package org.isaacphysics.labs.graph.checker;
  */
 
 import org.json.simple.parser.ParseException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -30,76 +38,454 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * A HttpServlet that receives POST request, and transfers the request data to Checker.
+ *
+ * Requests are handled asynchronously: the body is read without blocking, and grading runs on a GradingQueue rather
+ * than on the container's request threads. A request that arrives when the queue is full gets 503 with Retry-After,
+ * and a request that times out while it waits is answered the same way and never graded.
+ *
+ * The body is JSON with the fields "target", "test" and optionally "description", read by RequestEnvelope, unless the
+ * Content-Type is GraphCodec.CONTENT_TYPE, in which case it is the binary envelope of GraphCodec.
  */
 public class CheckerServlet extends HttpServlet {
 
+    private static final int DEFAULT_VERDICT_CACHE_SIZE = 10000;
+    private static final long DEFAULT_VERDICT_CACHE_TTL_SECONDS = 600;
+    private static final int DEFAULT_CHECK_PARALLELISM = 0;
+    private static final int DEFAULT_GRADING_QUEUE_SIZE = 64;
+    private static final long DEFAULT_GRADING_TIMEOUT_SECONDS = 30;
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 1;
+    private static final int DEFAULT_MAX_REQUEST_BYTES = 1 << 20;
+    private static final Diagnostics.Level DEFAULT_DIAGNOSTICS_LEVEL = Diagnostics.Level.ERROR;
+    private static final int DEFAULT_DIAGNOSTICS_SAMPLE_EVERY = 1;
+    private static final int DEFAULT_DIAGNOSTICS_BUFFER_SIZE = 0;
+
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final String BUSY = "{\"error\" : \"Server busy\"}";
+    private static final String TOO_LARGE = "{\"error\" : \"Request too large\"}";
+
+
+    private VerdictCache verdicts;
+    private ForkJoinPool pool;
+    private GradingQueue grading;
+    private long timeoutMillis;
+    private String retryAfter;
+    private int maxRequestBytes;
+    private AsyncDiagnosticsSink diagnosticsSink;
+    private AnswerRegistry answers;
+
+    /**
+     * set up the verdict cache, sized by the init parameters 'verdictCacheSize' and 'verdictCacheTtlSeconds'. If the
+     * init parameter 'checkParallelism' is more than 0, colors and curves of each check are evaluated in parallel by a
+     * pool of that many threads.
+     *
+     * Requests are graded by 'gradingThreads' threads, by default the number of processors, with at most
+     * 'gradingQueueSize' requests waiting for them. A request not answered within 'gradingTimeoutSeconds' gets 503, and
+     * 503 responses ask clients to retry after 'retryAfterSeconds'. A request body of more than 'maxRequestBytes'
+     * bytes, by default 1 MiB, gets 413. The GradingQueue and the VerdictCache are published as servlet context
+     * attributes named after their classes, so that MetricsServlet can report them.
+     *
+     * Diagnostics up to 'diagnosticsLevel' (OFF, ERROR, INFO or DEBUG) are written for 1 in every
+     * 'diagnosticsSampleEvery' requests. If 'diagnosticsBufferSize' is more than 0, they are written to standard output
+     * by a background thread through a buffer of that many records.
+     *
+     * If the init parameter 'answerDirectory' is set, the answers in that directory are loaded into an AnswerRegistry
+     * and reloaded when they change, so requests can name a "questionId" instead of sending the answer. If
+     * 'answerSnapshot' is set as well, answers are taken from that AnswerSnapshot file where it is up to date, and the
+     * file is written again when it is not.
+     * @throws ServletException thrown when an init parameter is not a valid number or level, or the answers cannot be
+     *      loaded
+     */
+    @Override
+    public void init() throws ServletException {
+        try {
+            int size = Integer.parseInt(getInitParameter("verdictCacheSize", DEFAULT_VERDICT_CACHE_SIZE));
+            long ttl = Long.parseLong(getInitParameter("verdictCacheTtlSeconds", DEFAULT_VERDICT_CACHE_TTL_SECONDS));
+            int parallelism = Integer.parseInt(getInitParameter("checkParallelism", DEFAULT_CHECK_PARALLELISM));
+            int threads = Integer.parseInt(getInitParameter("gradingThreads",
+                    Runtime.getRuntime().availableProcessors()));
+            int queueSize = Integer.parseInt(getInitParameter("gradingQueueSize", DEFAULT_GRADING_QUEUE_SIZE));
+            long timeout = Long.parseLong(getInitParameter("gradingTimeoutSeconds", DEFAULT_GRADING_TIMEOUT_SECONDS));
+            long retry = Long.parseLong(getInitParameter("retryAfterSeconds", DEFAULT_RETRY_AFTER_SECONDS));
+            int maxBytes = Integer.parseInt(getInitParameter("maxRequestBytes", DEFAULT_MAX_REQUEST_BYTES));
+            String levelName = getInitParameter("diagnosticsLevel");
+            Diagnostics.Level level = levelName == null ? DEFAULT_DIAGNOSTICS_LEVEL
+                    : Diagnostics.Level.valueOf(levelName.trim().toUpperCase());
+            int sampleEvery = Integer.parseInt(getInitParameter("diagnosticsSampleEvery",
+                    DEFAULT_DIAGNOSTICS_SAMPLE_EVERY));
+            int bufferSize = Integer.parseInt(getInitParameter("diagnosticsBufferSize",
+                    DEFAULT_DIAGNOSTICS_BUFFER_SIZE));
+            if (timeout <= 0 || retry < 0 || maxBytes <= 0) {
+                throw new IllegalArgumentException(
+                        "timeout and request size must be positive and retry delay not negative");
+            }
+            if (parallelism > 0) {
+                pool = new ForkJoinPool(parallelism);
+            }
+            verdicts = new VerdictCache(size, ttl, TimeUnit.SECONDS, pool);
+            grading = new GradingQueue(threads, queueSize);
+            timeoutMillis = TimeUnit.SECONDS.toMillis(timeout);
+            retryAfter = String.valueOf(retry);
+            maxRequestBytes = maxBytes;
+            if (bufferSize > 0) {
+                diagnosticsSink = new AsyncDiagnosticsSink(System.out::println, bufferSize);
+            }
+            Diagnostics.configure(level, sampleEvery, diagnosticsSink);
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid checker configuration", e);
+        }
+        String answerDirectory = getInitParameter("answerDirectory");
+        if (answerDirectory != null) {
+            String answerSnapshot = getInitParameter("answerSnapshot");
+            try {
+                answers = new AnswerRegistry(Paths.get(answerDirectory.trim()),
+                        answerSnapshot == null ? null : Paths.get(answerSnapshot.trim()));
+                answers.load();
+                answers.watch();
+            } catch (IOException | InvalidPathException e) {
+                if (answers != null) {
+                    answers.close();
+                }
+                throw new ServletException("Cannot load answers from " + answerDirectory, e);
+            }
+        }
+        getServletContext().setAttribute(GradingQueue.class.getName(), grading);
+        getServletContext().setAttribute(VerdictCache.class.getName(), verdicts);
+    }
+
+    /**
+     * stop the threads grading requests, evaluating checks in parallel, writing diagnostics and reloading answers.
+     */
+    @Override
+    public void destroy() {
+        if (answers != null) {
+            answers.close();
+        }
+        if (grading != null) {
+            grading.shutdown();
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        if (diagnosticsSink != null) {
+            if (Diagnostics.getSink() == diagnosticsSink) {
+                Diagnostics.configure(DEFAULT_DIAGNOSTICS_LEVEL, DEFAULT_DIAGNOSTICS_SAMPLE_EVERY, null);
+            }
+            diagnosticsSink.close();
+        }
+    }
+
     /**
-     * handles POST request with url '/test'.
+     * read a numeric init parameter.
+     * @param name name of the parameter
+     * @param defaultValue value used when the parameter is not set
+     * @return value of the parameter
+     */
+    private String getInitParameter(final String name, final long defaultValue) {
+        String value = getInitParameter(name);
+        if (value == null) {
+            return String.valueOf(defaultValue);
+        }
+        return value.trim();
+    }
+
+    /**
+     * @return the verdict cache of this servlet
+     */
+    VerdictCache getVerdictCache() {
+        return verdicts;
+    }
+
+    /**
+     * @return the answers requests can refer to by question ID, or null if there are none
+     */
+    AnswerRegistry getAnswerRegistry() {
+        return answers;
+    }
+
+    /**
+     * @return the queue of requests waiting to be graded
+     */
+    GradingQueue getGradingQueue() {
+        return grading;
+    }
+
+    /**
+     * handles POST request with url '/test'. The request is answered asynchronously, once the body has been read and
+     * graded.
      * @param request A HttpServletRequest
      * @param response A HttpServletResponse
      * @throws ServletException thrown when some servlet related exceptions occur
-     * @throws IOException thrown when fail to read trusted data from file
+     * @throws IOException thrown when the request body cannot be read
      */
     @Override
     protected void doPost(final HttpServletRequest request, final HttpServletResponse response)
             throws ServletException, IOException {
+        AsyncContext async = request.startAsync();
+        async.setTimeout(timeoutMillis);
+        Exchange exchange = new Exchange(async, request.getInputStream(), request.getContentType());
+        async.addListener(exchange);
+        exchange.input.setReadListener(exchange);
+    }
+
+    /**
+     * One request: its body is collected as the container makes it available, then it is queued for grading. The
+     * response is written exactly once, by whichever of grading, a read error, a body too large or the timeout comes
+     * first. A request answered before its turn in the queue comes is not graded at all.
+     */
+    private final class Exchange implements ReadListener, AsyncListener {
+        private final AsyncContext async;
+        private final ServletInputStream input;
+        private final String contentType;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Exchange(final AsyncContext async, final ServletInputStream input, final String contentType) {
+            this.async = async;
+            this.input = input;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            int n;
+            while (!finished.get() && input.isReady() && (n = input.read(buffer)) != -1) {
+                if (body.size() + n > maxRequestBytes) {
+                    Diagnostics.error("Request is larger than " + maxRequestBytes + " bytes, rejected!");
+                    finish(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, TOO_LARGE);
+                    return;
+                }
+                body.write(buffer, 0, n);
+            }
+        }
+
+        @Override
+        public void onAllDataRead() {
+            if (finished.get()) {
+                return;
+            }
+            byte[] requestBody = body.toByteArray();
+            if (!grading.offer(() -> {
+                // the client has already been answered, by the timeout, so grading would only hold up the queue
+                if (finished.get()) {
+                    return;
+                }
+                finish(HttpServletResponse.SC_OK, grade(requestBody, contentType));
+            })) {
+                Diagnostics.error("Grading queue is full, request rejected!");
+                finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE, BUSY);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            Diagnostics.error("Cannot read request!", t);
+            finish(HttpServletResponse.SC_BAD_REQUEST, null);
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+            Diagnostics.error("Request timed out before it was graded!");
+            finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE, BUSY);
+        }
 
-        System.out.println("==================================================");
+        @Override
+        public void onError(final AsyncEvent event) {
+            finish(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, null);
+        }
 
-        BufferedReader requestStringReader = request.getReader();
-        String requestString = "";
-        String line;
+        @Override
+        public void onComplete(final AsyncEvent event) {
+        }
 
-        // Read the JSON object
-        while ((line = requestStringReader.readLine()) != null) {
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+        }
 
-            requestString += line;
+        /**
+         * write the response and complete the request, unless that has already been done.
+         * @param status HTTP status of the response
+         * @param content the line to write, or null for an empty response
+         */
+        private void finish(final int status, final String content) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                HttpServletResponse response = (HttpServletResponse) async.getResponse();
+                response.setStatus(status);
+                if (status == HttpServletResponse.SC_SERVICE_UNAVAILABLE) {
+                    response.setHeader("Retry-After", retryAfter);
+                }
+                if (content != null) {
+                    response.getWriter().println(content);
+                }
+            } catch (IOException | IllegalStateException e) {
+                Diagnostics.error("Cannot write response!", e);
+            } finally {
+                async.complete();
+            }
+        }
+    }
 
+    /**
+     * grade one request.
+     * @param requestBody the body of a POST request to '/test'
+     * @param contentType the Content-Type of the request, GraphCodec.CONTENT_TYPE for the binary envelope
+     * @return the response to it
+     */
+    private String grade(final byte[] requestBody, final String contentType) {
+        Diagnostics.Trace trace = Diagnostics.trace();
+        try {
+            if (GraphCodec.isBinary(contentType)) {
+                return gradeBinary(requestBody, trace);
+            }
+            return grade(requestBody, trace);
+        } finally {
+            if (trace != null) {
+                trace.end();
+            }
         }
+    }
+
+    /**
+     * grade one request, adding diagnostics to a trace.
+     * @param requestBody the body of a POST request to '/test'
+     * @param trace diagnostics of the request, or null if it is not traced
+     * @return the response to it
+     */
+    private String grade(final byte[] requestBody, final Diagnostics.Trace trace) {
+        boolean debug = trace != null && trace.isEnabled(Diagnostics.Level.DEBUG);
 
-        ObjectMapper mapper = new ObjectMapper();
+        if (trace != null) {
+            trace.add("==================================================");
+        }
 
+        String result;
         try {
 
-            @SuppressWarnings("unchecked")
-            HashMap<String, String> req = mapper.readValue(requestString, HashMap.class);
+            RequestEnvelope req = RequestEnvelope.parse(requestBody);
 
-            if (req.containsKey("description")) {
-                System.out.println(req.get("description"));
-                System.out.println("==================================================");
+            if (trace != null && req.getDescription() != null) {
+                trace.add(req.getDescription());
+                trace.add("==================================================");
             }
 
-            if (req.containsKey("target") && req.containsKey("test")) {
+            if (req.getQuestionId() != null && req.hasTest()) {
+
+                result = grade(req, trace);
 
-                // Get target and test graph data strings from JSON object
-                String trustedJSONString = req.get("target");
-                String untrustedJSONString = req.get("test");
+            } else if (req.isComplete()) {
 
                 // Debug print
-                System.out.println("Input target: \"" + trustedJSONString + "\"");
-                System.out.println("Input test: \"" + untrustedJSONString + "\"");
+                if (debug) {
+                    trace.add("Input target: \"" + req.getTargetJSONString() + "\"");
+                    trace.add("Input test: \"" + req.getTestJSONString() + "\"");
+                }
 
                 // Return
-                System.out.println(Checker.test(untrustedJSONString, trustedJSONString));
-                response.getWriter().println(Checker.test(untrustedJSONString, trustedJSONString));
+                if (req.isLegacy()) {
+                    result = verdicts.test(req.getTargetJSONString(), req.getTestJSONString(), trace);
+                } else {
+                    result = verdicts.test(req.getTargetHash(), req.getTarget(), req.getTestHash(), req.getTest(),
+                            trace);
+                }
+                if (trace != null) {
+                    trace.add(result);
+                }
 
             } else {
-                response.getWriter().println("{\"error\" : \"No input!\"}");
-                System.out.println("ERROR: No input!");
+                result = "{\"error\" : \"No input!\"}";
+                Diagnostics.error("No input!");
             }
 
 
         } catch (Exception e) {
-            e.printStackTrace();
             // Got an exception when checking expressions.
-            response.getWriter().println("{\"error\" : true}");
-            System.out.println("ERROR: Parser cannot parse input!");
+            result = "{\"error\" : true}";
+            Diagnostics.error("Parser cannot parse input!", e);
 
         }
 
-        System.out.println("==================================================\n");
+        if (trace != null) {
+            trace.add("==================================================");
+        }
+        return result;
+    }
 
+    /**
+     * grade one request against the answer of the question it names.
+     * @param req the request
+     * @param trace diagnostics of the request, or null if it is not traced
+     * @return the response to it
+     * @throws CheckerException thrown when user's graph is not valid
+     * @throws ParseException thrown when user's graph cannot be parsed
+     */
+    private String grade(final RequestEnvelope req, final Diagnostics.Trace trace)
+                                                    throws CheckerException, ParseException {
+        CompiledAnswer answer = answers == null ? null : answers.get(req.getQuestionId());
+        if (answer == null) {
+            Diagnostics.error("Unknown question " + req.getQuestionId() + "!");
+            return "{\"error\" : \"Unknown question!\"}";
+        }
+
+        if (trace != null && trace.isEnabled(Diagnostics.Level.DEBUG)) {
+            trace.add("Input question: \"" + req.getQuestionId() + "\"");
+            trace.add("Input test: \"" + req.getTestJSONString() + "\"");
+        }
+
+        String result;
+        if (req.getTest() == null) {
+            result = verdicts.test(answer, req.getTestJSONString(), trace);
+        } else {
+            result = verdicts.test(answer, req.getTestHash(), req.getTest(), trace);
+        }
+        if (trace != null) {
+            trace.add(result);
+        }
+        return result;
     }
 
-}
+    /**
+     * grade one request in the binary envelope of GraphCodec, adding diagnostics to a trace.
+     * @param requestBody the body of a POST request to '/test'
+     * @param trace diagnostics of the request, or null if it is not traced
+     * @return the response to it
+     */
+    private String gradeBinary(final byte[] requestBody, final Diagnostics.Trace trace) {
+        if (trace != null) {
+            trace.add("==================================================");
+        }
 
+        String result;
+        try {
+            GraphCodec.Submission req = GraphCodec.decodeRequest(requestBody);
+
+            if (trace != null && req.getDescription() != null) {
+                trace.add(req.getDescription());
+                trace.add("==================================================");
+            }
+
+            if (trace != null && trace.isEnabled(Diagnostics.Level.DEBUG)) {
+                trace.add("Input target: \"" + req.getTarget() + "\"");
+                trace.add("Input test: " + req.getTest().length + " bytes");
+            }
+
+            result = verdicts.test(req.getTarget(), req.getTest(), trace);
+            if (trace != null) {
+                trace.add(result);
+            }
+
+        } catch (Exception e) {
+            result = "{\"error\" : true}";
+            Diagnostics.error("Cannot decode binary input!", e);
+
+        }
+
+        if (trace != null) {
+            trace.add("==================================================");
+        }
+        return result;
+    }
+
+}
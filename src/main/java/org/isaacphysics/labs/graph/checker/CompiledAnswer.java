@@ -0,0 +1,133 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+
+
+/**
+ * The correct answer of a question, parsed, classified by color, split and normalised. All the work Checker does on
+ * the answer side is done once here, so the same answer can be checked against any number of user's graphs.
+ */
+public final class CompiledAnswer {
+
+    /**
+     * Version of the way answers are compiled. AnswerSnapshot records it, and answers of a snapshot written by another
+     * version are compiled from JSON again. Bump it whenever PointReduction, Checker.classify, Checker.splitCurve,
+     * Checker.normaliseShape, Checker.normalisePosition or CompiledCurve change what an answer compiles to.
+     */
+    static final int COMPILER_VERSION = 1;
+
+    private final String hash;
+    private final CompiledCurve[][] classes;
+    private final CheckerOptions options;
+
+    /**
+     * constructor for CompiledAnswer.
+     * @param hash content hash of the answer's JSON string
+     * @param classes compiled curves, one array per color
+     * @param options options of the question
+     */
+    private CompiledAnswer(final String hash, final CompiledCurve[][] classes, final CheckerOptions options) {
+        this.hash = hash;
+        this.classes = classes;
+        this.options = options;
+    }
+
+    /**
+     * parse and compile the correct answer.
+     *
+     * @param targetJSONString a JSON String which contains the correct answer
+     * @return the compiled answer
+     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
+     *      in the correct format.
+     * @throws ParseException it is thrown when input JSON string cannot be parsed.
+     */
+    public static CompiledAnswer compile(final String targetJSONString) throws CheckerException, ParseException {
+        return compile(ContentHash.of(targetJSONString), targetJSONString);
+    }
+
+    /**
+     * parse and compile the correct answer whose content hash is already known.
+     *
+     * @param hash content hash of targetJSONString
+     * @param targetJSONString a JSON String which contains the correct answer
+     * @return the compiled answer
+     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
+     *      in the correct format.
+     * @throws ParseException it is thrown when input JSON string cannot be parsed.
+     */
+    static CompiledAnswer compile(final String hash, final String targetJSONString)
+                                                    throws CheckerException, ParseException {
+        return compile(hash, Parser.parseGraph(targetJSONString));
+    }
+
+    /**
+     * compile the correct answer from a graph that has already been parsed.
+     *
+     * @param hash content hash identifying the answer
+     * @param graph the correct answer
+     * @return the compiled answer
+     */
+    static CompiledAnswer compile(final String hash, final Graph graph) {
+        Curve[][] curves = Checker.classify(PointReduction.reduce(graph.getCurves(), graph.getOptions()));
+
+        CompiledCurve[][] classes = new CompiledCurve[curves.length][];
+        for (int i = 0; i < curves.length; i++) {
+            classes[i] = new CompiledCurve[curves[i].length];
+            for (int j = 0; j < curves[i].length; j++) {
+                classes[i][j] = CompiledCurve.compile(curves[i][j], graph.getOptions());
+            }
+        }
+
+        return of(hash, classes, graph.getOptions());
+    }
+
+    /**
+     * put together an answer whose curves have already been compiled.
+     *
+     * @param hash content hash identifying the answer
+     * @param classes compiled curves, one array per color
+     * @param options options of the question
+     * @return the compiled answer
+     */
+    static CompiledAnswer of(final String hash, final CompiledCurve[][] classes, final CheckerOptions options) {
+        return new CompiledAnswer(hash, classes, options);
+    }
+
+    /**
+     * @return content hash of the answer's JSON string
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return options of the question
+     */
+    public CheckerOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @param colorIdx color index
+     * @return compiled curves of the answer drawn in that color, sorted by their smallest x
+     */
+    public CompiledCurve[] getCurves(final int colorIdx) {
+        return classes[colorIdx];
+    }
+}
@@ -0,0 +1,162 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A curve of the answer together with everything Checker derives from it: the sections it is split into at turning
+ * points, the shape-normalised sections, and the position-normalised points of the whole curve. When the question
+ * constrains the warping window, the envelope of each shape-normalised section is computed here as well, and when it
+ * compares coarse to fine, the downsampled levels of the shape-normalised sections and of the position.
+ */
+public final class CompiledCurve {
+
+    private final Curve curve;
+    private final Section[] sections;
+    private final Section[] shapes;
+    private final Section position;
+    private final double window;
+    private final Envelope[] envelopes;
+    private final Section[][] shapePyramids;
+    private final Section[] positionPyramid;
+
+    /**
+     * constructor for CompiledCurve.
+     * @param curve the curve
+     * @param sections sections of the curve, split at turning points
+     * @param shapes shape-normalised sections, in the same order as sections
+     * @param position position-normalised points of the whole curve
+     * @param window warping window for comparing shapes, as a fraction of section length
+     * @param envelopes envelopes of shapes for that window, null if the window is unconstrained
+     * @param shapePyramids levels of resolution of each of shapes, null if not compared coarse to fine
+     * @param positionPyramid levels of resolution of position, null if not compared coarse to fine
+     */
+    private CompiledCurve(final Curve curve, final Section[] sections, final Section[] shapes,
+                          final Section position, final double window, final Envelope[] envelopes,
+                          final Section[][] shapePyramids, final Section[] positionPyramid) {
+        this.curve = curve;
+        this.sections = sections;
+        this.shapes = shapes;
+        this.position = position;
+        this.window = window;
+        this.envelopes = envelopes;
+        this.shapePyramids = shapePyramids;
+        this.positionPyramid = positionPyramid;
+    }
+
+    /**
+     * split and normalise a curve once, so that it can be compared against many user's curves.
+     * @param curve the curve in the answer
+     * @return the compiled curve
+     */
+    static CompiledCurve compile(final Curve curve) {
+        return compile(curve, new CheckerOptions());
+    }
+
+    /**
+     * split and normalise a curve once, so that it can be compared against many user's curves.
+     * @param curve the curve in the answer
+     * @param options options of the question
+     * @return the compiled curve
+     */
+    static CompiledCurve compile(final Curve curve, final CheckerOptions options) {
+        Section[] sections = Checker.splitCurve(curve);
+
+        Section[] shapes = new Section[sections.length];
+        for (int i = 0; i < sections.length; i++) {
+            shapes[i] = Checker.normaliseShape(sections[i]);
+        }
+        return of(curve, sections, shapes, Checker.normalisePosition(curve.getSection()), options);
+    }
+
+    /**
+     * put together a curve that has already been split and normalised, deriving what depends on the options.
+     * @param curve the curve in the answer
+     * @param sections sections of the curve, split at turning points
+     * @param shapes shape-normalised sections, in the same order as sections
+     * @param position position-normalised points of the whole curve
+     * @param options options of the question
+     * @return the compiled curve
+     */
+    static CompiledCurve of(final Curve curve, final Section[] sections, final Section[] shapes,
+                            final Section position, final CheckerOptions options) {
+        double window = options.getWarpingWindowFraction();
+        Envelope[] envelopes = null;
+        if (window < 1) {
+            envelopes = new Envelope[shapes.length];
+            for (int i = 0; i < shapes.length; i++) {
+                envelopes[i] = Envelope.of(shapes[i], Dtw.windowRadius(shapes[i].length(), window));
+            }
+        }
+
+        Section[][] shapePyramids = null;
+        Section[] positionPyramid = null;
+        if (options.isCoarseToFine()) {
+            shapePyramids = new Section[shapes.length][];
+            for (int i = 0; i < shapes.length; i++) {
+                shapePyramids[i] = DtwCascade.pyramid(shapes[i]);
+            }
+            positionPyramid = DtwCascade.pyramid(position);
+        }
+
+        return new CompiledCurve(curve, sections, shapes, position, window, envelopes, shapePyramids,
+                positionPyramid);
+    }
+
+    public Curve getCurve() {
+        return curve;
+    }
+
+    public Section[] getSections() {
+        return sections;
+    }
+
+    public Section[] getShapes() {
+        return shapes;
+    }
+
+    public Section getPosition() {
+        return position;
+    }
+
+    /**
+     * @return warping window for comparing shapes, as a fraction of section length. 1 or more is unconstrained.
+     */
+    public double getWindow() {
+        return window;
+    }
+
+    /**
+     * @return envelopes of shapes, in the same order as shapes, or null if the warping window is unconstrained
+     */
+    public Envelope[] getEnvelopes() {
+        return envelopes;
+    }
+
+    /**
+     * @return levels of resolution of each of shapes, or null if the question does not compare coarse to fine
+     */
+    public Section[][] getShapePyramids() {
+        return shapePyramids;
+    }
+
+    /**
+     * @return levels of resolution of position, or null if the question does not compare coarse to fine
+     */
+    public Section[] getPositionPyramid() {
+        return positionPyramid;
+    }
+}
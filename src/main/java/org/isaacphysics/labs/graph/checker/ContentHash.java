@@ -0,0 +1,84 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes content hashes of JSON strings and encoded graphs, used as keys when caching work done on them.
+ */
+public final class ContentHash {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Utility class should not have public or default constructor.
+     */
+    private ContentHash() {
+        //
+    }
+
+    /**
+     * hash a string with SHA-256.
+     *
+     * @param content the string to hash, usually a JSON string of a graph
+     * @return the hash as a lower case hex string
+     */
+    public static String of(final String content) {
+        return of(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * hash bytes with SHA-256.
+     *
+     * @param content the bytes to hash, usually a graph encoded by GraphCodec
+     * @return the hash as a lower case hex string
+     */
+    public static String of(final byte[] content) {
+        return of(content, 0, content.length);
+    }
+
+    /**
+     * hash part of an array of bytes with SHA-256.
+     *
+     * @param content the bytes, usually a request body
+     * @param offset index of the first byte to hash
+     * @param length number of bytes to hash
+     * @return the hash as a lower case hex string
+     */
+    public static String of(final byte[] content, final int offset, final int length) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        digest.update(content, offset, length);
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+}
@@ -16,9 +16,11 @@ package org.isaacphysics.labs.graph.checker;
  * limitations under the License.
  */
 
+import java.util.Arrays;
+
 /**
  * Trusted and untrusted graph may include multiple curves. Each curve has fields:
- * pts: for points constituting the curve
+ * xs, ys: coordinates of points constituting the curve, kept as parallel arrays
  * interX: x intercepts
  * interY: y intercepts
  * maxima: maxima
@@ -26,7 +28,14 @@ package org.isaacphysics.labs.graph.checker;
  */
 public class Curve implements Comparable<Curve> {
 
-    private Point[] pts;
+    /**
+     * largest distance between a knot and the point at its position, as a fraction of the larger side of the bounding
+     * box. The frontend places knots exactly on points, but their coordinates may be rounded on the way to the checker.
+     */
+    static final double KNOT_TOLERANCE = 1e-9;
+
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
     private Knot[] interX;
     private Knot[] interY;
     private Knot[] maxima;
@@ -37,7 +46,103 @@ public class Curve implements Comparable<Curve> {
     private double minY;
     private double maxY;
 
+    public double[] getXs() {
+        return xs;
+    }
+
+    public double[] getYs() {
+        return ys;
+    }
+
+    /**
+     * @return number of points constituting the curve
+     */
+    public int getNumPts() {
+        return xs.length;
+    }
+
+    /**
+     * @return all points of the curve as one section
+     */
+    public Section getSection() {
+        return new Section(xs, ys);
+    }
+
+    /**
+     * @param from index of the first point
+     * @param to index after the last point
+     * @return a view of the points from 'from' to 'to', which shares the arrays of the curve
+     */
+    public Section getSection(final int from, final int to) {
+        return new Section(xs, ys, from, to - from);
+    }
+
+    /**
+     * find the point at the position of each knot, within KNOT_TOLERANCE. The knots are sorted by x once, and every
+     * point binary searches the knots with nearly the same x, so the cost is O((points + knots) log knots).
+     *
+     * @param knots the knots, may be null
+     * @return for each knot, the index of the nearest point to it, the first one if several are as near, or -1 if no
+     * point is within the tolerance
+     */
+    int[] indexOf(final Knot[] knots) {
+        if (knots == null) {
+            return new int[0];
+        }
+        int k = knots.length;
+        int[] indices = new int[k];
+        Arrays.fill(indices, -1);
+        if (k == 0) {
+            return indices;
+        }
+
+        Integer[] order = new Integer[k];
+        for (int j = 0; j < k; j++) {
+            order[j] = j;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(knots[a].x, knots[b].x));
+        double[] sortedX = new double[k];
+        for (int j = 0; j < k; j++) {
+            sortedX[j] = knots[order[j]].x;
+        }
+
+        double tolerance = KNOT_TOLERANCE * Math.max(maxX - minX, maxY - minY);
+        double[] nearest = new double[k];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < xs.length; i++) {
+            double lowest = xs[i] - tolerance;
+            int lo = 0;
+            int hi = k;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sortedX[mid] < lowest) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int j = lo; j < k && sortedX[j] <= xs[i] + tolerance; j++) {
+                int knot = order[j];
+                double distance = Math.max(Math.abs(xs[i] - knots[knot].x), Math.abs(ys[i] - knots[knot].y));
+                if (distance <= tolerance && distance < nearest[knot]) {
+                    nearest[knot] = distance;
+                    indices[knot] = i;
+                }
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * compatibility view of the points of the curve. Point objects are created on every call, so checking code should
+     * use getXs() and getYs() instead.
+     * @return points constituting the curve
+     */
     public Point[] getPts() {
+        Point[] pts = new Point[xs.length];
+        for (int i = 0; i < pts.length; i++) {
+            pts[i] = new Point(xs[i], ys[i]);
+        }
         return pts;
     }
 
@@ -57,8 +162,31 @@ public class Curve implements Comparable<Curve> {
         return minima;
     }
 
+    /**
+     * set the points of the curve.
+     * @param xs x-coordinates of the points, the array is kept, not copied
+     * @param ys y-coordinates of the points, same length as xs, the array is kept, not copied
+     */
+    public void setPts(final double[] xs, final double[] ys) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("xs and ys have different lengths");
+        }
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    /**
+     * set the points of the curve from Point objects.
+     * @param pts points constituting the curve
+     */
     public void setPts(final Point[] pts) {
-        this.pts = pts;
+        double[] newXs = new double[pts.length];
+        double[] newYs = new double[pts.length];
+        for (int i = 0; i < pts.length; i++) {
+            newXs[i] = pts[i].x;
+            newYs[i] = pts[i].y;
+        }
+        setPts(newXs, newYs);
     }
 
     public void setInterX(final Knot[] interX) {
@@ -0,0 +1,223 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Pairs user's curves of one color with the curves of the answer in that color. Sorting both by their smallest x pairs
+ * curves that overlap horizontally by accident; instead, every pair is given a cost, and the pairing of least total
+ * cost is found with the Hungarian algorithm in O(n^3) time.
+ *
+ * The cost of a pair is a penalty for every kind of knot whose number differs, since such a pair fails the counts
+ * checked by Checker whatever its position. Only if every curve can be paired with the right counts, and some curves
+ * of the answer have the same counts as several of user's curves, are those pairs also given the DTW error between the
+ * position-normalised curves; any other pairing is decided by the counts alone, without DTW.
+ */
+final class CurveAssignment {
+
+    /**
+     * Cost of each kind of knot (x intercepts, y intercepts, maxima, minima) whose number differs between two curves.
+     * Position-normalised points lie within [-1, 1], so it is larger than the DTW error of any curves of fewer than
+     * 10^8 points.
+     */
+    static final double COUNT_MISMATCH = 1e9;
+
+    private CurveAssignment() {
+    }
+
+    /**
+     * order user's curves so that the i-th is paired with the i-th curve of the answer.
+     * @param trusted compiled curves of the answer in one color
+     * @param untrusted user's curves in the same color
+     * @return user's curves in the order of their pairs, or untrusted itself if there are not two curves on each side
+     */
+    static Curve[] match(final CompiledCurve[] trusted, final Curve[] untrusted) {
+        return match(trusted, untrusted, true);
+    }
+
+    /**
+     * order user's curves by the counts of their knots alone, which is enough to check the counts.
+     * @param trusted compiled curves of the answer in one color
+     * @param untrusted user's curves in the same color
+     * @return user's curves in the order of their pairs, or untrusted itself if there are not two curves on each side
+     */
+    static Curve[] matchByCounts(final CompiledCurve[] trusted, final Curve[] untrusted) {
+        return match(trusted, untrusted, false);
+    }
+
+    /**
+     * @param trusted compiled curves of the answer in one color
+     * @param untrusted user's curves in the same color
+     * @param byPosition whether curves with the same counts are paired by position
+     * @return user's curves in the order of their pairs, or untrusted itself if there are not two curves on each side
+     */
+    private static Curve[] match(final CompiledCurve[] trusted, final Curve[] untrusted, final boolean byPosition) {
+        int n = trusted.length;
+        if (n < 2 || untrusted.length != n) {
+            return untrusted;
+        }
+
+        double[][] cost = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                cost[i][j] = mismatches(trusted[i].getCurve(), untrusted[j]) * COUNT_MISMATCH;
+            }
+        }
+        int[] assignment = solve(cost);
+
+        if (byPosition && total(cost, assignment) == 0) {
+            // rows with more than one pair of the right counts, which are the only ones the positions can change
+            boolean[] ambiguous = new boolean[n];
+            boolean any = false;
+            for (int i = 0; i < n; i++) {
+                int pairs = 0;
+                for (int j = 0; j < n; j++) {
+                    if (cost[i][j] == 0) {
+                        pairs++;
+                    }
+                }
+                ambiguous[i] = pairs > 1;
+                any |= ambiguous[i];
+            }
+
+            if (any) {
+                Scratch scratch = Scratch.get();
+                for (int j = 0; j < n; j++) {
+                    Section position = null;
+                    for (int i = 0; i < n; i++) {
+                        if (ambiguous[i] && cost[i][j] == 0) {
+                            if (position == null) {
+                                position = Checker.normalisePosition(untrusted[j].getSection(), scratch, 0);
+                            }
+                            cost[i][j] = Dtw.error(trusted[i].getPosition(), position);
+                        }
+                    }
+                }
+                assignment = solve(cost);
+            }
+        }
+
+        Curve[] matched = new Curve[n];
+        for (int i = 0; i < n; i++) {
+            matched[i] = untrusted[assignment[i]];
+        }
+        return matched;
+    }
+
+    /**
+     * @param trusted curve of the answer
+     * @param untrusted user's curve
+     * @return number of kinds of knot whose number differs between the curves
+     */
+    private static int mismatches(final Curve trusted, final Curve untrusted) {
+        int mismatches = 0;
+        if (trusted.getInterX().length != untrusted.getInterX().length) {
+            mismatches++;
+        }
+        if (trusted.getInterY().length != untrusted.getInterY().length) {
+            mismatches++;
+        }
+        if (trusted.getMaxima().length != untrusted.getMaxima().length) {
+            mismatches++;
+        }
+        if (trusted.getMinima().length != untrusted.getMinima().length) {
+            mismatches++;
+        }
+        return mismatches;
+    }
+
+    /**
+     * @param cost the cost matrix
+     * @param assignment the column assigned to each row
+     * @return total cost of the assignment
+     */
+    private static double total(final double[][] cost, final int[] assignment) {
+        double total = 0;
+        for (int i = 0; i < assignment.length; i++) {
+            total += cost[i][assignment[i]];
+        }
+        return total;
+    }
+
+    /**
+     * solve the assignment problem with the Hungarian algorithm, keeping potentials of rows and columns so that each
+     * row is added in O(n^2).
+     * @param cost a square matrix of finite costs, cost[i][j] being the cost of assigning row i to column j
+     * @return the column assigned to each row, so that the sum of their costs is least
+     */
+    static int[] solve(final double[][] cost) {
+        int n = cost.length;
+        // 1-based, with row 0 and column 0 standing for "unassigned"
+        double[] rowPotential = new double[n + 1];
+        double[] colPotential = new double[n + 1];
+        int[] rowOfCol = new int[n + 1];
+        int[] previous = new int[n + 1];
+        double[] slack = new double[n + 1];
+        boolean[] visited = new boolean[n + 1];
+
+        for (int row = 1; row <= n; row++) {
+            rowOfCol[0] = row;
+            int col = 0;
+            Arrays.fill(slack, Double.POSITIVE_INFINITY);
+            Arrays.fill(visited, false);
+
+            // grow a tree of tight edges from the new row until it reaches an unassigned column
+            do {
+                visited[col] = true;
+                int r = rowOfCol[col];
+                double delta = Double.POSITIVE_INFINITY;
+                int next = 0;
+                for (int j = 1; j <= n; j++) {
+                    if (!visited[j]) {
+                        double reduced = cost[r - 1][j - 1] - rowPotential[r] - colPotential[j];
+                        if (reduced < slack[j]) {
+                            slack[j] = reduced;
+                            previous[j] = col;
+                        }
+                        if (slack[j] < delta) {
+                            delta = slack[j];
+                            next = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= n; j++) {
+                    if (visited[j]) {
+                        rowPotential[rowOfCol[j]] += delta;
+                        colPotential[j] -= delta;
+                    } else {
+                        slack[j] -= delta;
+                    }
+                }
+                col = next;
+            } while (rowOfCol[col] != 0);
+
+            // flip the path of the tree that ends at that column
+            do {
+                int prev = previous[col];
+                rowOfCol[col] = rowOfCol[prev];
+                col = prev;
+            } while (col != 0);
+        }
+
+        int[] assignment = new int[n];
+        for (int j = 1; j <= n; j++) {
+            assignment[rowOfCol[j] - 1] = j - 1;
+        }
+        return assignment;
+    }
+}
@@ -0,0 +1,184 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Diagnostics of grading, written to a pluggable DiagnosticsSink.
+ *
+ * Errors are written on their own. Everything else is collected in a Trace of one request and written as a single
+ * record when the request is done, so records of concurrent requests do not interleave. Only 1 in every 'sampleEvery'
+ * requests is traced. When a level is disabled, callers are expected to check isEnabled, or that trace() returned a
+ * trace, before building a message, so disabled diagnostics cost a field read and nothing else.
+ */
+public final class Diagnostics {
+
+    /**
+     * How much is written, from nothing to the error of every section compared.
+     */
+    public enum Level {
+        /** nothing is written. */
+        OFF,
+        /** requests that cannot be graded. */
+        ERROR,
+        /** the verdict of every traced request. */
+        INFO,
+        /** the input of every traced request, and the errors measured grading it. */
+        DEBUG
+    }
+
+    private static final DiagnosticsSink STANDARD_OUTPUT = System.out::println;
+
+    private static volatile Level level = Level.ERROR;
+    private static volatile int sampleEvery = 1;
+    private static volatile DiagnosticsSink sink = STANDARD_OUTPUT;
+
+    private static final AtomicLong REQUESTS = new AtomicLong();
+
+    private Diagnostics() {
+    }
+
+    /**
+     * change where and how much is written.
+     * @param newLevel the most detailed level written
+     * @param newSampleEvery trace 1 in every so many requests
+     * @param newSink where diagnostics are written to, or null for standard output
+     */
+    public static void configure(final Level newLevel, final int newSampleEvery, final DiagnosticsSink newSink) {
+        if (newLevel == null || newSampleEvery <= 0) {
+            throw new IllegalArgumentException("level must be set and sampleEvery must be positive");
+        }
+        sink = newSink != null ? newSink : STANDARD_OUTPUT;
+        sampleEvery = newSampleEvery;
+        level = newLevel;
+    }
+
+    /**
+     * @return where diagnostics are written to
+     */
+    public static DiagnosticsSink getSink() {
+        return sink;
+    }
+
+    /**
+     * @param query a level
+     * @return true if diagnostics of that level are written
+     */
+    public static boolean isEnabled(final Level query) {
+        return query != Level.OFF && level.compareTo(query) >= 0;
+    }
+
+    /**
+     * write an error.
+     * @param message what went wrong
+     */
+    public static void error(final String message) {
+        if (isEnabled(Level.ERROR)) {
+            sink.write("ERROR: " + message);
+        }
+    }
+
+    /**
+     * write an error and the exception that caused it.
+     * @param message what went wrong
+     * @param cause the exception
+     */
+    public static void error(final String message, final Throwable cause) {
+        if (isEnabled(Level.ERROR)) {
+            StringWriter trace = new StringWriter();
+            cause.printStackTrace(new PrintWriter(trace));
+            sink.write("ERROR: " + message + "\n" + trace.toString().trim());
+        }
+    }
+
+    /**
+     * write something worth knowing that is not an error, such as a choice made when the checker starts.
+     * @param message what happened
+     */
+    public static void info(final String message) {
+        if (isEnabled(Level.INFO)) {
+            sink.write("INFO: " + message);
+        }
+    }
+
+    /**
+     * start tracing a request, if it is sampled.
+     * @return a trace, or null if the request is not traced
+     */
+    public static Trace trace() {
+        Level current = level;
+        if (current.compareTo(Level.INFO) < 0) {
+            return null;
+        }
+        int every = sampleEvery;
+        if (every > 1 && REQUESTS.getAndIncrement() % every != 0) {
+            return null;
+        }
+        return new Trace(current, sink);
+    }
+
+    /**
+     * The diagnostics of one request. Lines may be added from several threads, as when colors and curves are checked
+     * in parallel.
+     */
+    public static final class Trace {
+        private final Level level;
+        private final DiagnosticsSink sink;
+        private final StringBuilder lines = new StringBuilder();
+
+        private Trace(final Level level, final DiagnosticsSink sink) {
+            this.level = level;
+            this.sink = sink;
+        }
+
+        /**
+         * @param query a level
+         * @return true if lines of that level are kept in this trace
+         */
+        public boolean isEnabled(final Level query) {
+            return query != Level.OFF && level.compareTo(query) >= 0;
+        }
+
+        /**
+         * add a line to the trace.
+         * @param line the line
+         */
+        public void add(final String line) {
+            synchronized (lines) {
+                lines.append(line).append('\n');
+            }
+        }
+
+        /**
+         * write the trace as one record.
+         */
+        public void end() {
+            String record;
+            synchronized (lines) {
+                if (lines.length() == 0) {
+                    return;
+                }
+                record = lines.substring(0, lines.length() - 1);
+                lines.setLength(0);
+            }
+            sink.write(record);
+        }
+    }
+}
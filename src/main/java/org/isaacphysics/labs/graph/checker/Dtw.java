@@ -0,0 +1,308 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Measures the error between two sections using "dynamic time warping". The algorithm is on wikipedia.
+ *
+ * Note the cost is square of distance between two matching points. This is inspired by method in
+ * "least error optimisation". The user may draw a curve in either direction, so the error is the smaller of aligning
+ * the user's section forwards and backwards.
+ */
+public final class Dtw {
+
+    /**
+     * cost of a warping path that does not start by matching the first points of both sections.
+     */
+    static final double BOUNDARY = 10000;
+
+    /**
+     * cost of a cell outside the warping window, which no warping path may pass through.
+     */
+    private static final double OUTSIDE = Double.POSITIVE_INFINITY;
+
+    /**
+     * system property that forces the scalar kernel when set to "scalar".
+     */
+    static final String KERNEL_PROPERTY = "isaac.graphChecker.dtwKernel";
+
+    static final String SCALAR = "scalar";
+    static final String VECTOR = "vector";
+
+    /**
+     * first version of Java the vector kernel is built for; on earlier versions it is never expected to load.
+     */
+    private static final int VECTOR_JAVA_VERSION = 17;
+    private static final String VECTOR_KERNEL = "org.isaacphysics.labs.graph.checker.VectorDtwKernel";
+    private static final DtwKernel KERNEL = selectKernel();
+
+    /**
+     * Utility class should not have public or default constructor.
+     */
+    private Dtw() {
+        //
+    }
+
+    /**
+     * Calculate the error between two sections.
+     *
+     * @param trusted points of section of answer
+     * @param untrusted points of section of user
+     * @return the measured error.
+     */
+    static double error(final Section trusted, final Section untrusted) {
+        return error(trusted, untrusted, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Calculate the error between two sections, or decide that it is over a threshold.
+     *
+     * The work is done by the kernel chosen when the class is loaded, see DtwKernel. Every warping path passes through
+     * every row, so once every cell of a row in both directions is over the threshold, the error must be over it too,
+     * and the rest of the matrix is not computed.
+     *
+     * @param trusted points of section of answer
+     * @param untrusted points of section of user
+     * @param threshold largest error the caller is interested in
+     * @return the measured error if it is at most threshold, otherwise some lower bound of it larger than threshold
+     */
+    static double error(final Section trusted, final Section untrusted, final double threshold) {
+        return KERNEL.error(trusted, untrusted, threshold);
+    }
+
+    /**
+     * choose the kernel for unconstrained DTW. The vectorised kernel is only present in the multi-release jar on
+     * Java 17 or later, and can only be loaded if the JVM was started with --add-modules jdk.incubator.vector; in
+     * any other case, or if the system property KERNEL_PROPERTY is "scalar", the scalar kernel is used.
+     *
+     * The kernel chosen is written to Diagnostics at INFO. On Java 17 or later, failing to load the vector kernel is
+     * written as an error with its cause, as it usually means the classes are run from a directory rather than the
+     * multi-release jar, or the module is missing.
+     *
+     * @return the kernel
+     */
+    static DtwKernel selectKernel() {
+        if (SCALAR.equals(System.getProperty(KERNEL_PROPERTY))) {
+            Diagnostics.info("DTW kernel: scalar, forced by " + KERNEL_PROPERTY);
+            return new ScalarDtwKernel();
+        }
+        try {
+            DtwKernel kernel = (DtwKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+            Diagnostics.info("DTW kernel: vector");
+            return kernel;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            if (javaVersion() >= VECTOR_JAVA_VERSION) {
+                Diagnostics.error("Cannot load the vector DTW kernel, using the scalar kernel!", e);
+            } else {
+                Diagnostics.info("DTW kernel: scalar, as the vector kernel needs Java " + VECTOR_JAVA_VERSION);
+            }
+            return new ScalarDtwKernel();
+        }
+    }
+
+    /**
+     * @return the feature version of the running Java, such as 8 or 17
+     */
+    static int javaVersion() {
+        String version = System.getProperty("java.specification.version", "1.8");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the kernel chosen for unconstrained DTW
+     */
+    static DtwKernel getKernel() {
+        return KERNEL;
+    }
+
+    /**
+     * @param kernel a kernel
+     * @return VECTOR for the vectorised kernel, SCALAR otherwise
+     */
+    static String kernelName(final DtwKernel kernel) {
+        return kernel.getClass().getName().equals(VECTOR_KERNEL) ? VECTOR : SCALAR;
+    }
+
+    /**
+     * Number of points of the answer's section either side of the diagonal a warping path may stray, for a warping
+     * window given as a fraction of the section's length.
+     *
+     * @param n number of points in section of answer
+     * @param window the warping window, as a fraction of n
+     * @return the radius, at least 1
+     */
+    static int windowRadius(final int n, final double window) {
+        return Math.max(1, (int) Math.ceil(window * n));
+    }
+
+    /**
+     * Radius of the band actually used to compare two sections. It is the window radius, widened when the answer's
+     * section is much longer than the user's, as otherwise consecutive points of the user's section could fall in
+     * bands that do not touch and no warping path would exist.
+     *
+     * @param n number of points in section of answer, at least 2
+     * @param m number of points in section of user, at least 2
+     * @param window the warping window, as a fraction of n
+     * @return the radius
+     */
+    static int bandRadius(final int n, final int m, final double window) {
+        int stride = (n - 1 + m - 2) / (m - 1);
+        return Math.max(windowRadius(n, window), (stride + 2) / 2);
+    }
+
+    /**
+     * Calculate the error between two sections, only allowing warping paths that stay within a band around the
+     * diagonal (a "Sakoe-Chiba band"). Point k of the user's section may only be matched with point a of the answer's
+     * section if |a - k * (n - 1) / (m - 1)| is at most the band radius, so only O(n * radius) cells are computed.
+     * The result is never smaller than the unconstrained error.
+     *
+     * As in error(trusted, untrusted, threshold), the computation stops once the error is known to be over the
+     * threshold.
+     *
+     * @param trusted points of section of answer
+     * @param untrusted points of section of user
+     * @param window the warping window, as a fraction of the length of trusted. 1 or more is unconstrained.
+     * @param threshold largest error the caller is interested in
+     * @return the measured error if it is at most threshold, otherwise some lower bound of it larger than threshold
+     */
+    static double error(final Section trusted, final Section untrusted, final double window,
+                        final double threshold) {
+        int n = trusted.length();
+        int m = untrusted.length();
+        if (window >= 1 || n < 2 || m < 2) {
+            return error(trusted, untrusted, threshold);
+        }
+
+        double[] tx = trusted.xs;
+        double[] ty = trusted.ys;
+        double[] ux = untrusted.xs;
+        double[] uy = untrusted.ys;
+        long radius = bandRadius(n, m, window);
+
+        Scratch scratch = Scratch.get();
+        double[] forward = scratch.row(0, m + 1);
+        double[] forwardPrev = scratch.row(1, m + 1);
+        double[] reverse = scratch.row(2, m + 1);
+        double[] reversePrev = scratch.row(3, m + 1);
+
+        Arrays.fill(forward, 0, m + 1, OUTSIDE);
+        Arrays.fill(reverse, 0, m + 1, OUTSIDE);
+        forwardPrev[0] = 0;
+        reversePrev[0] = 0;
+        for (int j = 1; j <= m; j++) {
+            forwardPrev[j] = BOUNDARY;
+            reversePrev[j] = BOUNDARY;
+        }
+
+        // columns last written into each pair of rows, which must be reset before the rows are reused
+        int prevLo = 1;
+        int prevHi = m;
+        int curLo = 1;
+        int curHi = 0;
+        long cells = 0;
+
+        for (int i = 1; i <= n; i++) {
+            double x = tx[i - 1];
+            double y = ty[i - 1];
+            long a = i - 1;
+            int lo = (int) Math.max(1, -Math.floorDiv((radius - a) * (m - 1), n - 1) + 1);
+            int hi = (int) Math.min(m, Math.floorDiv((a + radius) * (m - 1), n - 1) + 1);
+
+            Arrays.fill(forward, curLo, curHi + 1, OUTSIDE);
+            Arrays.fill(reverse, curLo, curHi + 1, OUTSIDE);
+            forward[0] = BOUNDARY;
+            reverse[0] = BOUNDARY;
+            double rowMin = BOUNDARY;
+            cells += Math.max(0, hi - lo + 1);
+
+            for (int j = lo; j <= hi; j++) {
+                double dx = ux[j - 1] - x;
+                double dy = uy[j - 1] - y;
+                double cost = dx * dx + dy * dy;
+                forward[j] = cost + Math.min(Math.min(forwardPrev[j], forward[j - 1]), forwardPrev[j - 1]);
+
+                double rx = ux[m - j] - x;
+                double ry = uy[m - j] - y;
+                double reverseCost = rx * rx + ry * ry;
+                reverse[j] = reverseCost + Math.min(Math.min(reversePrev[j], reverse[j - 1]), reversePrev[j - 1]);
+
+                rowMin = Math.min(rowMin, Math.min(forward[j], reverse[j]));
+            }
+
+            if (rowMin > threshold) {
+                Metrics.addDtwCells(cells);
+                return rowMin;
+            }
+
+            double[] tmp = forwardPrev;
+            forwardPrev = forward;
+            forward = tmp;
+
+            tmp = reversePrev;
+            reversePrev = reverse;
+            reverse = tmp;
+
+            curLo = prevLo;
+            curHi = prevHi;
+            prevLo = lo;
+            prevHi = hi;
+        }
+
+        Metrics.addDtwCells(cells);
+        return Math.min(forwardPrev[m], reversePrev[m]);
+    }
+
+    /**
+     * Lower bound of the banded error between a section of the answer and a section of user ("LB_Keogh"). Every point
+     * of the user's section is matched with at least one point of the answer's section inside its band, so its cost is
+     * at least the squared distance to the bounding box of those points. The bound is much cheaper than the error
+     * itself, and if it already exceeds the tolerance the error need not be computed.
+     *
+     * @param envelope envelope of section of answer
+     * @param untrusted points of section of user
+     * @param window the warping window the envelope was computed for, as a fraction of the length of the section
+     * @return a lower bound of error(trusted, untrusted, window), 0 if the envelope is too narrow to give one
+     */
+    static double lowerBound(final Envelope envelope, final Section untrusted, final double window) {
+        int n = envelope.length();
+        int m = untrusted.length();
+        if (window >= 1 || n < 2 || m < 2 || bandRadius(n, m, window) > envelope.radius) {
+            return 0;
+        }
+
+        double[] ux = untrusted.xs;
+        double[] uy = untrusted.ys;
+        double forward = 0;
+        double reverse = 0;
+        for (int k = 0; k < m; k++) {
+            int i = (int) ((long) k * (n - 1) / (m - 1));
+            forward += envelope.squaredDistance(i, ux[k], uy[k]);
+            reverse += envelope.squaredDistance(i, ux[m - 1 - k], uy[m - 1 - k]);
+        }
+
+        return Math.min(forward, reverse);
+    }
+}
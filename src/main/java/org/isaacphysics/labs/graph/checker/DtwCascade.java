@@ -0,0 +1,283 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Measures the error between two long sections coarse to fine, in the style of "FastDTW". Both sections are
+ * repeatedly downsampled by averaging pairs of points. DTW is computed on the coarsest sections first, and the error
+ * is scaled up to the length of the original sections. If that estimate is clearly above or below the tolerance, it
+ * decides; otherwise the warping path found is projected onto the next finer sections, widened by a few points, and
+ * DTW is computed again only inside that window.
+ *
+ * Errors decided at a coarse level, or through a projected window, are estimates of the error Dtw would measure.
+ */
+public final class DtwCascade {
+
+    /**
+     * sections are only downsampled while they have at least twice this many points.
+     */
+    static final int MIN_LENGTH = 16;
+
+    /**
+     * number of points the projected warping path is widened by on each side.
+     */
+    private static final int RADIUS = 2;
+
+    /**
+     * a coarse estimate decides if it is more than this many times the tolerance, or less than tolerance over this.
+     */
+    private static final double MARGIN = 2;
+
+    /**
+     * Utility class should not have public or default constructor.
+     */
+    private DtwCascade() {
+        //
+    }
+
+    /**
+     * The error of a section together with the level that decided it, 0 being the original sections.
+     */
+    public static final class Decision {
+        private final double error;
+        private final int level;
+
+        /**
+         * constructor for Decision.
+         * @param error the measured or estimated error
+         * @param level level of resolution that decided the error
+         */
+        Decision(final double error, final int level) {
+            this.error = error;
+            this.level = level;
+        }
+
+        public double getError() {
+            return error;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+    }
+
+    /**
+     * A warping path and its cost.
+     */
+    private static final class Alignment {
+        private final double error;
+        private final int[] rows;
+        private final int[] cols;
+
+        /**
+         * constructor for Alignment.
+         * @param error cost of the path
+         * @param rows index in the answer's section of each step of the path
+         * @param cols index in the user's section of each step of the path
+         */
+        private Alignment(final double error, final int[] rows, final int[] cols) {
+            this.error = error;
+            this.rows = rows;
+            this.cols = cols;
+        }
+    }
+
+    /**
+     * halve the number of points of a section by averaging consecutive pairs. The last point of a section of odd
+     * length is kept as it is.
+     * @param section the section
+     * @return the downsampled section
+     */
+    static Section downsample(final Section section) {
+        int n = section.length();
+        double[] xs = new double[(n + 1) / 2];
+        double[] ys = new double[(n + 1) / 2];
+        for (int i = 0; i < xs.length; i++) {
+            int j = Math.min(2 * i + 1, n - 1);
+            xs[i] = (section.xs[2 * i] + section.xs[j]) / 2;
+            ys[i] = (section.ys[2 * i] + section.ys[j]) / 2;
+        }
+        return new Section(xs, ys);
+    }
+
+    /**
+     * downsample a section repeatedly, until it is shorter than twice MIN_LENGTH.
+     * @param section the section
+     * @return the section at each level of resolution, starting with the section itself
+     */
+    static Section[] pyramid(final Section section) {
+        ArrayList<Section> levels = new ArrayList<>();
+        Section current = section;
+        levels.add(current);
+        while (current.length() >= 2 * MIN_LENGTH) {
+            current = downsample(current);
+            levels.add(current);
+        }
+        return levels.toArray(new Section[levels.size()]);
+    }
+
+    /**
+     * @param section the section
+     * @return the points of the section in reverse order
+     */
+    private static Section reverse(final Section section) {
+        int n = section.length();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = section.xs[n - 1 - i];
+            ys[i] = section.ys[n - 1 - i];
+        }
+        return new Section(xs, ys);
+    }
+
+    /**
+     * Decide the error between a section of the answer and a section of user, refining only while the estimate is
+     * close to the tolerance.
+     *
+     * @param trusted the section of answer at each level of resolution, as returned by pyramid
+     * @param untrusted points of section of user
+     * @param tolerance largest error the section may have
+     * @return the error and the level that decided it
+     */
+    static Decision error(final Section[] trusted, final Section untrusted, final double tolerance) {
+        Section[] forward = pyramid(untrusted);
+        int level = Math.min(trusted.length, forward.length) - 1;
+        if (level == 0) {
+            return new Decision(Dtw.error(trusted[0], untrusted, tolerance), 0);
+        }
+        Section[] reverse = pyramid(reverse(untrusted));
+
+        Alignment forwardPath = align(trusted[level], forward[level], null);
+        Alignment reversePath = align(trusted[level], reverse[level], null);
+
+        while (true) {
+            double scale = (double) (trusted[0].length() + untrusted.length())
+                    / (trusted[level].length() + forward[level].length());
+            double estimate = Math.min(forwardPath.error, reversePath.error) * scale;
+
+            if (level == 0 || estimate > tolerance * MARGIN || estimate < tolerance / MARGIN) {
+                return new Decision(estimate, level);
+            }
+
+            level--;
+            forwardPath = align(trusted[level], forward[level], forwardPath);
+            reversePath = align(trusted[level], reverse[level], reversePath);
+        }
+    }
+
+    /**
+     * Run DTW inside a window, keeping the cells of the window so the warping path can be traced back. The cost and
+     * the boundary are the same as in Dtw.
+     *
+     * @param trusted points of section of answer
+     * @param untrusted points of section of user
+     * @param coarse warping path at the next coarser level, whose projection is the window. If null, the window is the
+     *      whole matrix.
+     * @return the optimal warping path inside the window
+     */
+    private static Alignment align(final Section trusted, final Section untrusted, final Alignment coarse) {
+        int n = trusted.length();
+        int m = untrusted.length();
+        int[] lo = new int[n];
+        int[] hi = new int[n];
+
+        if (coarse == null) {
+            Arrays.fill(hi, m - 1);
+        } else {
+            Arrays.fill(lo, m - 1);
+            Arrays.fill(hi, 0);
+            for (int s = 0; s < coarse.rows.length; s++) {
+                int fromCol = Math.max(0, 2 * coarse.cols[s] - RADIUS);
+                int toCol = Math.min(m - 1, 2 * coarse.cols[s] + 1 + RADIUS);
+                int toRow = Math.min(n - 1, 2 * coarse.rows[s] + 1 + RADIUS);
+                for (int a = Math.max(0, 2 * coarse.rows[s] - RADIUS); a <= toRow; a++) {
+                    lo[a] = Math.min(lo[a], fromCol);
+                    hi[a] = Math.max(hi[a], toCol);
+                }
+            }
+        }
+
+        double[][] cells = new double[n][];
+        long computed = 0;
+        for (int a = 0; a < n; a++) {
+            cells[a] = new double[hi[a] - lo[a] + 1];
+            computed += cells[a].length;
+            double x = trusted.xs[a];
+            double y = trusted.ys[a];
+            for (int k = lo[a]; k <= hi[a]; k++) {
+                double dx = untrusted.xs[k] - x;
+                double dy = untrusted.ys[k] - y;
+                double best = Math.min(Math.min(cell(cells, lo, a - 1, k), cell(cells, lo, a, k - 1)),
+                        cell(cells, lo, a - 1, k - 1));
+                cells[a][k - lo[a]] = dx * dx + dy * dy + best;
+            }
+        }
+
+        Metrics.addDtwCells(computed);
+
+        ArrayList<int[]> path = new ArrayList<>();
+        int a = n - 1;
+        int k = m - 1;
+        path.add(new int[] {a, k});
+        while (a > 0 || k > 0) {
+            double diagonal = cell(cells, lo, a - 1, k - 1);
+            double up = cell(cells, lo, a - 1, k);
+            double left = cell(cells, lo, a, k - 1);
+            if (a > 0 && k > 0 && diagonal <= up && diagonal <= left) {
+                a--;
+                k--;
+            } else if (a > 0 && (k == 0 || up <= left)) {
+                a--;
+            } else {
+                k--;
+            }
+            path.add(new int[] {a, k});
+        }
+
+        int[] rows = new int[path.size()];
+        int[] cols = new int[path.size()];
+        for (int s = 0; s < rows.length; s++) {
+            rows[s] = path.get(s)[0];
+            cols[s] = path.get(s)[1];
+        }
+        return new Alignment(cells[n - 1][m - 1 - lo[n - 1]], rows, cols);
+    }
+
+    /**
+     * look up a cell of a windowed DTW matrix.
+     * @param cells cells of the window, row by row
+     * @param lo index of the first column of the window in each row
+     * @param a row of the cell
+     * @param k column of the cell
+     * @return the cost of the cell, with the boundary of Dtw before the first row and column, and infinity outside
+     *      the window
+     */
+    private static double cell(final double[][] cells, final int[] lo, final int a, final int k) {
+        if (a < 0 && k < 0) {
+            return 0;
+        } else if (a < 0 || k < 0) {
+            return Dtw.BOUNDARY;
+        } else if (k < lo[a] || k - lo[a] >= cells[a].length) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return cells[a][k - lo[a]];
+    }
+}
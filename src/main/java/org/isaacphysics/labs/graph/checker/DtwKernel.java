@@ -0,0 +1,45 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Computes the unconstrained DTW error between two sections, as described in Dtw: the cost of matching two points is
+ * the square of their distance, cells before the first row and column cost Dtw.BOUNDARY, and the error is the smaller
+ * of aligning the user's section forwards and backwards.
+ *
+ * Both sections are the output of normalisation, so they start at index 0 of their arrays.
+ *
+ * Every kernel must give the same result as ScalarDtwKernel to within a relative error of EPSILON, and must follow the
+ * same contract for the threshold.
+ */
+interface DtwKernel {
+
+    /**
+     * largest relative difference allowed between the results of two kernels.
+     */
+    double EPSILON = 1e-12;
+
+    /**
+     * Calculate the error between two sections, or decide that it is over a threshold.
+     *
+     * @param trusted points of section of answer
+     * @param untrusted points of section of user
+     * @param threshold largest error the caller is interested in
+     * @return the measured error if it is at most threshold, otherwise some lower bound of it larger than threshold
+     */
+    double error(Section trusted, Section untrusted, double threshold);
+}
@@ -0,0 +1,110 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Envelope of a section of the answer, used to bound the DTW error of user's section from below without running DTW.
+ * For every point of the section it holds the bounding box of the points within a fixed number of positions of it,
+ * which are all the points a warping path constrained to that radius may match against.
+ */
+public final class Envelope {
+    final int radius;
+    final double[] minX;
+    final double[] maxX;
+    final double[] minY;
+    final double[] maxY;
+
+    /**
+     * constructor for Envelope.
+     * @param radius number of positions either side of each point covered by its box
+     * @param minX lower x bound of each box
+     * @param maxX upper x bound of each box
+     * @param minY lower y bound of each box
+     * @param maxY upper y bound of each box
+     */
+    private Envelope(final int radius, final double[] minX, final double[] maxX, final double[] minY,
+                     final double[] maxY) {
+        this.radius = radius;
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    /**
+     * compute the envelope of a section.
+     * @param section the section of the answer
+     * @param radius number of positions either side of each point covered by its box
+     * @return the envelope
+     */
+    static Envelope of(final Section section, final int radius) {
+        int n = section.length();
+        double[] minX = new double[n];
+        double[] maxX = new double[n];
+        double[] minY = new double[n];
+        double[] maxY = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            int from = Math.max(0, i - radius);
+            int to = Math.min(n - 1, i + radius);
+            minX[i] = section.xs[from];
+            maxX[i] = section.xs[from];
+            minY[i] = section.ys[from];
+            maxY[i] = section.ys[from];
+            for (int k = from + 1; k <= to; k++) {
+                minX[i] = Math.min(minX[i], section.xs[k]);
+                maxX[i] = Math.max(maxX[i], section.xs[k]);
+                minY[i] = Math.min(minY[i], section.ys[k]);
+                maxY[i] = Math.max(maxY[i], section.ys[k]);
+            }
+        }
+
+        return new Envelope(radius, minX, maxX, minY, maxY);
+    }
+
+    /**
+     * @return number of points in the enveloped section
+     */
+    public int length() {
+        return minX.length;
+    }
+
+    /**
+     * squared distance from a point to the box of one position of the envelope.
+     * @param i position in the envelope
+     * @param x x-coordinate of the point
+     * @param y y-coordinate of the point
+     * @return the squared distance, 0 if the point is inside the box
+     */
+    double squaredDistance(final int i, final double x, final double y) {
+        double dx = 0;
+        if (x < minX[i]) {
+            dx = minX[i] - x;
+        } else if (x > maxX[i]) {
+            dx = x - maxX[i];
+        }
+
+        double dy = 0;
+        if (y < minY[i]) {
+            dy = minY[i] - y;
+        } else if (y > maxY[i]) {
+            dy = y - maxY[i];
+        }
+
+        return dx * dx + dy * dy;
+    }
+}
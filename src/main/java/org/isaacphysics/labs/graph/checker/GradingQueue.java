@@ -0,0 +1,108 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed number of threads grading requests, fed by a queue of bounded capacity. A request that arrives when the
+ * queue is full is refused straight away rather than queued, so the time a request waits stays bounded under load.
+ */
+public final class GradingQueue {
+
+    private final int capacity;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * constructor for GradingQueue.
+     * @param threads number of threads grading requests
+     * @param capacity the maximum number of requests waiting for a thread
+     */
+    public GradingQueue(final int threads, final int capacity) {
+        if (threads <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("threads and capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * queue a task, unless the queue is full.
+     * @param task the task to run on one of the grading threads
+     * @return true if the task is queued, false if it is refused
+     */
+    public boolean offer(final Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * stop the grading threads once the tasks already queued are done.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return number of tasks waiting for a thread
+     */
+    public int getDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the maximum number of tasks waiting for a thread
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of tasks being run
+     */
+    public int getActive() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return number of tasks queued so far
+     */
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    /**
+     * @return number of tasks refused so far because the queue was full
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,73 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Graph is everything drawn on one canvas, either the correct answer or user's answer. It has fields:
+ * canvasWidth, canvasHeight: size of the canvas the graph is drawn on
+ * descriptor: free text describing the graph, may be empty
+ * curves: curves drawn on the canvas
+ * options: options of the question, only meaningful in the correct answer
+ */
+public class Graph {
+
+    private double canvasWidth;
+    private double canvasHeight;
+    private String descriptor = "";
+    private Curve[] curves;
+    private CheckerOptions options = new CheckerOptions();
+
+    public double getCanvasWidth() {
+        return canvasWidth;
+    }
+
+    public double getCanvasHeight() {
+        return canvasHeight;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    public Curve[] getCurves() {
+        return curves;
+    }
+
+    public CheckerOptions getOptions() {
+        return options;
+    }
+
+    public void setCanvasWidth(final double canvasWidth) {
+        this.canvasWidth = canvasWidth;
+    }
+
+    public void setCanvasHeight(final double canvasHeight) {
+        this.canvasHeight = canvasHeight;
+    }
+
+    public void setDescriptor(final String descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    public void setCurves(final Curve[] curves) {
+        this.curves = curves;
+    }
+
+    public void setOptions(final CheckerOptions options) {
+        this.options = options;
+    }
+}
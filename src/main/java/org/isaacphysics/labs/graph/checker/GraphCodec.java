@@ -0,0 +1,449 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compact binary encoding of user's graph, the reference encoder and decoder of it, and of the request envelope
+ * CheckerServlet accepts as an alternative to JSON when the Content-Type is CONTENT_TYPE.
+ *
+ * All numbers are big-endian. A graph is:
+ * <pre>
+ *   f32 canvasWidth, f32 canvasHeight, str descriptor, u16 number of curves, then per curve:
+ *     u8 colorIdx, f32 minX, f32 minY, f32 maxX, f32 maxY,
+ *     i32 number of points n, then if n &gt; 0: f32 x0, f32 y0 and n - 1 pairs of f32 dx, f32 dy,
+ *     the knot tables interX, interY, maxima and minima, each a u16 number of knots, then per knot:
+ *       i32 index of the point the knot is at, or -1 followed by f32 x, f32 y,
+ *       u8 flags (1: symbol, 2: xSymbol, 4: ySymbol), then f32 x, f32 y, str text of each symbol present
+ * </pre>
+ * where str is a u16 number of bytes followed by the string in UTF-8. Points are delta-encoded against the
+ * reconstructed previous point, so the decoder rebuilds exactly the values the encoder rounded to. A knot that lies on
+ * a point refers to it by index, so it stays exactly on the point after decoding.
+ *
+ * The envelope is the magic bytes 'G' 'B', a u8 version, a u32 length and the answer's JSON string in UTF-8, a u32
+ * length and the description in UTF-8, and then user's graph up to the end of the body. The answer stays JSON, as it
+ * is the key under which its compiled form is cached. Options of a question are part of the answer, so a graph
+ * encoded here has none.
+ */
+public final class GraphCodec {
+
+    /**
+     * the Content-Type of a request body in the binary envelope.
+     */
+    public static final String CONTENT_TYPE = "application/x-graph-binary";
+
+    static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'G', 'B'};
+    private static final int NO_INDEX = -1;
+    private static final int SYMBOL = 1;
+    private static final int X_SYMBOL = 2;
+    private static final int Y_SYMBOL = 4;
+    private static final int MAX_U16 = 0xffff;
+    private static final int FLOATS_PER_POINT = 2 * Float.BYTES;
+
+    /**
+     * Utility class should not have public or default constructor.
+     */
+    private GraphCodec() {
+        //
+    }
+
+    /**
+     * A request decoded from the binary envelope.
+     */
+    public static final class Submission {
+        private final String target;
+        private final String description;
+        private final byte[] test;
+
+        private Submission(final String target, final String description, final byte[] test) {
+            this.target = target;
+            this.description = description;
+            this.test = test;
+        }
+
+        /**
+         * @return the JSON string of the correct answer
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        /**
+         * @return the description of the request, or null if it has none
+         */
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * @return user's graph, still encoded
+         */
+        public byte[] getTest() {
+            return test;
+        }
+    }
+
+    /**
+     * @param contentType the Content-Type of a request, with or without parameters, or null
+     * @return whether the request body is in the binary envelope
+     */
+    public static boolean isBinary(final String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int end = contentType.indexOf(';');
+        String mediaType = end < 0 ? contentType : contentType.substring(0, end);
+        return CONTENT_TYPE.equalsIgnoreCase(mediaType.trim());
+    }
+
+    /**
+     * encode a request into the binary envelope.
+     *
+     * @param targetJSONString a JSON String which contains the correct answer
+     * @param description description of the request, or null
+     * @param test user's graph
+     * @return the request body
+     */
+    public static byte[] encodeRequest(final String targetJSONString, final String description, final Graph test) {
+        byte[] target = targetJSONString.getBytes(StandardCharsets.UTF_8);
+        byte[] text = description == null ? new byte[0] : description.getBytes(StandardCharsets.UTF_8);
+        byte[] graph = encode(test);
+
+        ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 1 + 2 * Integer.BYTES + target.length + text.length
+                + graph.length);
+        buffer.put(MAGIC).put((byte) VERSION);
+        buffer.putInt(target.length).put(target);
+        buffer.putInt(text.length).put(text);
+        buffer.put(graph);
+        return buffer.array();
+    }
+
+    /**
+     * decode a request from the binary envelope. User's graph is left encoded, so it can be hashed before it is
+     * decoded.
+     *
+     * @param body the request body
+     * @return the request
+     * @throws CheckerException thrown if the body is not in the binary envelope, or is truncated
+     */
+    public static Submission decodeRequest(final byte[] body) throws CheckerException {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        try {
+            for (byte b : MAGIC) {
+                if (buffer.get() != b) {
+                    throw new CheckerException("Invalid binary request: bad magic");
+                }
+            }
+            int version = buffer.get() & 0xff;
+            if (version != VERSION) {
+                throw new CheckerException("Invalid binary request: unsupported version " + version);
+            }
+            String target = readString(buffer, readLength(buffer));
+            int length = readLength(buffer);
+            String description = length == 0 ? null : readString(buffer, length);
+            byte[] test = new byte[buffer.remaining()];
+            buffer.get(test);
+            return new Submission(target, description, test);
+        } catch (BufferUnderflowException e) {
+            throw new CheckerException("Invalid binary request: truncated");
+        }
+    }
+
+    /**
+     * encode user's graph. Coordinates are rounded to float.
+     *
+     * @param graph the graph
+     * @return the encoded graph
+     */
+    public static byte[] encode(final Graph graph) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeFloat((float) graph.getCanvasWidth());
+            out.writeFloat((float) graph.getCanvasHeight());
+            writeString(out, graph.getDescriptor() == null ? "" : graph.getDescriptor());
+
+            Curve[] curves = graph.getCurves();
+            checkU16(curves.length, "curves");
+            out.writeShort(curves.length);
+            for (Curve curve : curves) {
+                encodeCurve(out, curve);
+            }
+        } catch (IOException e) {
+            // writing to a byte array does not do any I/O
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * decode user's graph.
+     *
+     * @param encoded the encoded graph
+     * @return the graph
+     * @throws CheckerException thrown if the graph is truncated, has trailing bytes, or information in it is not valid
+     */
+    public static Graph decode(final byte[] encoded) throws CheckerException {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        try {
+            Graph graph = new Graph();
+            graph.setCanvasWidth(buffer.getFloat());
+            if (!(graph.getCanvasWidth() >= 0 && graph.getCanvasWidth() <= Parser.MAX_CANVAS_DIMENTION)) {
+                throw new CheckerException("Invalid canvasWidth");
+            }
+            graph.setCanvasHeight(buffer.getFloat());
+            if (!(graph.getCanvasHeight() >= 0 && graph.getCanvasHeight() <= Parser.MAX_CANVAS_DIMENTION)) {
+                throw new CheckerException("Invalid canvasHeight");
+            }
+            graph.setDescriptor(readString(buffer, buffer.getShort() & MAX_U16));
+
+            Curve[] curves = new Curve[buffer.getShort() & MAX_U16];
+            for (int i = 0; i < curves.length; i++) {
+                curves[i] = decodeCurve(buffer);
+            }
+            graph.setCurves(curves);
+
+            if (buffer.hasRemaining()) {
+                throw new CheckerException("Invalid binary graph: trailing bytes");
+            }
+            return graph;
+        } catch (BufferUnderflowException e) {
+            throw new CheckerException("Invalid binary graph: truncated");
+        }
+    }
+
+    /**
+     * @param out stream to write to
+     * @param curve the curve to encode
+     * @throws IOException thrown by the stream
+     */
+    private static void encodeCurve(final DataOutputStream out, final Curve curve) throws IOException {
+        out.writeByte(curve.getColorIdx());
+        out.writeFloat((float) curve.getMinX());
+        out.writeFloat((float) curve.getMinY());
+        out.writeFloat((float) curve.getMaxX());
+        out.writeFloat((float) curve.getMaxY());
+
+        double[] xs = curve.getXs();
+        double[] ys = curve.getYs();
+        int n = curve.getNumPts();
+        out.writeInt(n);
+        float px = 0;
+        float py = 0;
+        for (int i = 0; i < n; i++) {
+            float dx = (float) xs[i] - px;
+            float dy = (float) ys[i] - py;
+            out.writeFloat(dx);
+            out.writeFloat(dy);
+            px += dx;
+            py += dy;
+        }
+
+        encodeKnots(out, curve.getInterX(), xs, ys, n);
+        encodeKnots(out, curve.getInterY(), xs, ys, n);
+        encodeKnots(out, curve.getMaxima(), xs, ys, n);
+        encodeKnots(out, curve.getMinima(), xs, ys, n);
+    }
+
+    /**
+     * @param buffer buffer to read from
+     * @return the decoded curve
+     * @throws CheckerException thrown if information in the curve is not valid
+     */
+    private static Curve decodeCurve(final ByteBuffer buffer) throws CheckerException {
+        Curve curve = new Curve();
+        int colorIdx = buffer.get() & 0xff;
+        if (colorIdx >= Checker.NUM_COLOR) {
+            throw new CheckerException("Invalid colorIdx");
+        }
+        curve.setColorIdx(colorIdx);
+        curve.setMinX(buffer.getFloat());
+        curve.setMinY(buffer.getFloat());
+        curve.setMaxX(buffer.getFloat());
+        curve.setMaxY(buffer.getFloat());
+
+        int n = buffer.getInt();
+        if (n < 0 || n > buffer.remaining() / FLOATS_PER_POINT) {
+            throw new CheckerException("Invalid binary graph: bad number of points");
+        }
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        float px = 0;
+        float py = 0;
+        for (int i = 0; i < n; i++) {
+            px += buffer.getFloat();
+            py += buffer.getFloat();
+            xs[i] = px;
+            ys[i] = py;
+        }
+        curve.setPts(xs, ys);
+
+        curve.setInterX(decodeKnots(buffer, xs, ys));
+        curve.setInterY(decodeKnots(buffer, xs, ys));
+        curve.setMaxima(decodeKnots(buffer, xs, ys));
+        curve.setMinima(decodeKnots(buffer, xs, ys));
+        return curve;
+    }
+
+    /**
+     * @param out stream to write to
+     * @param knots the knots to encode
+     * @param xs x coordinates of the points of the curve
+     * @param ys y coordinates of the points of the curve
+     * @param n number of points of the curve
+     * @throws IOException thrown by the stream
+     */
+    private static void encodeKnots(final DataOutputStream out, final Knot[] knots, final double[] xs,
+                                    final double[] ys, final int n) throws IOException {
+        checkU16(knots.length, "knots");
+        out.writeShort(knots.length);
+        for (Knot knot : knots) {
+            int index = NO_INDEX;
+            for (int i = 0; i < n; i++) {
+                if (xs[i] == knot.x && ys[i] == knot.y) {
+                    index = i;
+                    break;
+                }
+            }
+            out.writeInt(index);
+            if (index == NO_INDEX) {
+                out.writeFloat((float) knot.x);
+                out.writeFloat((float) knot.y);
+            }
+
+            int flags = (knot.symbol != null ? SYMBOL : 0) | (knot.xSymbol != null ? X_SYMBOL : 0)
+                    | (knot.ySymbol != null ? Y_SYMBOL : 0);
+            out.writeByte(flags);
+            encodeSymbol(out, knot.symbol);
+            encodeSymbol(out, knot.xSymbol);
+            encodeSymbol(out, knot.ySymbol);
+        }
+    }
+
+    /**
+     * @param buffer buffer to read from
+     * @param xs x coordinates of the points of the curve
+     * @param ys y coordinates of the points of the curve
+     * @return the decoded knots
+     * @throws CheckerException thrown if a knot refers to a point the curve does not have
+     */
+    private static Knot[] decodeKnots(final ByteBuffer buffer, final double[] xs, final double[] ys)
+                                                    throws CheckerException {
+        Knot[] knots = new Knot[buffer.getShort() & MAX_U16];
+        for (int i = 0; i < knots.length; i++) {
+            int index = buffer.getInt();
+            double x;
+            double y;
+            if (index == NO_INDEX) {
+                x = buffer.getFloat();
+                y = buffer.getFloat();
+            } else if (index >= 0 && index < xs.length) {
+                x = xs[index];
+                y = ys[index];
+            } else {
+                throw new CheckerException("Invalid binary graph: knot refers to a missing point");
+            }
+
+            int flags = buffer.get();
+            Symbol symbol = (flags & SYMBOL) != 0 ? decodeSymbol(buffer) : null;
+            Symbol xSymbol = (flags & X_SYMBOL) != 0 ? decodeSymbol(buffer) : null;
+            Symbol ySymbol = (flags & Y_SYMBOL) != 0 ? decodeSymbol(buffer) : null;
+            knots[i] = new Knot(x, y, symbol, xSymbol, ySymbol);
+        }
+        return knots;
+    }
+
+    /**
+     * @param out stream to write to
+     * @param symbol the symbol to encode, nothing is written if it is null
+     * @throws IOException thrown by the stream
+     */
+    private static void encodeSymbol(final DataOutputStream out, final Symbol symbol) throws IOException {
+        if (symbol == null) {
+            return;
+        }
+        out.writeFloat((float) symbol.x);
+        out.writeFloat((float) symbol.y);
+        writeString(out, symbol.text);
+    }
+
+    /**
+     * @param buffer buffer to read from
+     * @return the decoded symbol
+     */
+    private static Symbol decodeSymbol(final ByteBuffer buffer) {
+        float x = buffer.getFloat();
+        float y = buffer.getFloat();
+        return new Symbol(x, y, readString(buffer, buffer.getShort() & MAX_U16));
+    }
+
+    /**
+     * @param out stream to write to
+     * @param text the string to write, prefixed by its length in bytes as a u16
+     * @throws IOException thrown by the stream
+     */
+    private static void writeString(final DataOutputStream out, final String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        checkU16(bytes.length, "bytes in a string");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param buffer buffer to read from
+     * @param length number of bytes of the string
+     * @return the decoded string
+     */
+    private static String readString(final ByteBuffer buffer, final int length) {
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return text;
+    }
+
+    /**
+     * @param buffer buffer to read from
+     * @return a u32 length, which must fit in the rest of the buffer
+     */
+    private static int readLength(final ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+
+    /**
+     * @param count number of things to be written as a u16
+     * @param what what they are, for the message
+     */
+    private static void checkU16(final int count, final String what) {
+        if (count > MAX_U16) {
+            throw new IllegalArgumentException("too many " + what + " to encode: " + count);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values with buckets whose upper bounds double from a base value, updated without locks.
+ * Recording a value costs two atomic additions.
+ */
+public final class Histogram {
+
+    private final long base;
+    private final AtomicLongArray buckets;
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * constructor for Histogram.
+     * @param base upper bound of the first bucket
+     * @param bounded number of buckets with an upper bound; one more bucket holds larger values
+     */
+    public Histogram(final long base, final int bounded) {
+        if (base <= 0 || bounded <= 0 || bounded > Long.numberOfLeadingZeros(base)) {
+            throw new IllegalArgumentException("base and bounded must be positive, and the bounds must fit in a long");
+        }
+        this.base = base;
+        this.buckets = new AtomicLongArray(bounded + 1);
+    }
+
+    /**
+     * record a value.
+     * @param value the value, negative values are recorded as 0
+     */
+    public void record(final long value) {
+        long v = Math.max(0, value);
+        long q = (v - 1) / base;
+        int idx = v <= base ? 0 : 64 - Long.numberOfLeadingZeros(q);
+        buckets.incrementAndGet(Math.min(idx, buckets.length() - 1));
+        sum.add(v);
+    }
+
+    /**
+     * @return number of buckets, including the last one, which has no upper bound
+     */
+    public int size() {
+        return buckets.length();
+    }
+
+    /**
+     * @param idx index of a bucket other than the last
+     * @return the largest value counted in the bucket
+     */
+    public long upperBound(final int idx) {
+        return base << idx;
+    }
+
+    /**
+     * @param idx index of a bucket
+     * @return number of values counted in the bucket
+     */
+    public long count(final int idx) {
+        return buckets.get(idx);
+    }
+
+    /**
+     * @return sum of the values recorded
+     */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * write the histogram in Prometheus text format.
+     * @param out where to write to
+     * @param name name of the metric
+     * @param labels labels of the histogram, as 'name="value",', or an empty string
+     * @param scale unit of the values, in the unit of the metric
+     */
+    void writePrometheus(final StringBuilder out, final String name, final String labels, final double scale) {
+        long cumulative = 0;
+        for (int i = 0; i < size(); i++) {
+            cumulative += count(i);
+            String bound = i < size() - 1 ? String.valueOf(upperBound(i) * scale) : "+Inf";
+            out.append(name).append("_bucket{").append(labels).append("le=\"").append(bound).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        String plain = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        out.append(name).append("_sum").append(plain).append(' ').append(sum() * scale).append('\n');
+        out.append(name).append("_count").append(plain).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,271 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of checks, kept without locks and written in Prometheus text format.
+ *
+ * Each check is timed per stage. The time of a stage is the total over all colors and curves of the check, so in
+ * parallel it may be more than the time of the whole check.
+ */
+public final class Metrics {
+
+    /**
+     * The stages of a check. The cheap stages (COUNTS, KNOTS, SYMBOLS) of every color run before SHAPE and POSITION.
+     */
+    public enum Stage {
+        /** parsing user's graph and reducing its points. */
+        PARSE,
+        /** separating user's curves by color. */
+        CLASSIFY,
+        /** pairing user's curves with the curves of the answer. */
+        ASSIGN,
+        /** comparing the number and size of curves, intercepts and turning points. */
+        COUNTS,
+        /** comparing the shape of curves. */
+        SHAPE,
+        /** comparing the position of curves. */
+        POSITION,
+        /** comparing the quadrants of intercepts and turning points. */
+        KNOTS,
+        /** comparing labels. */
+        SYMBOLS
+    }
+
+    /**
+     * The result of a check.
+     */
+    public enum Outcome {
+        /** user's graph is correct. */
+        CORRECT,
+        /** a color has the wrong number of curves. */
+        WRONG_CURVE_COUNT,
+        /** a curve is too small. */
+        CURVE_TOO_SMALL,
+        /** a curve has the wrong number of intercepts. */
+        WRONG_INTERCEPTS,
+        /** a curve has the wrong number of turning points. */
+        WRONG_TURNING_POINTS,
+        /** a curve is the wrong shape. */
+        WRONG_SHAPE,
+        /** a curve is in the wrong position. */
+        WRONG_POSITION,
+        /** labels are in the wrong place. */
+        WRONG_LABELS,
+        /** user's graph cannot be checked. */
+        INVALID
+    }
+
+    private static final long NANOS_BASE = 1000;
+    private static final int NANOS_BUCKETS = 24;
+    private static final long POINTS_BASE = 1;
+    private static final int POINTS_BUCKETS = 20;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private static final Histogram[] STAGES = new Histogram[Stage.values().length];
+    private static final Histogram CHECKS = new Histogram(NANOS_BASE, NANOS_BUCKETS);
+    private static final Histogram POINTS = new Histogram(POINTS_BASE, POINTS_BUCKETS);
+    private static final LongAdder[] OUTCOMES = new LongAdder[Outcome.values().length];
+    private static final LongAdder DTW_CELLS = new LongAdder();
+
+    static {
+        for (int i = 0; i < STAGES.length; i++) {
+            STAGES[i] = new Histogram(NANOS_BASE, NANOS_BUCKETS);
+        }
+        for (int i = 0; i < OUTCOMES.length; i++) {
+            OUTCOMES[i] = new LongAdder();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * The time each stage of one check has taken so far. A check evaluated on one thread is timed in plain arrays that
+     * belong to the thread and are reused by its next check; only a check evaluated in parallel, whose stages are timed
+     * from several threads, gets its own atomic arrays.
+     */
+    public static final class Timings {
+        private static final ThreadLocal<Timings> LOCAL = ThreadLocal.withInitial(() -> new Timings(false));
+
+        private final long[] nanos;
+        private final long[] runs;
+        private final AtomicLongArray sharedNanos;
+        private final AtomicLongArray sharedRuns;
+        private long start;
+        private boolean busy;
+
+        /**
+         * constructor for Timings.
+         * @param shared whether stages are timed from several threads
+         */
+        private Timings(final boolean shared) {
+            this.nanos = shared ? null : new long[STAGES.length];
+            this.runs = shared ? null : new long[STAGES.length];
+            this.sharedNanos = shared ? new AtomicLongArray(STAGES.length) : null;
+            this.sharedRuns = shared ? new AtomicLongArray(STAGES.length) : null;
+        }
+
+        /**
+         * start timing a check.
+         * @param parallel whether stages of the check are timed from several threads
+         * @return timings of the check, which must be recorded once it is done
+         */
+        public static Timings start(final boolean parallel) {
+            Timings timings = parallel ? null : LOCAL.get();
+            if (timings == null || timings.busy) {
+                timings = new Timings(parallel);
+            } else {
+                Arrays.fill(timings.nanos, 0);
+                Arrays.fill(timings.runs, 0);
+            }
+            timings.busy = true;
+            timings.start = System.nanoTime();
+            return timings;
+        }
+
+        /**
+         * add the time of one run of a stage.
+         * @param stage the stage
+         * @param since System.nanoTime() when the run started
+         */
+        public void add(final Stage stage, final long since) {
+            long elapsed = System.nanoTime() - since;
+            if (nanos != null) {
+                nanos[stage.ordinal()] += elapsed;
+                runs[stage.ordinal()]++;
+            } else {
+                sharedNanos.addAndGet(stage.ordinal(), elapsed);
+                sharedRuns.incrementAndGet(stage.ordinal());
+            }
+        }
+
+        /**
+         * record the check, once it is done. The timings of the thread may then be reused.
+         * @param outcome the result of the check
+         */
+        public void record(final Outcome outcome) {
+            CHECKS.record(System.nanoTime() - start);
+            for (int i = 0; i < STAGES.length; i++) {
+                if (nanos != null ? runs[i] > 0 : sharedRuns.get(i) > 0) {
+                    STAGES[i].record(nanos != null ? nanos[i] : sharedNanos.get(i));
+                }
+            }
+            OUTCOMES[outcome.ordinal()].increment();
+            busy = false;
+        }
+    }
+
+    /**
+     * record the number of points of user's graph in a check.
+     * @param points the number of points
+     */
+    public static void recordPoints(final long points) {
+        POINTS.record(points);
+    }
+
+    /**
+     * count cells of DTW matrices computed.
+     * @param cells number of cells, each computed for both directions of user's section
+     */
+    public static void addDtwCells(final long cells) {
+        DTW_CELLS.add(cells);
+    }
+
+    /**
+     * @param outcome a result of checks
+     * @return number of checks with that result
+     */
+    public static long getOutcomes(final Outcome outcome) {
+        return OUTCOMES[outcome.ordinal()].sum();
+    }
+
+    /**
+     * @return number of cells of DTW matrices computed
+     */
+    public static long getDtwCells() {
+        return DTW_CELLS.sum();
+    }
+
+    /**
+     * @return histogram of the time of whole checks, in nanoseconds
+     */
+    public static Histogram getChecks() {
+        return CHECKS;
+    }
+
+    /**
+     * @param stage a stage of checks
+     * @return histogram of the time of the stage per check, in nanoseconds
+     */
+    public static Histogram getStage(final Stage stage) {
+        return STAGES[stage.ordinal()];
+    }
+
+    /**
+     * write every metric in Prometheus text format.
+     * @param out where to write to
+     */
+    public static void writePrometheus(final StringBuilder out) {
+        header(out, "graph_checker_check_seconds", "histogram", "Time of a whole check.");
+        CHECKS.writePrometheus(out, "graph_checker_check_seconds", "", 1 / NANOS_PER_SECOND);
+
+        header(out, "graph_checker_stage_seconds", "histogram", "Time of each stage of a check, summed over colors "
+                + "and curves.");
+        for (Stage stage : Stage.values()) {
+            STAGES[stage.ordinal()].writePrometheus(out, "graph_checker_stage_seconds",
+                    "stage=\"" + label(stage) + "\",", 1 / NANOS_PER_SECOND);
+        }
+
+        header(out, "graph_checker_outcomes_total", "counter", "Checks by result.");
+        for (Outcome outcome : Outcome.values()) {
+            out.append("graph_checker_outcomes_total{outcome=\"").append(label(outcome)).append("\"} ")
+                    .append(getOutcomes(outcome)).append('\n');
+        }
+
+        header(out, "graph_checker_points", "histogram", "Points of user's graph per check.");
+        POINTS.writePrometheus(out, "graph_checker_points", "", 1);
+
+        header(out, "graph_checker_dtw_cells_total", "counter", "Cells of DTW matrices computed.");
+        out.append("graph_checker_dtw_cells_total ").append(getDtwCells()).append('\n');
+    }
+
+    /**
+     * write the HELP and TYPE lines of a metric.
+     * @param out where to write to
+     * @param name name of the metric
+     * @param type type of the metric
+     * @param help description of the metric
+     */
+    static void header(final StringBuilder out, final String name, final String type, final String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * @param value a constant of an enum
+     * @return the constant as the value of a label
+     */
+    private static String label(final Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,123 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+
+/**
+ * A HttpServlet that answers GET requests with url '/metrics' with the Metrics of checks, the DTW kernel in use, and
+ * the state of the GradingQueue and VerdictCache that CheckerServlet publishes, in Prometheus text format.
+ */
+public class MetricsServlet extends HttpServlet {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * handles GET request with url '/metrics'.
+     * @param request A HttpServletRequest
+     * @param response A HttpServletResponse
+     * @throws ServletException thrown when some servlet related exceptions occur
+     * @throws IOException thrown when the response cannot be written
+     */
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        StringBuilder out = new StringBuilder();
+        Metrics.writePrometheus(out);
+        writeDtwKernel(out, Dtw.kernelName(Dtw.getKernel()));
+
+        ServletContext context = getServletContext();
+        Object grading = context.getAttribute(GradingQueue.class.getName());
+        if (grading instanceof GradingQueue) {
+            writeGradingQueue(out, (GradingQueue) grading);
+        }
+        Object verdicts = context.getAttribute(VerdictCache.class.getName());
+        if (verdicts instanceof VerdictCache) {
+            writeVerdictCache(out, (VerdictCache) verdicts);
+        }
+
+        response.setContentType(CONTENT_TYPE);
+        response.getWriter().print(out);
+    }
+
+    /**
+     * write which kernel computes DTW: 1 for the kernel in use and 0 for the other.
+     * @param out where to write to
+     * @param kernel Dtw.VECTOR or Dtw.SCALAR
+     */
+    static void writeDtwKernel(final StringBuilder out, final String kernel) {
+        String name = "graph_checker_dtw_kernel";
+        Metrics.header(out, name, "gauge", "Kernel computing DTW, 1 for the one in use.");
+        for (String candidate : new String[] {Dtw.VECTOR, Dtw.SCALAR}) {
+            out.append(name).append("{kernel=\"").append(candidate).append("\"} ")
+                    .append(candidate.equals(kernel) ? 1 : 0).append('\n');
+        }
+    }
+
+    /**
+     * write the state of the queue of requests waiting to be graded.
+     * @param out where to write to
+     * @param queue the queue
+     */
+    static void writeGradingQueue(final StringBuilder out, final GradingQueue queue) {
+        write(out, "graph_checker_grading_queue_depth", "gauge", "Requests waiting for a grading thread.",
+                queue.getDepth());
+        write(out, "graph_checker_grading_queue_capacity", "gauge", "Requests that may wait for a grading thread.",
+                queue.getCapacity());
+        write(out, "graph_checker_grading_active", "gauge", "Requests being graded.", queue.getActive());
+        write(out, "graph_checker_grading_accepted_total", "counter", "Requests queued for grading.",
+                queue.getAccepted());
+        write(out, "graph_checker_grading_rejected_total", "counter", "Requests refused because the queue was full.",
+                queue.getRejected());
+    }
+
+    /**
+     * write the state of the cache of results.
+     * @param out where to write to
+     * @param cache the cache
+     */
+    static void writeVerdictCache(final StringBuilder out, final VerdictCache cache) {
+        write(out, "graph_checker_verdict_cache_hits_total", "counter", "Checks answered from the cache.",
+                cache.getHits());
+        write(out, "graph_checker_verdict_cache_misses_total", "counter", "Checks that had to be computed.",
+                cache.getMisses());
+        write(out, "graph_checker_verdict_cache_coalesced_total", "counter",
+                "Checks that waited for an identical check being computed.", cache.getCoalesced());
+        write(out, "graph_checker_verdict_cache_size", "gauge", "Results in the cache.", cache.size());
+    }
+
+    /**
+     * write a metric with a single value.
+     * @param out where to write to
+     * @param name name of the metric
+     * @param type type of the metric
+     * @param help description of the metric
+     * @param value value of the metric
+     */
+    private static void write(final StringBuilder out, final String name, final String type, final String help,
+                              final long value) {
+        Metrics.header(out, name, type, help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,223 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A list of checks whose result is the first failure in the order they were added, whether they run one after another
+ * or all at once in a ForkJoinPool. When run in parallel, a failing check cancels every check after it that has not
+ * started yet, and results of checks after it that are still running are ignored, so the failure reported is always
+ * the one running the checks in order would report.
+ *
+ * Checks may be marked cheap. The cheap checks are run first, in order, on the calling thread; the first of them that
+ * fails means no check after it needs to run, so only the other checks before it are run.
+ */
+final class OrderedChecks {
+
+    /**
+     * One check.
+     */
+    interface Check {
+        /**
+         * @return the cause of the failure, or null if the check passes
+         * @throws CheckerException thrown when the check cannot be done, which also counts as a failure
+         */
+        String run() throws CheckerException;
+    }
+
+    private final ArrayList<Check> checks = new ArrayList<>();
+    private final ArrayList<Boolean> cheap = new ArrayList<>();
+
+    /**
+     * add a check after all checks added so far.
+     * @param check the check
+     */
+    void add(final Check check) {
+        add(check, false);
+    }
+
+    /**
+     * add a check after all checks added so far.
+     * @param check the check
+     * @param isCheap whether the check is run before the checks that are not cheap
+     */
+    void add(final Check check, final boolean isCheap) {
+        checks.add(check);
+        cheap.add(isCheap);
+    }
+
+    /**
+     * @return number of checks added
+     */
+    int size() {
+        return checks.size();
+    }
+
+    /**
+     * run every check in order, stopping at the first failure.
+     * @return the cause of the first failure, or null if every check passes
+     * @throws CheckerException thrown by the first check that fails by throwing
+     */
+    String run() throws CheckerException {
+        Outcome first = runCheap();
+        for (int i = 0; i < first.index; i++) {
+            if (!cheap.get(i)) {
+                String cause = checks.get(i).run();
+                if (cause != null) {
+                    return cause;
+                }
+            }
+        }
+        return first.result();
+    }
+
+    /**
+     * run the cheap checks in order, stopping at the first failure.
+     * @return the first failure, with the index of its check, or a pass with the number of checks as index
+     */
+    private Outcome runCheap() {
+        for (int i = 0; i < checks.size(); i++) {
+            if (cheap.get(i)) {
+                Outcome outcome = Outcome.of(i, checks.get(i));
+                if (outcome.failed()) {
+                    return outcome;
+                }
+            }
+        }
+        return new Outcome(checks.size(), null, null);
+    }
+
+    /**
+     * run every check as a task of a ForkJoinPool.
+     * @param pool the pool
+     * @return the cause of the first failure in order, or null if every check passes
+     * @throws CheckerException thrown by the first check in order that fails, if it fails by throwing
+     */
+    String run(final ForkJoinPool pool) throws CheckerException {
+        Outcome first = runCheap();
+        AtomicInteger firstFailure = new AtomicInteger(first.index);
+        ArrayList<CheckTask> tasks = new ArrayList<>(first.index);
+        for (int i = 0; i < first.index; i++) {
+            tasks.add(cheap.get(i) ? null : new CheckTask(i, checks.get(i), tasks, firstFailure));
+        }
+        for (CheckTask task : tasks) {
+            if (task != null) {
+                pool.execute(task);
+            }
+        }
+
+        // checks after a failure may be cancelled, but joining stops at the first failure before reaching them
+        for (CheckTask task : tasks) {
+            if (task != null) {
+                Outcome outcome = task.join();
+                if (outcome.failed()) {
+                    return outcome.result();
+                }
+            }
+        }
+        return first.result();
+    }
+
+    /**
+     * The result of a check.
+     */
+    private static final class Outcome {
+        private static final Outcome PASSED = new Outcome(Integer.MAX_VALUE, null, null);
+
+        private final int index;
+        private final String cause;
+        private final CheckerException error;
+
+        private Outcome(final int index, final String cause, final CheckerException error) {
+            this.index = index;
+            this.cause = cause;
+            this.error = error;
+        }
+
+        /**
+         * @param index index of the check
+         * @param check the check
+         * @return the result of running the check
+         */
+        private static Outcome of(final int index, final Check check) {
+            try {
+                return new Outcome(index, check.run(), null);
+            } catch (CheckerException e) {
+                return new Outcome(index, null, e);
+            }
+        }
+
+        private boolean failed() {
+            return cause != null || error != null;
+        }
+
+        /**
+         * @return the cause of the failure, or null if the check passed
+         * @throws CheckerException the exception the check failed by, if it did
+         */
+        private String result() throws CheckerException {
+            if (error != null) {
+                throw error;
+            }
+            return cause;
+        }
+    }
+
+    /**
+     * A check run as a task, which cancels the checks after it when it fails.
+     */
+    private static final class CheckTask extends RecursiveTask<Outcome> {
+        private final int index;
+        private final Check check;
+        private final ArrayList<CheckTask> tasks;
+        private final AtomicInteger firstFailure;
+
+        private CheckTask(final int index, final Check check, final ArrayList<CheckTask> tasks,
+                          final AtomicInteger firstFailure) {
+            this.index = index;
+            this.check = check;
+            this.tasks = tasks;
+            this.firstFailure = firstFailure;
+        }
+
+        @Override
+        protected Outcome compute() {
+            if (index > firstFailure.get()) {
+                return Outcome.PASSED;
+            }
+
+            Outcome outcome = Outcome.of(index, check);
+
+            if (outcome.failed()) {
+                int first = firstFailure.get();
+                while (index < first && !firstFailure.compareAndSet(first, index)) {
+                    first = firstFailure.get();
+                }
+                for (int i = index + 1; i < tasks.size(); i++) {
+                    if (tasks.get(i) != null) {
+                        tasks.get(i).cancel(false);
+                    }
+                }
+            }
+            return outcome;
+        }
+    }
+}
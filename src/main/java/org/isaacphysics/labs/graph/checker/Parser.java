@@ -15,21 +15,54 @@ package org.isaacphysics.labs.graph.checker;
  * limitations under the License.
  */
 
-import org.json.simple.JSONArray;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 
 /**
  * parse JSON string, either input or output.
+ *
+ * Input graphs are decoded in one streaming pass: coordinates go straight from the token stream into primitive
+ * buffers, without building a JSON tree or boxing numbers on the way.
+ *
+ * Problems in the input are not reported as soon as they are met. Each object keeps the first problem of each of its
+ * fields, and reports them in a fixed order of fields, so the message does not depend on the order in which fields
+ * appear in the document. Malformed JSON anywhere in the document takes precedence over any such problem.
  */
 public final class Parser {
 
     static final double MAX_CANVAS_DIMENTION = 5000;
 
+    private static final String KEY_MISSING = "Invalid JSON: key information missing";
+    private static final String INCORRECT_FORMAT = "Invalid JSON: incorrect format";
+    private static final int INITIAL_PTS_CAPACITY = 256;
+
+    private static final String[] GRAPH_FIELDS = {"canvasWidth", "canvasHeight", "descriptor", "curves", "options"};
+    private static final boolean[] GRAPH_REQUIRED = {true, true, false, true, false};
+    private static final String[] CURVE_FIELDS = {"pts", "colorIdx", "minX", "minY", "maxX", "maxY",
+        "interX", "interY", "maxima", "minima"};
+    private static final boolean[] CURVE_REQUIRED = {true, true, true, true, true, true, true, true, true, true};
+    private static final String[] KNOT_FIELDS = {"x", "y", "symbol", "xSymbol", "ySymbol"};
+    private static final boolean[] KNOT_REQUIRED = {true, true, false, false, false};
+    private static final String[] SYMBOL_FIELDS = {"x", "y", "text"};
+    private static final boolean[] SYMBOL_REQUIRED = {true, true, true};
+    private static final String[] OPTIONS_FIELDS = {"warpingWindow", "coarseToFine", "pointReduction",
+        "rdpTolerance", "arcLengthPoints", "errorPrecedence"};
+    private static final boolean[] OPTIONS_REQUIRED = {false, false, false, false, false, false};
+
+    static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     /**
      * utility classes should not have a public or default constructor.
      */
@@ -37,158 +70,681 @@ public final class Parser {
         //
     }
 
+    /**
+     * Growable buffers for coordinates of points. One instance is reused for every curve of a graph.
+     */
+    private static final class Coordinates {
+        private double[] xs = new double[INITIAL_PTS_CAPACITY];
+        private double[] ys = new double[INITIAL_PTS_CAPACITY];
+        private int size;
+
+        private void add(final double x, final double y) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, 2 * size);
+                ys = Arrays.copyOf(ys, 2 * size);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+    }
+
 
     /**
-     * parse information of a symbol from corresponding JSON object.
-     * @param jsonSymbol the json object that contains information about the symbol
-     * @return an instance of Symbol
-     * @throws CheckerException thrown if label(field 'text') of the symbol is missing
+     * read a number that must be present.
+     * @param json parser positioned at the value
+     * @return the number
+     * @throws CheckerException thrown if the value is null or not a number
+     * @throws IOException thrown by the underlying parser
      */
-    private static Symbol parseJSONSymbol(final JSONObject jsonSymbol) throws CheckerException {
-        Double sx = ((Number) jsonSymbol.get("x")).doubleValue();
-        Double sy = ((Number) jsonSymbol.get("y")).doubleValue();
-        String text = (String) jsonSymbol.get("text");
-        if (text == null) {
-            throw new CheckerException("Invalid JSON: key information missing");
+    private static double readDouble(final JsonParser json) throws CheckerException, IOException {
+        JsonToken token = json.getCurrentToken();
+        if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_NUMBER_INT) {
+            return json.getDoubleValue();
+        } else if (token == JsonToken.VALUE_NULL) {
+            throw new CheckerException(KEY_MISSING);
         }
-        return new Symbol(sx, sy, text);
+        throw new CheckerException(INCORRECT_FORMAT);
     }
 
+    /**
+     * make sure the parser is at the start of an object that must be present.
+     * @param json parser positioned at the value
+     * @throws CheckerException thrown if the value is null or not an object
+     */
+    private static void expectObject(final JsonParser json) throws CheckerException {
+        JsonToken token = json.getCurrentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            throw new CheckerException(KEY_MISSING);
+        } else if (token != JsonToken.START_OBJECT) {
+            throw new CheckerException(INCORRECT_FORMAT);
+        }
+    }
 
     /**
-     * parse information of a set of knots from the corresponding JSON object.
-     * @param jsonKnots the JSON object that contains information of a set of knots
-     * @return an instance of Knot
-     * @throws CheckerException thrown if some information is missing in the JSON object.
+     * make sure the parser is at the start of an array that must be present.
+     * @param json parser positioned at the value
+     * @throws CheckerException thrown if the value is null or not an array
+     */
+    private static void expectArray(final JsonParser json) throws CheckerException {
+        JsonToken token = json.getCurrentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            throw new CheckerException(KEY_MISSING);
+        } else if (token != JsonToken.START_ARRAY) {
+            throw new CheckerException(INCORRECT_FORMAT);
+        }
+    }
+
+    /**
+     * find the position of a field name in the list of fields of an object.
+     * @param name the field name
+     * @param fields known fields of the object
+     * @return the index of the field, or -1 if the field is not known
+     */
+    private static int fieldIndex(final String name, final String[] fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * skip the rest of a field's value after a problem is found in it, so reading can carry on with the next field.
+     * @param json the parser
+     * @param context parsing context of the object the field belongs to
+     * @param problem the problem found in the value
+     * @return problem
+     * @throws IOException thrown by the underlying parser
      */
-    private static Knot[] parseJSONKnots(final JSONArray jsonKnots) throws CheckerException {
+    private static CheckerException skipValue(final JsonParser json, final JsonStreamContext context,
+                                              final CheckerException problem) throws IOException {
+        while (json.getParsingContext() != context) {
+            json.nextToken();
+        }
+        return problem;
+    }
 
-        Knot[] knots = new Knot[jsonKnots.size()];
-        for (int j = 0; j < jsonKnots.size(); j++) {
-            JSONObject jsonKnot = (JSONObject) jsonKnots.get(j);
+    /**
+     * throw the first problem in the fields of an object.
+     * @param problems problems of each field in the order they are reported, null for fields without problem
+     * @param seen whether each field appears in the object
+     * @param required whether each field must appear in the object
+     * @throws CheckerException the first problem, if there is one
+     */
+    private static void checkFields(final CheckerException[] problems, final boolean[] seen,
+                                    final boolean[] required) throws CheckerException {
+        for (int i = 0; i < problems.length; i++) {
+            if (problems[i] != null) {
+                throw problems[i];
+            }
+            if (required[i] && !seen[i]) {
+                throw new CheckerException(KEY_MISSING);
+            }
+        }
+    }
 
-            Double x = ((Number) jsonKnot.get("x")).doubleValue();
-            Double y = ((Number) jsonKnot.get("y")).doubleValue();
 
-            Symbol symbol = null;
-            if (jsonKnot.get("symbol") != null) {
-                JSONObject jsonSymbol = (JSONObject) jsonKnot.get("symbol");
-                symbol = parseJSONSymbol(jsonSymbol);
+    /**
+     * parse information of a symbol.
+     * @param json parser positioned at the start of the symbol object
+     * @return an instance of Symbol
+     * @throws CheckerException thrown if label(field 'text') or position of the symbol is missing
+     * @throws IOException thrown by the underlying parser
+     */
+    private static Symbol parseSymbol(final JsonParser json) throws CheckerException, IOException {
+        expectObject(json);
+
+        double sx = 0;
+        double sy = 0;
+        String text = null;
+        CheckerException[] problems = new CheckerException[SYMBOL_FIELDS.length];
+        boolean[] seen = new boolean[SYMBOL_FIELDS.length];
+
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            int field = fieldIndex(json.getCurrentName(), SYMBOL_FIELDS);
+            JsonStreamContext context = json.getParsingContext();
+            JsonToken token = json.nextToken();
+            if (field < 0) {
+                json.skipChildren();
+                continue;
             }
 
-            Symbol xSymbol = null;
-            if (jsonKnot.get("xSymbol") != null) {
-                JSONObject jsonSymbol = (JSONObject) jsonKnot.get("xSymbol");
-                xSymbol = parseJSONSymbol(jsonSymbol);
+            seen[field] = true;
+            problems[field] = null;
+            try {
+                switch (field) {
+                    case 0:
+                        sx = readDouble(json);
+                        break;
+                    case 1:
+                        sy = readDouble(json);
+                        break;
+                    default:
+                        if (token == JsonToken.VALUE_STRING) {
+                            text = json.getText();
+                        } else if (token == JsonToken.VALUE_NULL) {
+                            throw new CheckerException(KEY_MISSING);
+                        } else {
+                            throw new CheckerException(INCORRECT_FORMAT);
+                        }
+                        break;
+                }
+            } catch (CheckerException e) {
+                problems[field] = skipValue(json, context, e);
             }
+        }
+
+        checkFields(problems, seen, SYMBOL_REQUIRED);
+        return new Symbol(sx, sy, text);
+    }
+
 
-            Symbol ySymbol = null;
-            if (jsonKnot.get("ySymbol") != null) {
-                JSONObject jsonSymbol = (JSONObject) jsonKnot.get("ySymbol");
-                ySymbol = parseJSONSymbol(jsonSymbol);
+    /**
+     * parse information of an optional symbol of a knot.
+     * @param json parser positioned at the value
+     * @return an instance of Symbol, or null if the value is null
+     * @throws CheckerException thrown if some information is missing in the symbol
+     * @throws IOException thrown by the underlying parser
+     */
+    private static Symbol parseOptionalSymbol(final JsonParser json) throws CheckerException, IOException {
+        if (json.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return parseSymbol(json);
+    }
+
+
+    /**
+     * parse information of a knot.
+     * @param json parser positioned at the start of the knot object
+     * @return an instance of Knot
+     * @throws CheckerException thrown if some information is missing in the JSON object.
+     * @throws IOException thrown by the underlying parser
+     */
+    private static Knot parseKnot(final JsonParser json) throws CheckerException, IOException {
+        expectObject(json);
+
+        double x = 0;
+        double y = 0;
+        Symbol[] symbols = new Symbol[3];
+        CheckerException[] problems = new CheckerException[KNOT_FIELDS.length];
+        boolean[] seen = new boolean[KNOT_FIELDS.length];
+
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            int field = fieldIndex(json.getCurrentName(), KNOT_FIELDS);
+            JsonStreamContext context = json.getParsingContext();
+            json.nextToken();
+            if (field < 0) {
+                json.skipChildren();
+                continue;
             }
 
-            Knot knot = new Knot(x, y, symbol, xSymbol, ySymbol);
-            knots[j] = knot;
+            seen[field] = true;
+            problems[field] = null;
+            try {
+                switch (field) {
+                    case 0:
+                        x = readDouble(json);
+                        break;
+                    case 1:
+                        y = readDouble(json);
+                        break;
+                    default:
+                        symbols[field - 2] = parseOptionalSymbol(json);
+                        break;
+                }
+            } catch (CheckerException e) {
+                problems[field] = skipValue(json, context, e);
+            }
         }
 
-        return knots;
+        checkFields(problems, seen, KNOT_REQUIRED);
+        return new Knot(x, y, symbols[0], symbols[1], symbols[2]);
     }
 
+
     /**
-     * parse the input JSON string into a HashMap of reasonable classes.
-     *
-     * @param jsonString the input json string
-     * @return a hash map contains exactly the same information as in the JSON string
-     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
-     *      in the correct format. Also, it will be thrown if the information in JSON string is not valid.
-     * @throws ParseException if the JSON string can not be parsed by json.simple.JSONParser
+     * parse information of a set of knots.
+     * @param json parser positioned at the start of the array of knots
+     * @return the knots
+     * @throws CheckerException thrown if some information is missing in the JSON object.
+     * @throws IOException thrown by the underlying parser
      */
-    public static HashMap<String, Object> parseInputJSONString(final String jsonString)
-                                                    throws CheckerException, ParseException {
-        JSONParser parser = new JSONParser();
+    private static Knot[] parseKnots(final JsonParser json) throws CheckerException, IOException {
+        expectArray(json);
 
-        try {
-            Object obj = parser.parse(jsonString);
-            JSONObject jsonData = (JSONObject) obj;
+        ArrayList<Knot> knots = new ArrayList<>();
+        while (json.nextToken() != JsonToken.END_ARRAY) {
+            knots.add(parseKnot(json));
+        }
+        return knots.toArray(new Knot[knots.size()]);
+    }
 
-            HashMap<String, Object> data = new HashMap<String, Object>();
 
-            double canvasWidth = ((Number) jsonData.get("canvasWidth")).doubleValue();
-            if (canvasWidth < 0 || canvasWidth > MAX_CANVAS_DIMENTION) {
-                throw new CheckerException("Invalid canvasWidth");
+    /**
+     * parse the points of a curve into coordinate buffers.
+     * @param json parser positioned at the start of the array of points
+     * @param coordinates buffers the coordinates are written to, they are cleared first
+     * @throws CheckerException thrown if a point is missing or has a missing coordinate
+     * @throws IOException thrown by the underlying parser
+     */
+    private static void parsePts(final JsonParser json, final Coordinates coordinates)
+                                                    throws CheckerException, IOException {
+        expectArray(json);
+
+        coordinates.size = 0;
+        while (json.nextToken() != JsonToken.END_ARRAY) {
+            expectObject(json);
+
+            double x = 0;
+            double y = 0;
+            boolean hasX = false;
+            boolean hasY = false;
+            CheckerException problemX = null;
+            CheckerException problemY = null;
+
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                String name = json.getCurrentName();
+                JsonStreamContext context = json.getParsingContext();
+                json.nextToken();
+                if ("x".equals(name)) {
+                    hasX = true;
+                    problemX = null;
+                    try {
+                        x = readDouble(json);
+                    } catch (CheckerException e) {
+                        problemX = skipValue(json, context, e);
+                    }
+                } else if ("y".equals(name)) {
+                    hasY = true;
+                    problemY = null;
+                    try {
+                        y = readDouble(json);
+                    } catch (CheckerException e) {
+                        problemY = skipValue(json, context, e);
+                    }
+                } else {
+                    json.skipChildren();
+                }
             }
-            data.put("canvasWidth", canvasWidth);
 
-            double canvasHeight = ((Number) jsonData.get("canvasHeight")).doubleValue();
-            if (canvasHeight < 0 || canvasHeight > MAX_CANVAS_DIMENTION) {
-                throw new CheckerException("Invalid canvasHeight");
+            if (problemX != null) {
+                throw problemX;
+            } else if (!hasX) {
+                throw new CheckerException(KEY_MISSING);
+            } else if (problemY != null) {
+                throw problemY;
+            } else if (!hasY) {
+                throw new CheckerException(KEY_MISSING);
+            }
+            coordinates.add(x, y);
+        }
+    }
+
+
+    /**
+     * parse one curve.
+     * @param json parser positioned at the start of the curve object
+     * @param coordinates buffers reused for the points of the curve
+     * @return the curve
+     * @throws CheckerException thrown if some information is missing in the curve, or is in the wrong format
+     * @throws IOException thrown by the underlying parser
+     */
+    private static Curve parseCurve(final JsonParser json, final Coordinates coordinates)
+                                                    throws CheckerException, IOException {
+        expectObject(json);
+
+        Curve curve = new Curve();
+        CheckerException[] problems = new CheckerException[CURVE_FIELDS.length];
+        boolean[] seen = new boolean[CURVE_FIELDS.length];
+
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            int field = fieldIndex(json.getCurrentName(), CURVE_FIELDS);
+            JsonStreamContext context = json.getParsingContext();
+            JsonToken token = json.nextToken();
+            if (field < 0) {
+                json.skipChildren();
+                continue;
             }
-            data.put("canvasHeight", canvasHeight);
 
-            String descriptor = "";
-            if (jsonData.get("descriptor") != null) {
-                descriptor = (String) (jsonData.get("descriptor"));
+            seen[field] = true;
+            problems[field] = null;
+            try {
+                switch (field) {
+                    case 0:
+                        parsePts(json, coordinates);
+                        curve.setPts(Arrays.copyOf(coordinates.xs, coordinates.size),
+                                Arrays.copyOf(coordinates.ys, coordinates.size));
+                        break;
+                    case 1:
+                        if (token == JsonToken.VALUE_NUMBER_INT) {
+                            curve.setColorIdx((int) json.getLongValue());
+                        } else {
+                            curve.setColorIdx((int) readDouble(json));
+                        }
+                        break;
+                    case 2:
+                        curve.setMinX(readDouble(json));
+                        break;
+                    case 3:
+                        curve.setMinY(readDouble(json));
+                        break;
+                    case 4:
+                        curve.setMaxX(readDouble(json));
+                        break;
+                    case 5:
+                        curve.setMaxY(readDouble(json));
+                        break;
+                    case 6:
+                        curve.setInterX(parseKnots(json));
+                        break;
+                    case 7:
+                        curve.setInterY(parseKnots(json));
+                        break;
+                    case 8:
+                        curve.setMaxima(parseKnots(json));
+                        break;
+                    default:
+                        curve.setMinima(parseKnots(json));
+                        break;
+                }
+            } catch (CheckerException e) {
+                problems[field] = skipValue(json, context, e);
             }
-            data.put("descriptor", descriptor);
+        }
 
+        checkFields(problems, seen, CURVE_REQUIRED);
+        return curve;
+    }
 
-            JSONArray jsonCurves = (JSONArray) jsonData.get("curves");
-            Curve[] curves = new Curve[jsonCurves.size()];
-            for (int i = 0; i < jsonCurves.size(); i++) {
-                JSONObject jsonCurve = (JSONObject) jsonCurves.get(i);
-                Curve curve = new Curve();
 
-                JSONArray jsonPts = (JSONArray) jsonCurve.get("pts");
-                Point[] pts = new Point[jsonPts.size()];
-                for (int j = 0; j < jsonPts.size(); j++) {
-                    JSONObject jsonPoint = (JSONObject) jsonPts.get(j);
-                    Double x = ((Number) jsonPoint.get("x")).doubleValue();
-                    Double y = ((Number) jsonPoint.get("y")).doubleValue();
-                    pts[j] = new Point(x, y);
+    /**
+     * parse the options of a question. Every option may be left out, in which case its default is used.
+     * @param json parser positioned at the value
+     * @return the options, all default if the value is null
+     * @throws CheckerException thrown if an option is not valid
+     * @throws IOException thrown by the underlying parser
+     */
+    private static CheckerOptions parseOptions(final JsonParser json) throws CheckerException, IOException {
+        CheckerOptions options = new CheckerOptions();
+        if (json.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return options;
+        }
+        expectObject(json);
+
+        CheckerException[] problems = new CheckerException[OPTIONS_FIELDS.length];
+        boolean[] seen = new boolean[OPTIONS_FIELDS.length];
+
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            int field = fieldIndex(json.getCurrentName(), OPTIONS_FIELDS);
+            JsonStreamContext context = json.getParsingContext();
+            JsonToken token = json.nextToken();
+            if (field < 0) {
+                json.skipChildren();
+                continue;
+            }
+
+            seen[field] = true;
+            problems[field] = null;
+            try {
+                switch (field) {
+                    case 0:
+                        options.setWarpingWindow(readDouble(json));
+                        if (!(options.getWarpingWindow() >= 0 && options.getWarpingWindow() <= 100)) {
+                            throw new CheckerException("Invalid warpingWindow");
+                        }
+                        break;
+                    case 1:
+                        if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
+                            options.setCoarseToFine(json.getBooleanValue());
+                        } else if (token == JsonToken.VALUE_NULL) {
+                            throw new CheckerException(KEY_MISSING);
+                        } else {
+                            throw new CheckerException(INCORRECT_FORMAT);
+                        }
+                        break;
+                    case 2:
+                        if (token == JsonToken.VALUE_STRING) {
+                            options.setPointReduction(json.getText());
+                        } else if (token == JsonToken.VALUE_NULL) {
+                            throw new CheckerException(KEY_MISSING);
+                        } else {
+                            throw new CheckerException(INCORRECT_FORMAT);
+                        }
+                        if (!PointReduction.isMethod(options.getPointReduction())) {
+                            throw new CheckerException("Invalid pointReduction");
+                        }
+                        break;
+                    case 3:
+                        options.setRdpTolerance(readDouble(json));
+                        if (!(options.getRdpTolerance() >= 0)) {
+                            throw new CheckerException("Invalid rdpTolerance");
+                        }
+                        break;
+                    case 4:
+                        double points = readDouble(json);
+                        if (!(points >= 2 && points <= Integer.MAX_VALUE) || points != Math.floor(points)) {
+                            throw new CheckerException("Invalid arcLengthPoints");
+                        }
+                        options.setArcLengthPoints((int) points);
+                        break;
+                    default:
+                        if (token == JsonToken.VALUE_STRING) {
+                            options.setErrorPrecedence(json.getText());
+                        } else if (token == JsonToken.VALUE_NULL) {
+                            throw new CheckerException(KEY_MISSING);
+                        } else {
+                            throw new CheckerException(INCORRECT_FORMAT);
+                        }
+                        if (!Checker.isPrecedence(options.getErrorPrecedence())) {
+                            throw new CheckerException("Invalid errorPrecedence");
+                        }
+                        break;
                 }
-                curve.setPts(pts);
+            } catch (CheckerException e) {
+                problems[field] = skipValue(json, context, e);
+            }
+        }
 
-                int colorIdx = ((Number) jsonCurve.get("colorIdx")).intValue();
-                curve.setColorIdx(colorIdx);
+        checkFields(problems, seen, OPTIONS_REQUIRED);
+        return options;
+    }
 
-                Double minX = ((Number) jsonCurve.get("minX")).doubleValue();
-                curve.setMinX(minX);
 
-                Double minY = ((Number) jsonCurve.get("minY")).doubleValue();
-                curve.setMinY(minY);
+    /**
+     * parse a graph whose opening token the parser is positioned at. The parser is left at the closing token of the
+     * graph, so graphs embedded in larger documents can be read as well.
+     *
+     * @param json parser positioned at the start of the graph object
+     * @return the graph
+     * @throws CheckerException it is thrown when information are missing in the JSON, or the JSON is not in the
+     *      correct format. Also, it will be thrown if the information in JSON is not valid.
+     * @throws IOException thrown by the underlying parser, including JsonParseException for malformed JSON
+     */
+    static Graph parseGraph(final JsonParser json) throws CheckerException, IOException {
+        expectObject(json);
+
+        Graph graph = new Graph();
+        Coordinates coordinates = new Coordinates();
+        CheckerException[] problems = new CheckerException[GRAPH_FIELDS.length];
+        boolean[] seen = new boolean[GRAPH_FIELDS.length];
+
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            int field = fieldIndex(json.getCurrentName(), GRAPH_FIELDS);
+            JsonStreamContext context = json.getParsingContext();
+            JsonToken token = json.nextToken();
+            if (field < 0) {
+                json.skipChildren();
+                continue;
+            }
 
-                Double maxX = ((Number) jsonCurve.get("maxX")).doubleValue();
-                curve.setMaxX(maxX);
+            seen[field] = true;
+            problems[field] = null;
+            try {
+                switch (field) {
+                    case 0:
+                        graph.setCanvasWidth(readDouble(json));
+                        if (graph.getCanvasWidth() < 0 || graph.getCanvasWidth() > MAX_CANVAS_DIMENTION) {
+                            throw new CheckerException("Invalid canvasWidth");
+                        }
+                        break;
+                    case 1:
+                        graph.setCanvasHeight(readDouble(json));
+                        if (graph.getCanvasHeight() < 0 || graph.getCanvasHeight() > MAX_CANVAS_DIMENTION) {
+                            throw new CheckerException("Invalid canvasHeight");
+                        }
+                        break;
+                    case 2:
+                        if (token == JsonToken.VALUE_STRING) {
+                            graph.setDescriptor(json.getText());
+                        } else if (token == JsonToken.VALUE_NULL) {
+                            graph.setDescriptor("");
+                        } else {
+                            throw new CheckerException(INCORRECT_FORMAT);
+                        }
+                        break;
+                    case 3:
+                        expectArray(json);
+                        ArrayList<Curve> curves = new ArrayList<>();
+                        while (json.nextToken() != JsonToken.END_ARRAY) {
+                            curves.add(parseCurve(json, coordinates));
+                        }
+                        graph.setCurves(curves.toArray(new Curve[curves.size()]));
+                        break;
+                    default:
+                        graph.setOptions(parseOptions(json));
+                        break;
+                }
+            } catch (CheckerException e) {
+                problems[field] = skipValue(json, context, e);
+            }
+        }
 
-                Double maxY = ((Number) jsonCurve.get("maxY")).doubleValue();
-                curve.setMaxY(maxY);
+        checkFields(problems, seen, GRAPH_REQUIRED);
+        return graph;
+    }
 
-                Knot[] interX = parseJSONKnots((JSONArray) jsonCurve.get("interX"));
-                curve.setInterX(interX);
 
-                Knot[] interY = parseJSONKnots((JSONArray) jsonCurve.get("interY"));
-                curve.setInterY(interY);
+    /**
+     * parse the input JSON string into a Graph.
+     *
+     * @param jsonString the input json string
+     * @return the graph described by the JSON string
+     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
+     *      in the correct format. Also, it will be thrown if the information in JSON string is not valid.
+     * @throws ParseException if the JSON string is not well-formed JSON
+     */
+    public static Graph parseGraph(final String jsonString) throws CheckerException, ParseException {
+        try (JsonParser json = JSON_FACTORY.createParser(jsonString)) {
+            return parseDocument(json);
+        } catch (JsonParseException e) {
+            throw toParseException(e);
+        } catch (IOException e) {
+            // reading from a String does not do any I/O
+            throw new IllegalStateException(e);
+        }
+    }
 
-                Knot[] maxima = parseJSONKnots((JSONArray) jsonCurve.get("maxima"));
-                curve.setMaxima(maxima);
 
-                Knot[] minima = parseJSONKnots((JSONArray) jsonCurve.get("minima"));
-                curve.setMinima(minima);
+    /**
+     * parse a JSON document in UTF-8 into a Graph.
+     *
+     * @param json the bytes of the document
+     * @return the graph described by the document
+     * @throws CheckerException it is thrown when information are missing in the document, or the document is not
+     *      in the correct format. Also, it will be thrown if the information in the document is not valid.
+     * @throws ParseException if the document is not well-formed JSON
+     */
+    public static Graph parseGraph(final byte[] json) throws CheckerException, ParseException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return parseDocument(parser);
+        } catch (JsonParseException e) {
+            throw toParseException(e);
+        } catch (IOException e) {
+            // reading from a byte array does not do any I/O, so the bytes are not valid UTF-8
+            throw new ParseException(0, ParseException.ERROR_UNEXPECTED_EXCEPTION, e.getMessage());
+        }
+    }
 
-                curves[i] = curve;
-            }
-            data.put("curves", curves);
 
-            return data;
+    /**
+     * parse a whole document that contains exactly one graph.
+     * @param json parser positioned before the first token of the document
+     * @return the graph
+     * @throws CheckerException thrown when the graph is not valid and the document is well-formed JSON
+     * @throws ParseException thrown when the document is empty or has content after the graph
+     * @throws IOException thrown by the underlying parser, including JsonParseException for malformed JSON
+     */
+    static Graph parseDocument(final JsonParser json) throws CheckerException, ParseException, IOException {
+        if (json.nextToken() == null) {
+            throw new ParseException(0, ParseException.ERROR_UNEXPECTED_TOKEN, null);
+        }
+
+        Graph graph;
+        try {
+            graph = parseGraph(json);
+        } catch (CheckerException e) {
+            // malformed JSON takes precedence over missing information
+            json.skipChildren();
+            expectEndOfDocument(json);
+            throw e;
+        }
+        expectEndOfDocument(json);
+        return graph;
+    }
+
 
-        } catch (NullPointerException npExn) {
-            npExn.printStackTrace();
-            throw new CheckerException("Invalid JSON: key information missing");
-        } catch (ClassCastException e) {
-            e.printStackTrace();
-            throw new CheckerException("Invalid JSON: incorrect format");
+    /**
+     * make sure nothing follows the value just read.
+     * @param json parser positioned at the last token of a top-level value, or inside it
+     * @throws ParseException thrown when there is another value after the top-level value
+     * @throws IOException thrown by the underlying parser, including JsonParseException for malformed JSON
+     */
+    private static void expectEndOfDocument(final JsonParser json) throws ParseException, IOException {
+        while (!json.getParsingContext().inRoot()) {
+            json.nextToken();
         }
+        if (json.nextToken() != null) {
+            throw new ParseException((int) json.getTokenLocation().getCharOffset(),
+                    ParseException.ERROR_UNEXPECTED_TOKEN, json.getText());
+        }
+    }
+
+    /**
+     * report malformed JSON in the same way as json.simple does.
+     * @param e the exception thrown by Jackson
+     * @return an equivalent json.simple ParseException
+     */
+    static ParseException toParseException(final JsonParseException e) {
+        int position = 0;
+        if (e.getLocation() != null) {
+            position = (int) e.getLocation().getCharOffset();
+        }
+        return new ParseException(position, ParseException.ERROR_UNEXPECTED_TOKEN, e.getOriginalMessage());
+    }
+
+
+    /**
+     * parse the input JSON string into a HashMap of reasonable classes.
+     *
+     * @param jsonString the input json string
+     * @return a hash map contains exactly the same information as in the JSON string
+     * @throws CheckerException it is thrown when information are missing in the JSON String, or the JSON string is not
+     *      in the correct format. Also, it will be thrown if the information in JSON string is not valid.
+     * @throws ParseException if the JSON string is not well-formed JSON
+     */
+    public static HashMap<String, Object> parseInputJSONString(final String jsonString)
+                                                    throws CheckerException, ParseException {
+        Graph graph = parseGraph(jsonString);
+
+        HashMap<String, Object> data = new HashMap<String, Object>();
+        data.put("canvasWidth", graph.getCanvasWidth());
+        data.put("canvasHeight", graph.getCanvasHeight());
+        data.put("descriptor", graph.getDescriptor());
+        data.put("curves", graph.getCurves());
+        return data;
     }
 
     /**
@@ -1,94 +0,0 @@
-package org.isaacphysics.labs.graph.checker;
-
-import java.lang.reflect.Array;
-import java.util.ArrayList;
-import java.util.Collections;
-
-public class Permutations {
-
-    public static ArrayList<ArrayList<Integer>> permute(int[] num) {
-        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
-
-        //start from an empty list
-        result.add(new ArrayList<Integer>());
-
-        for (int i = 0; i < num.length; i++) {
-            //list of list in current iteration of the array num
-            ArrayList<ArrayList<Integer>> current = new ArrayList<ArrayList<Integer>>();
-
-            for (ArrayList<Integer> l : result) {
-                // # of locations to insert is largest index + 1
-                for (int j = 0; j < l.size()+1; j++) {
-                    // + add num[i] to different locations
-                    l.add(j, num[i]);
-
-                    ArrayList<Integer> temp = new ArrayList<Integer>(l);
-                    current.add(temp);
-
-                    //System.out.println(temp);
-
-                    // - remove num[i] add
-                    l.remove(j);
-                }
-            }
-
-            result = new ArrayList<ArrayList<Integer>>(current);
-        }
-
-        Collections.reverse(result);
-
-        return result;
-    }
-
-    public static ArrayList<ArrayList<Integer>> permute(int n) {
-
-        int[] num = new int[n];
-        for (int i = 0; i < n; i++) {
-            num[i] = i;
-        }
-
-        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
-
-        //start from an empty list
-        result.add(new ArrayList<Integer>());
-
-        for (int i = 0; i < num.length; i++) {
-            //list of list in current iteration of the array num
-            ArrayList<ArrayList<Integer>> current = new ArrayList<ArrayList<Integer>>();
-
-            for (ArrayList<Integer> l : result) {
-                // # of locations to insert is largest index + 1
-                for (int j = 0; j < l.size()+1; j++) {
-                    // + add num[i] to different locations
-                    l.add(j, num[i]);
-
-                    ArrayList<Integer> temp = new ArrayList<Integer>(l);
-                    current.add(temp);
-
-                    //System.out.println(temp);
-
-                    // - remove num[i] add
-                    l.remove(j);
-                }
-            }
-
-            result = new ArrayList<ArrayList<Integer>>(current);
-        }
-
-        Collections.reverse(result);
-
-        return result;
-    }
-
-    public static void main(String[] args) {
-        int init = 3;
-        ArrayList<ArrayList<Integer>> perms = permute(init);
-
-        for (ArrayList<Integer> arr : perms) {
-            for (int i : arr) {
-                System.out.print(i);
-            }
-            System.out.println();
-        }
-    }
-}
@@ -0,0 +1,246 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Reduces the number of points of curves before they are checked. The frontend sends every point sampled while the
+ * user draws, often with dense runs of nearly collinear points, and the cost of DTW grows with the square of the
+ * number of points.
+ *
+ * Points at the position of an intercept, maximum or minimum (see Curve.indexOf) are always kept, as splitCurve and
+ * the position tests look for them. Only the runs of points between two such points, or between one and an end of the
+ * curve, are reduced, by one of the methods:
+ * none: points are not reduced.
+ * rdp: "Ramer-Douglas-Peucker". A point is removed if it is closer to the simplified curve than a tolerance, given as
+ *      a fraction of the larger side of the curve's bounding box.
+ * arcLength: a run with more than a given number of points is resampled to that many points, evenly spaced along it.
+ */
+public final class PointReduction {
+
+    static final String NONE = "none";
+    static final String RDP = "rdp";
+    static final String ARC_LENGTH = "arcLength";
+
+    /**
+     * Utility class should not have public or default constructor.
+     */
+    private PointReduction() {
+        //
+    }
+
+    /**
+     * @param method name of a method
+     * @return true if the method is known
+     */
+    static boolean isMethod(final String method) {
+        return NONE.equals(method) || RDP.equals(method) || ARC_LENGTH.equals(method);
+    }
+
+    /**
+     * reduce the points of every curve, in place.
+     * @param curves the curves
+     * @param options options of the question, which choose the method
+     * @return the same curves
+     */
+    static Curve[] reduce(final Curve[] curves, final CheckerOptions options) {
+        if (NONE.equals(options.getPointReduction())) {
+            return curves;
+        }
+        for (Curve curve : curves) {
+            reduce(curve, options);
+        }
+        return curves;
+    }
+
+    /**
+     * reduce the points of a curve, in place.
+     * @param curve the curve
+     * @param options options of the question, which choose the method
+     */
+    static void reduce(final Curve curve, final CheckerOptions options) {
+        double[] xs = curve.getXs();
+        double[] ys = curve.getYs();
+        int n = xs.length;
+        if (NONE.equals(options.getPointReduction()) || n < 3) {
+            return;
+        }
+
+        boolean[] anchor = new boolean[n];
+        anchor[0] = true;
+        anchor[n - 1] = true;
+        markKnots(anchor, curve, curve.getInterX());
+        markKnots(anchor, curve, curve.getInterY());
+        markKnots(anchor, curve, curve.getMaxima());
+        markKnots(anchor, curve, curve.getMinima());
+
+        double[] outXs = new double[n];
+        double[] outYs = new double[n];
+        int size = 0;
+        double tolerance = options.getRdpTolerance()
+                * Math.max(curve.getMaxX() - curve.getMinX(), curve.getMaxY() - curve.getMinY());
+
+        int from = 0;
+        for (int to = 1; to < n; to++) {
+            if (!anchor[to]) {
+                continue;
+            }
+            outXs[size] = xs[from];
+            outYs[size] = ys[from];
+            size++;
+            if (RDP.equals(options.getPointReduction())) {
+                size = simplify(xs, ys, from, to, tolerance, outXs, outYs, size);
+            } else {
+                size = resample(xs, ys, from, to, options.getArcLengthPoints(), outXs, outYs, size);
+            }
+            from = to;
+        }
+        outXs[size] = xs[n - 1];
+        outYs[size] = ys[n - 1];
+        size++;
+
+        curve.setPts(Arrays.copyOf(outXs, size), Arrays.copyOf(outYs, size));
+    }
+
+    /**
+     * mark the point at the position of every knot.
+     * @param anchor marks of points to keep
+     * @param curve the curve
+     * @param knots the knots, may be null
+     */
+    private static void markKnots(final boolean[] anchor, final Curve curve, final Knot[] knots) {
+        if (knots == null) {
+            return;
+        }
+        for (int i : curve.indexOf(knots)) {
+            if (i >= 0) {
+                anchor[i] = true;
+            }
+        }
+    }
+
+    /**
+     * simplify the points strictly between two kept points with Ramer-Douglas-Peucker, appending the points to keep.
+     * @param xs x-coordinates of points
+     * @param ys y-coordinates of points
+     * @param from index of the first kept point
+     * @param to index of the last kept point
+     * @param tolerance largest distance from the simplified curve of a removed point
+     * @param outXs x-coordinates of kept points
+     * @param outYs y-coordinates of kept points
+     * @param size number of kept points so far
+     * @return number of kept points after this run
+     */
+    private static int simplify(final double[] xs, final double[] ys, final int from, final int to,
+                                final double tolerance, final double[] outXs, final double[] outYs, final int size) {
+        boolean[] keep = new boolean[to - from + 1];
+        int[] stack = new int[2 * (to - from + 1)];
+        int top = 0;
+        stack[top++] = from;
+        stack[top++] = to;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double dx = xs[last] - xs[first];
+            double dy = ys[last] - ys[first];
+            double length = Math.sqrt(dx * dx + dy * dy);
+
+            int farthest = -1;
+            double distance = tolerance;
+            for (int i = first + 1; i < last; i++) {
+                double d;
+                if (length == 0) {
+                    d = Math.hypot(xs[i] - xs[first], ys[i] - ys[first]);
+                } else {
+                    d = Math.abs(dy * (xs[i] - xs[first]) - dx * (ys[i] - ys[first])) / length;
+                }
+                if (d > distance) {
+                    distance = d;
+                    farthest = i;
+                }
+            }
+
+            if (farthest >= 0) {
+                keep[farthest - from] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        int count = size;
+        for (int i = from + 1; i < to; i++) {
+            if (keep[i - from]) {
+                outXs[count] = xs[i];
+                outYs[count] = ys[i];
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * resample the points strictly between two kept points evenly along their arc length, appending the new points.
+     * Runs that have no more than the given number of points are kept as they are.
+     * @param xs x-coordinates of points
+     * @param ys y-coordinates of points
+     * @param from index of the first kept point
+     * @param to index of the last kept point
+     * @param points largest number of points in the run, including both kept points
+     * @param outXs x-coordinates of kept points
+     * @param outYs y-coordinates of kept points
+     * @param size number of kept points so far
+     * @return number of kept points after this run
+     */
+    private static int resample(final double[] xs, final double[] ys, final int from, final int to, final int points,
+                                final double[] outXs, final double[] outYs, final int size) {
+        int count = size;
+        if (to - from + 1 <= points) {
+            for (int i = from + 1; i < to; i++) {
+                outXs[count] = xs[i];
+                outYs[count] = ys[i];
+                count++;
+            }
+            return count;
+        }
+
+        double total = 0;
+        for (int i = from + 1; i <= to; i++) {
+            total += Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]);
+        }
+
+        int i = from;
+        double walked = 0;
+        double segment = Math.hypot(xs[i + 1] - xs[i], ys[i + 1] - ys[i]);
+        for (int k = 1; k < points - 1; k++) {
+            double target = total * k / (points - 1);
+            while (walked + segment < target && i < to - 1) {
+                walked += segment;
+                i++;
+                segment = Math.hypot(xs[i + 1] - xs[i], ys[i + 1] - ys[i]);
+            }
+            double t = segment == 0 ? 0 : (target - walked) / segment;
+            outXs[count] = xs[i] + t * (xs[i + 1] - xs[i]);
+            outYs[count] = ys[i] + t * (ys[i + 1] - ys[i]);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,235 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The JSON body of a request to CheckerServlet, read in one streaming pass.
+ *
+ * In the legacy envelope, "target" and "test" are JSON strings that contain the graphs. In the v2 envelope they are
+ * the graph objects themselves, and are parsed straight into Graph as the body is read. The content hash of each graph
+ * is taken over its bytes in the body, so it is found without writing the graph out again. Either envelope may have a
+ * "description" string; other fields are ignored.
+ *
+ * Instead of "target", a request may name a "questionId", whose answer is in the AnswerRegistry of the server. The
+ * "test" of such a request may be either a string or an object.
+ */
+final class RequestEnvelope {
+
+    private static final String INVALID = "Invalid request: target and test must both be strings or both be objects";
+
+    private final byte[] body;
+    private String description;
+    private String questionId;
+    private String targetJSONString;
+    private String testJSONString;
+    private Graph target;
+    private Graph test;
+    private int targetStart;
+    private int targetEnd;
+    private int testStart;
+    private int testEnd;
+
+    /**
+     * constructor for RequestEnvelope.
+     * @param body the body of the request
+     */
+    private RequestEnvelope(final byte[] body) {
+        this.body = body;
+    }
+
+    /**
+     * read the body of a request.
+     *
+     * @param body the body of a POST request to '/test'
+     * @return the request
+     * @throws CheckerException thrown if the body is not an object, or a field of it has the wrong type, or a graph in
+     *      it is not valid
+     * @throws IOException thrown by the underlying parser, including JsonParseException for malformed JSON
+     */
+    static RequestEnvelope parse(final byte[] body) throws CheckerException, IOException {
+        RequestEnvelope request = new RequestEnvelope(body);
+        try (JsonParser json = Parser.JSON_FACTORY.createParser(body)) {
+            if (json.nextToken() != JsonToken.START_OBJECT) {
+                throw new CheckerException("Invalid request: not an object");
+            }
+
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                String name = json.getCurrentName();
+                JsonToken token = json.nextToken();
+                switch (name) {
+                    case "description":
+                        request.description = token == JsonToken.VALUE_STRING ? json.getText() : null;
+                        json.skipChildren();
+                        break;
+                    case "questionId":
+                        if (token != JsonToken.VALUE_STRING && token != JsonToken.VALUE_NUMBER_INT) {
+                            throw new CheckerException("Invalid request: questionId must be a string");
+                        }
+                        request.questionId = json.getText();
+                        break;
+                    case "target":
+                        if (token == JsonToken.START_OBJECT) {
+                            request.targetStart = start(json);
+                            request.target = Parser.parseGraph(json);
+                            request.targetEnd = end(json);
+                        } else {
+                            request.targetJSONString = readString(json);
+                        }
+                        break;
+                    case "test":
+                        if (token == JsonToken.START_OBJECT) {
+                            request.testStart = start(json);
+                            request.test = Parser.parseGraph(json);
+                            request.testEnd = end(json);
+                        } else {
+                            request.testJSONString = readString(json);
+                        }
+                        break;
+                    default:
+                        json.skipChildren();
+                        break;
+                }
+            }
+        }
+
+        boolean hasStrings = request.targetJSONString != null || request.testJSONString != null;
+        boolean hasObjects = request.target != null || request.test != null;
+        if (hasStrings && hasObjects) {
+            throw new CheckerException(INVALID);
+        }
+        return request;
+    }
+
+    /**
+     * @param json parser positioned at the start of a graph object
+     * @return offset of the graph in the body
+     */
+    private static int start(final JsonParser json) {
+        // the location of a value token that follows a field name is not kept, but the parser has just read its '{'
+        return (int) json.getCurrentLocation().getByteOffset() - 1;
+    }
+
+    /**
+     * @param json parser positioned at the end of a graph object
+     * @return offset just after the graph in the body
+     */
+    private static int end(final JsonParser json) {
+        return (int) json.getCurrentLocation().getByteOffset();
+    }
+
+    /**
+     * @param json parser positioned at a graph given as a string
+     * @return the string
+     * @throws CheckerException thrown if the value is not a string
+     * @throws IOException thrown by the underlying parser
+     */
+    private static String readString(final JsonParser json) throws CheckerException, IOException {
+        if (json.getCurrentToken() != JsonToken.VALUE_STRING) {
+            throw new CheckerException(INVALID);
+        }
+        return json.getText();
+    }
+
+    /**
+     * @return whether the request has both the answer and user's graph
+     */
+    boolean isComplete() {
+        return (targetJSONString != null && testJSONString != null) || (target != null && test != null);
+    }
+
+    /**
+     * @return whether the request has user's graph
+     */
+    boolean hasTest() {
+        return testJSONString != null || test != null;
+    }
+
+    /**
+     * @return whether the graphs are given as JSON strings, in the legacy envelope
+     */
+    boolean isLegacy() {
+        return targetJSONString != null;
+    }
+
+    /**
+     * @return the description of the request, or null if it has none
+     */
+    String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return ID of the question whose answer user's graph is checked against, or null if the answer is in the request
+     */
+    String getQuestionId() {
+        return questionId;
+    }
+
+    /**
+     * @return the JSON string of the answer, as given or as it appears in the body
+     */
+    String getTargetJSONString() {
+        if (targetJSONString != null) {
+            return targetJSONString;
+        }
+        return new String(body, targetStart, targetEnd - targetStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the JSON string of user's graph, as given or as it appears in the body
+     */
+    String getTestJSONString() {
+        if (testJSONString != null) {
+            return testJSONString;
+        }
+        return new String(body, testStart, testEnd - testStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the answer, parsed from an object in the v2 envelope
+     */
+    Graph getTarget() {
+        return target;
+    }
+
+    /**
+     * @return user's graph, parsed from an object in the v2 envelope
+     */
+    Graph getTest() {
+        return test;
+    }
+
+    /**
+     * @return content hash of the answer's object in the v2 envelope
+     */
+    String getTargetHash() {
+        return ContentHash.of(body, targetStart, targetEnd - targetStart);
+    }
+
+    /**
+     * @return content hash of user's graph object in the v2 envelope
+     */
+    String getTestHash() {
+        return ContentHash.of(body, testStart, testEnd - testStart);
+    }
+}
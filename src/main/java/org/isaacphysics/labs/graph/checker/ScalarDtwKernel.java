@@ -0,0 +1,86 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * DTW kernel in plain Java. Only two rows of the dynamic programming matrix are kept for each direction, and both
+ * directions are computed in the same sweep over the trusted section, so memory is linear in the length of the user's
+ * section.
+ */
+final class ScalarDtwKernel implements DtwKernel {
+
+    @Override
+    public double error(final Section trusted, final Section untrusted, final double threshold) {
+        double[] tx = trusted.xs;
+        double[] ty = trusted.ys;
+        double[] ux = untrusted.xs;
+        double[] uy = untrusted.ys;
+        int n = trusted.length();
+        int m = untrusted.length();
+
+        Scratch scratch = Scratch.get();
+        double[] forward = scratch.row(0, m + 1);
+        double[] forwardPrev = scratch.row(1, m + 1);
+        double[] reverse = scratch.row(2, m + 1);
+        double[] reversePrev = scratch.row(3, m + 1);
+
+        forwardPrev[0] = 0;
+        reversePrev[0] = 0;
+        for (int j = 1; j <= m; j++) {
+            forwardPrev[j] = Dtw.BOUNDARY;
+            reversePrev[j] = Dtw.BOUNDARY;
+        }
+
+        for (int i = 1; i <= n; i++) {
+            double x = tx[i - 1];
+            double y = ty[i - 1];
+            forward[0] = Dtw.BOUNDARY;
+            reverse[0] = Dtw.BOUNDARY;
+            double rowMin = Dtw.BOUNDARY;
+
+            for (int j = 1; j <= m; j++) {
+                double dx = ux[j - 1] - x;
+                double dy = uy[j - 1] - y;
+                double cost = dx * dx + dy * dy;
+                forward[j] = cost + Math.min(Math.min(forwardPrev[j], forward[j - 1]), forwardPrev[j - 1]);
+
+                double rx = ux[m - j] - x;
+                double ry = uy[m - j] - y;
+                double reverseCost = rx * rx + ry * ry;
+                reverse[j] = reverseCost + Math.min(Math.min(reversePrev[j], reverse[j - 1]), reversePrev[j - 1]);
+
+                rowMin = Math.min(rowMin, Math.min(forward[j], reverse[j]));
+            }
+
+            if (rowMin > threshold) {
+                Metrics.addDtwCells((long) i * m);
+                return rowMin;
+            }
+
+            double[] tmp = forwardPrev;
+            forwardPrev = forward;
+            forward = tmp;
+
+            tmp = reversePrev;
+            reversePrev = reverse;
+            reverse = tmp;
+        }
+
+        Metrics.addDtwCells((long) n * m);
+        return Math.min(forwardPrev[m], reversePrev[m]);
+    }
+}
@@ -0,0 +1,113 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Per-thread buffers that checking code writes its intermediate results into, so that checking a graph does not
+ * allocate arrays in proportion to its number of points once the thread has seen the largest curve. Buffers only grow,
+ * to the largest size asked for.
+ *
+ * A buffer is valid until it is next asked for on the same thread. Each check of one curve (testShape, testPosition)
+ * runs on one thread without waiting for other tasks, so it may use any buffer, but must not keep one after it
+ * returns. Within a check, the DTW kernels use the rows, and normalisation uses the slots.
+ */
+final class Scratch {
+
+    /**
+     * number of rows of the DTW matrix a kernel may use.
+     */
+    static final int ROWS = 8;
+
+    private static final ThreadLocal<Scratch> LOCAL = ThreadLocal.withInitial(Scratch::new);
+
+    private final double[][] rows = new double[ROWS][0];
+    private double[][] xs = new double[0][];
+    private double[][] ys = new double[0][];
+
+    /**
+     * buffers are only created by get().
+     */
+    private Scratch() {
+        //
+    }
+
+    /**
+     * @return the buffers of the current thread
+     */
+    static Scratch get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * @param idx index of the row, less than ROWS
+     * @param size least number of cells
+     * @return a row of at least size cells, with unspecified contents
+     */
+    double[] row(final int idx, final int size) {
+        if (rows[idx].length < size) {
+            rows[idx] = new double[size];
+        }
+        return rows[idx];
+    }
+
+    /**
+     * @param slot index of the slot, for example of a section of a curve
+     * @param size least number of points
+     * @return x-coordinates of the slot, at least size long, with unspecified contents
+     */
+    double[] xs(final int slot, final int size) {
+        grow(slot);
+        if (xs[slot].length < size) {
+            xs[slot] = new double[size];
+        }
+        return xs[slot];
+    }
+
+    /**
+     * @param slot index of the slot, for example of a section of a curve
+     * @param size least number of points
+     * @return y-coordinates of the slot, at least size long, with unspecified contents
+     */
+    double[] ys(final int slot, final int size) {
+        grow(slot);
+        if (ys[slot].length < size) {
+            ys[slot] = new double[size];
+        }
+        return ys[slot];
+    }
+
+    /**
+     * make sure a slot exists.
+     * @param slot index of the slot
+     */
+    private void grow(final int slot) {
+        if (slot < xs.length) {
+            return;
+        }
+        int size = Math.max(slot + 1, 2 * xs.length);
+        double[][] newXs = Arrays.copyOf(xs, size);
+        double[][] newYs = Arrays.copyOf(ys, size);
+        for (int i = xs.length; i < size; i++) {
+            newXs[i] = new double[0];
+            newYs[i] = new double[0];
+        }
+        xs = newXs;
+        ys = newYs;
+    }
+}
@@ -0,0 +1,66 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Section is a run of consecutive points of a curve. Coordinates are kept in two parallel arrays rather than as Point
+ * objects, so the checking kernels walk contiguous memory. A section may be a view of the points from offset to
+ * offset + length of a curve's arrays, as splitCurve makes them. The sections created by normalisation always start
+ * at index 0, though they may be shorter than their arrays (see Scratch), and only those are given to DTW.
+ */
+public final class Section {
+    final double[] xs;
+    final double[] ys;
+    final int offset;
+    private final int length;
+
+    /**
+     * constructor for Section.
+     * @param xs x-coordinates of the points
+     * @param ys y-coordinates of the points, same length as xs
+     */
+    public Section(final double[] xs, final double[] ys) {
+        this(xs, ys, 0, xs.length);
+    }
+
+    /**
+     * constructor for a view of part of two arrays. The arrays are kept, not copied.
+     * @param xs x-coordinates of the points
+     * @param ys y-coordinates of the points, same length as xs
+     * @param offset index of the first point of the section
+     * @param length number of points in the section
+     */
+    public Section(final double[] xs, final double[] ys, final int offset, final int length) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("xs and ys have different lengths");
+        }
+        if (offset < 0 || length < 0 || offset + length > xs.length) {
+            throw new IllegalArgumentException("section is outside the arrays");
+        }
+        this.xs = xs;
+        this.ys = ys;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return number of points in the section
+     */
+    public int length() {
+        return length;
+    }
+}
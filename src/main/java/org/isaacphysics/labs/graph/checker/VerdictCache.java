@@ -0,0 +1,348 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of results of Checker.test, keyed by the content hashes of the answer and of the user's graph.
+ * Entries expire after a fixed time to live. Identical checks that arrive while one of them is being computed wait for
+ * that computation instead of running their own.
+ */
+public final class VerdictCache {
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final ForkJoinPool pool;
+    private final LinkedHashMap<String, Verdict> verdicts;
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * A cached result and the time it expires, as given by System.nanoTime().
+     */
+    private static final class Verdict {
+        private final String result;
+        private final long expiry;
+
+        private Verdict(final String result, final long expiry) {
+            this.result = result;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * constructor for VerdictCache.
+     * @param capacity the maximum number of results kept in the cache, 0 to only de-duplicate concurrent checks
+     * @param ttl how long a result is kept
+     * @param unit unit of ttl
+     */
+    public VerdictCache(final int capacity, final long ttl, final TimeUnit unit) {
+        this(capacity, ttl, unit, null);
+    }
+
+    /**
+     * constructor for VerdictCache.
+     * @param capacity the maximum number of results kept in the cache, 0 to only de-duplicate concurrent checks
+     * @param ttl how long a result is kept
+     * @param unit unit of ttl
+     * @param pool pool that checks evaluate colors and curves in, or null to evaluate them one after another
+     */
+    public VerdictCache(final int capacity, final long ttl, final TimeUnit unit, final ForkJoinPool pool) {
+        if (capacity < 0 || ttl < 0) {
+            throw new IllegalArgumentException("capacity and ttl must not be negative");
+        }
+        this.pool = pool;
+        this.capacity = capacity;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.verdicts = new LinkedHashMap<String, Verdict>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Verdict> eldest) {
+                return size() > VerdictCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * check user's graph against the answer, reusing the result of an identical earlier or concurrent check.
+     *
+     * @param targetJSONString a JSON String which contains the correct answer
+     * @param testJSONString a JSON String which contains user's answer
+     * @return the result of Checker.test
+     * @throws CheckerException thrown by Checker.test, or when interrupted waiting for an identical check
+     * @throws ParseException thrown by Checker.test
+     */
+    public String test(final String targetJSONString, final String testJSONString)
+                                                    throws CheckerException, ParseException {
+        Diagnostics.Trace trace = Diagnostics.trace();
+        try {
+            return test(targetJSONString, testJSONString, trace);
+        } finally {
+            if (trace != null) {
+                trace.end();
+            }
+        }
+    }
+
+    /**
+     * check user's graph against the answer, reusing the result of an identical earlier or concurrent check. Only a
+     * check that is computed adds diagnostics to the trace.
+     *
+     * @param targetJSONString a JSON String which contains the correct answer
+     * @param testJSONString a JSON String which contains user's answer
+     * @param trace diagnostics of the request being graded, or null
+     * @return the result of Checker.test
+     * @throws CheckerException thrown by Checker.test, or when interrupted waiting for an identical check
+     * @throws ParseException thrown by Checker.test
+     */
+    public String test(final String targetJSONString, final String testJSONString, final Diagnostics.Trace trace)
+                                                    throws CheckerException, ParseException {
+        return test(ContentHash.of(targetJSONString) + ":" + ContentHash.of(testJSONString),
+                () -> Checker.test(targetJSONString, testJSONString, pool, trace));
+    }
+
+    /**
+     * check user's graph in the binary encoding of GraphCodec against the answer, reusing the result of an identical
+     * earlier or concurrent check. Only a check that is computed adds diagnostics to the trace.
+     *
+     * @param targetJSONString a JSON String which contains the correct answer
+     * @param testGraph user's answer, encoded by GraphCodec
+     * @param trace diagnostics of the request being graded, or null
+     * @return the result of Checker.test
+     * @throws CheckerException thrown by Checker.test, or when interrupted waiting for an identical check
+     * @throws ParseException thrown by Checker.test
+     */
+    public String test(final String targetJSONString, final byte[] testGraph, final Diagnostics.Trace trace)
+                                                    throws CheckerException, ParseException {
+        // the encodings are keyed apart, so a body that happens to be valid in both cannot share a result
+        return test(ContentHash.of(targetJSONString) + ":binary:" + ContentHash.of(testGraph),
+                () -> Checker.test(targetJSONString, testGraph, pool, trace));
+    }
+
+    /**
+     * check user's graph against the answer, both already parsed, reusing the result of an identical earlier or
+     * concurrent check. Only a check that is computed adds diagnostics to the trace.
+     *
+     * @param targetHash content hash of the answer's JSON
+     * @param target the correct answer
+     * @param testHash content hash of user's JSON
+     * @param test user's answer
+     * @param trace diagnostics of the request being graded, or null
+     * @return the result of Checker.test
+     * @throws CheckerException thrown by Checker.test, or when interrupted waiting for an identical check
+     * @throws ParseException thrown by Checker.test
+     */
+    public String test(final String targetHash, final Graph target, final String testHash, final Graph test,
+                       final Diagnostics.Trace trace) throws CheckerException, ParseException {
+        return test(targetHash + ":" + testHash, () -> Checker.test(targetHash, target, test, pool, trace));
+    }
+
+    /**
+     * check user's graph against an answer that has already been compiled, reusing the result of an identical earlier
+     * or concurrent check. Only a check that is computed adds diagnostics to the trace.
+     *
+     * @param answer the compiled correct answer
+     * @param testJSONString a JSON String which contains user's answer
+     * @param trace diagnostics of the request being graded, or null
+     * @return the result of Checker.test
+     * @throws CheckerException thrown by Checker.test, or when interrupted waiting for an identical check
+     * @throws ParseException thrown by Checker.test
+     */
+    public String test(final CompiledAnswer answer, final String testJSONString, final Diagnostics.Trace trace)
+                                                    throws CheckerException, ParseException {
+        return test(answer.getHash() + ":" + ContentHash.of(testJSONString),
+                () -> Checker.test(answer, testJSONString, pool, trace));
+    }
+
+    /**
+     * check user's graph, already parsed, against an answer that has already been compiled, reusing the result of an
+     * identical earlier or concurrent check. Only a check that is computed adds diagnostics to the trace.
+     *
+     * @param answer the compiled correct answer
+     * @param testHash content hash of user's JSON
+     * @param test user's answer
+     * @param trace diagnostics of the request being graded, or null
+     * @return the result of Checker.test
+     * @throws CheckerException thrown by Checker.test, or when interrupted waiting for an identical check
+     * @throws ParseException thrown by Checker.test
+     */
+    public String test(final CompiledAnswer answer, final String testHash, final Graph test,
+                       final Diagnostics.Trace trace) throws CheckerException, ParseException {
+        return test(answer.getHash() + ":" + testHash, () -> Checker.test(answer, test, pool, trace));
+    }
+
+    /**
+     * A check to run when its result is neither cached nor being computed.
+     */
+    private interface Computation {
+        /**
+         * @return the result of Checker.test
+         * @throws CheckerException thrown by Checker.test
+         * @throws ParseException thrown by Checker.test
+         */
+        String run() throws CheckerException, ParseException;
+    }
+
+    /**
+     * look a check up by its key, and only run it if there is no result for the key and it is not being computed.
+     *
+     * @param key the cache key
+     * @param check the check
+     * @return the result of the check
+     * @throws CheckerException thrown by the check, or when interrupted waiting for an identical check
+     * @throws ParseException thrown by the check
+     */
+    private String test(final String key, final Computation check) throws CheckerException, ParseException {
+        String cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        CompletableFuture<String> computation = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, computation);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+
+        try {
+            // an identical check may have finished between the lookup and claiming the key
+            cached = lookup(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                computation.complete(cached);
+                return cached;
+            }
+
+            misses.incrementAndGet();
+            String result = check.run();
+            store(key, result);
+            computation.complete(result);
+            return result;
+
+        } catch (CheckerException | ParseException | RuntimeException | Error e) {
+            computation.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, computation);
+        }
+    }
+
+    /**
+     * get a result from the cache if it has not expired.
+     * @param key the cache key
+     * @return the cached result, or null if there is none
+     */
+    private String lookup(final String key) {
+        synchronized (verdicts) {
+            Verdict verdict = verdicts.get(key);
+            if (verdict == null) {
+                return null;
+            }
+            if (System.nanoTime() - verdict.expiry >= 0) {
+                verdicts.remove(key);
+                return null;
+            }
+            return verdict.result;
+        }
+    }
+
+    /**
+     * put a result into the cache.
+     * @param key the cache key
+     * @param result the result of Checker.test
+     */
+    private void store(final String key, final String result) {
+        if (capacity == 0 || ttlNanos == 0) {
+            return;
+        }
+        synchronized (verdicts) {
+            verdicts.put(key, new Verdict(result, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    /**
+     * wait for a check run by another thread, and rethrow whatever it threw.
+     * @param computation the other thread's computation
+     * @return the result of Checker.test
+     * @throws CheckerException thrown by Checker.test, or when interrupted
+     * @throws ParseException thrown by Checker.test
+     */
+    private static String await(final CompletableFuture<String> computation) throws CheckerException, ParseException {
+        try {
+            return computation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CheckerException("Interrupted while waiting for an identical check");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CheckerException) {
+                throw (CheckerException) cause;
+            } else if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @return number of checks answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of checks that had to be computed
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of checks that waited for an identical check already being computed
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the number of results currently in the cache, including expired ones not yet evicted
+     */
+    public int size() {
+        synchronized (verdicts) {
+            return verdicts.size();
+        }
+    }
+}
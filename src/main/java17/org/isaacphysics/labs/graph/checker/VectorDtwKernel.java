@@ -0,0 +1,176 @@
+package org.isaacphysics.labs.graph.checker;
+
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * DTW kernel using the Vector API of Java 17, compiled into the multi-release layer of the jar. It needs the JVM to be
+ * started with --add-modules jdk.incubator.vector; Dtw falls back to ScalarDtwKernel when it cannot be loaded.
+ *
+ * The matrix is swept by anti-diagonals instead of rows. Every cell of an anti-diagonal depends only on the two
+ * anti-diagonals before it, so a run of cells is computed with one vector operation. Along an anti-diagonal the index
+ * into the user's section decreases, so the forward direction reads a reversed copy of the user's section, and the
+ * backward direction reads the section itself, both in increasing order.
+ *
+ * Each cell is computed with the same operations in the same order as ScalarDtwKernel, so the results are normally
+ * identical; they are guaranteed to agree within DtwKernel.EPSILON.
+ */
+final class VectorDtwKernel implements DtwKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    private final DtwKernel scalar = new ScalarDtwKernel();
+
+    /**
+     * constructor for VectorDtwKernel.
+     * @throws UnsupportedOperationException if the platform has no vectors of more than one double
+     */
+    VectorDtwKernel() {
+        if (LANES < 2) {
+            throw new UnsupportedOperationException("no SIMD support for doubles");
+        }
+    }
+
+    @Override
+    public double error(final Section trusted, final Section untrusted, final double threshold) {
+        int n = trusted.length();
+        int m = untrusted.length();
+        if (Math.min(n, m) < 2 * LANES) {
+            return scalar.error(trusted, untrusted, threshold);
+        }
+
+        double[] tx = trusted.xs;
+        double[] ty = trusted.ys;
+        double[] ux = untrusted.xs;
+        double[] uy = untrusted.ys;
+        Scratch scratch = Scratch.get();
+        double[] rx = scratch.row(6, m);
+        double[] ry = scratch.row(7, m);
+        for (int k = 0; k < m; k++) {
+            rx[k] = ux[m - 1 - k];
+            ry[k] = uy[m - 1 - k];
+        }
+
+        // cells (i, d - i) of the last three anti-diagonals, indexed by row i
+        double[] forward = scratch.row(0, n + 1);
+        double[] forwardPrev = scratch.row(1, n + 1);
+        double[] forwardPrev2 = scratch.row(2, n + 1);
+        double[] reverse = scratch.row(3, n + 1);
+        double[] reversePrev = scratch.row(4, n + 1);
+        double[] reversePrev2 = scratch.row(5, n + 1);
+        // the rows are reused, but the sweep expects them to start as zeroes
+        Arrays.fill(forward, 0, n + 1, 0);
+        Arrays.fill(forwardPrev, 0, n + 1, 0);
+        Arrays.fill(forwardPrev2, 0, n + 1, 0);
+        Arrays.fill(reverse, 0, n + 1, 0);
+        Arrays.fill(reversePrev, 0, n + 1, 0);
+        Arrays.fill(reversePrev2, 0, n + 1, 0);
+
+        forwardPrev2[0] = 0;
+        reversePrev2[0] = 0;
+        forwardPrev[0] = Dtw.BOUNDARY;
+        forwardPrev[1] = Dtw.BOUNDARY;
+        reversePrev[0] = Dtw.BOUNDARY;
+        reversePrev[1] = Dtw.BOUNDARY;
+        double prevMin = Dtw.BOUNDARY;
+        long cells = 0;
+
+        for (int d = 2; d <= n + m; d++) {
+            int lo = Math.max(1, d - m);
+            int hi = Math.min(n, d - 1);
+            cells += hi - lo + 1;
+            forward[0] = Dtw.BOUNDARY;
+            reverse[0] = Dtw.BOUNDARY;
+            if (d <= n) {
+                forward[d] = Dtw.BOUNDARY;
+                reverse[d] = Dtw.BOUNDARY;
+            }
+
+            DoubleVector mins = DoubleVector.broadcast(SPECIES, Dtw.BOUNDARY);
+            int i = lo;
+            for (; i + LANES - 1 <= hi; i += LANES) {
+                int k = m - d + i;
+                DoubleVector x = DoubleVector.fromArray(SPECIES, tx, i - 1);
+                DoubleVector y = DoubleVector.fromArray(SPECIES, ty, i - 1);
+
+                DoubleVector dx = DoubleVector.fromArray(SPECIES, rx, k).sub(x);
+                DoubleVector dy = DoubleVector.fromArray(SPECIES, ry, k).sub(y);
+                DoubleVector cost = dx.mul(dx).add(dy.mul(dy));
+                DoubleVector f = cost.add(DoubleVector.fromArray(SPECIES, forwardPrev, i - 1)
+                        .min(DoubleVector.fromArray(SPECIES, forwardPrev, i))
+                        .min(DoubleVector.fromArray(SPECIES, forwardPrev2, i - 1)));
+                f.intoArray(forward, i);
+
+                DoubleVector ex = DoubleVector.fromArray(SPECIES, ux, k).sub(x);
+                DoubleVector ey = DoubleVector.fromArray(SPECIES, uy, k).sub(y);
+                DoubleVector reverseCost = ex.mul(ex).add(ey.mul(ey));
+                DoubleVector r = reverseCost.add(DoubleVector.fromArray(SPECIES, reversePrev, i - 1)
+                        .min(DoubleVector.fromArray(SPECIES, reversePrev, i))
+                        .min(DoubleVector.fromArray(SPECIES, reversePrev2, i - 1)));
+                r.intoArray(reverse, i);
+
+                mins = mins.min(f.min(r));
+            }
+
+            double diagonalMin = mins.reduceLanes(VectorOperators.MIN);
+            for (; i <= hi; i++) {
+                int k = m - d + i;
+                double x = tx[i - 1];
+                double y = ty[i - 1];
+
+                double dx = rx[k] - x;
+                double dy = ry[k] - y;
+                double cost = dx * dx + dy * dy;
+                forward[i] = cost + Math.min(Math.min(forwardPrev[i - 1], forwardPrev[i]), forwardPrev2[i - 1]);
+
+                double ex = ux[k] - x;
+                double ey = uy[k] - y;
+                double reverseCost = ex * ex + ey * ey;
+                reverse[i] = reverseCost + Math.min(Math.min(reversePrev[i - 1], reversePrev[i]), reversePrev2[i - 1]);
+
+                diagonalMin = Math.min(diagonalMin, Math.min(forward[i], reverse[i]));
+            }
+
+            // a warping path may step diagonally over one anti-diagonal, but never over two in a row
+            double pairMin = Math.min(prevMin, diagonalMin);
+            if (pairMin > threshold) {
+                Metrics.addDtwCells(cells);
+                return pairMin;
+            }
+            prevMin = diagonalMin;
+
+            double[] tmp = forwardPrev2;
+            forwardPrev2 = forwardPrev;
+            forwardPrev = forward;
+            forward = tmp;
+
+            tmp = reversePrev2;
+            reversePrev2 = reversePrev;
+            reversePrev = reverse;
+            reverse = tmp;
+        }
+
+        Metrics.addDtwCells(cells);
+        return Math.min(forwardPrev[n], reversePrev[n]);
+    }
+}
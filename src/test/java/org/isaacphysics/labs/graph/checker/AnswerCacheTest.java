@@ -0,0 +1,66 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class AnswerCacheTest {
+
+    @Test
+    public void sameAnswerIsCompiledOnce() throws IOException, CheckerException, ParseException {
+        String target = WholeFileReader.readFile("src/main/json/target.json");
+        AnswerCache cache = new AnswerCache(2);
+
+        CompiledAnswer first = cache.get(target);
+        CompiledAnswer second = cache.get(new String(target));
+        assertSame(first, second);
+        assertEquals(ContentHash.of(target), first.getHash());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedAnswerIsEvicted() throws IOException, CheckerException, ParseException {
+        String target = WholeFileReader.readFile("src/main/json/target.json");
+        String test = WholeFileReader.readFile("src/main/json/test.json");
+        String empty = "{\"canvasWidth\":600,\"canvasHeight\":600,\"curves\":[]}";
+        AnswerCache cache = new AnswerCache(2);
+
+        CompiledAnswer compiledTarget = cache.get(target);
+        cache.get(test);
+        cache.get(target);
+        cache.get(empty);
+
+        assertEquals(2, cache.size());
+        assertSame(compiledTarget, cache.get(target));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void cachedAnswerGivesSameResult() throws IOException, CheckerException, ParseException {
+        String target = WholeFileReader.readFile("src/main/json/target.json");
+        String test = WholeFileReader.readFile("src/main/json/test.json");
+
+        String expected = Checker.test(CompiledAnswer.compile(target), test);
+        assertEquals(expected, Checker.test(target, test));
+        assertEquals(expected, Checker.test(target, test));
+    }
+
+}
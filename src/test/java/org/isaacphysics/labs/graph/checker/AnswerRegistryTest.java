@@ -0,0 +1,117 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class AnswerRegistryTest {
+
+    private static final Path TARGET = Paths.get("src/main/json/target.json");
+    private static final Path TEST = Paths.get("src/main/json/test.json");
+
+    private Path directory;
+    private AnswerRegistry registry;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("answers");
+        registry = new AnswerRegistry(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        registry.close();
+        for (Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void answersAreLoadedByQuestionId() throws IOException, CheckerException, ParseException {
+        Files.copy(TARGET, directory.resolve("q1.json"));
+        Files.copy(TEST, directory.resolve("q2.json"));
+        Files.write(directory.resolve("broken.json"), "{\"canvasWidth\" :".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("notes.txt"), "not an answer".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, registry.load());
+        assertEquals(2, registry.size());
+        assertNull(registry.get("broken"));
+        assertNull(registry.get("notes"));
+
+        String target = WholeFileReader.readFile(TARGET.toString());
+        String test = WholeFileReader.readFile(TEST.toString());
+        CompiledAnswer answer = registry.get("q1");
+        assertEquals(ContentHash.of(target), answer.getHash());
+        assertEquals(Checker.test(target, test), Checker.test(answer, test));
+    }
+
+    @Test
+    public void filesAreReadWhole() throws IOException {
+        assertArrayEquals(Files.readAllBytes(TARGET), AnswerRegistry.read(TARGET));
+        assertEquals("q1", AnswerRegistry.questionId(Paths.get("q1.json")));
+        assertNull(AnswerRegistry.questionId(Paths.get(".json")));
+        assertNull(AnswerRegistry.questionId(Paths.get("q1.txt")));
+    }
+
+    @Test
+    public void changedAnswersAreReloaded() throws IOException, InterruptedException, CheckerException, ParseException {
+        String target = WholeFileReader.readFile(TARGET.toString());
+        String test = WholeFileReader.readFile(TEST.toString());
+        Path file = directory.resolve("q1.json");
+        Files.copy(TARGET, file);
+        registry.load();
+        registry.watch();
+        CompiledAnswer before = registry.get("q1");
+
+        Path staged = directory.resolve("q1.tmp");
+        Files.copy(TEST, staged);
+        Files.move(staged, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        String hash = ContentHash.of(Files.readAllBytes(TEST));
+        await(() -> hash.equals(registry.get("q1").getHash()));
+        // a check that started with the old answer still grades against it, while new checks get the new answer
+        assertEquals(Checker.test(target, test), Checker.test(before, test));
+        assertEquals(Checker.test(test, test), Checker.test(registry.get("q1"), test));
+        assertNotEquals(Checker.test(before, test), Checker.test(registry.get("q1"), test));
+
+        Files.copy(TARGET, directory.resolve("q2.json"));
+        await(() -> registry.get("q2") != null);
+
+        Files.delete(file);
+        await(() -> registry.get("q1") == null);
+    }
+}
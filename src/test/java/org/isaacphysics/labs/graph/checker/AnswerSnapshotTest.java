@@ -0,0 +1,200 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class AnswerSnapshotTest {
+
+    private static final Path TARGET = Paths.get("src/main/json/target.json");
+    private static final Path TEST = Paths.get("src/main/json/test.json");
+
+    private Path directory;
+    private Path snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("answers");
+        snapshot = Files.createTempFile("answers", ".snapshot");
+        Files.copy(TARGET, directory.resolve("q1.json"));
+        Files.copy(TEST, directory.resolve("q2.json"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+        Files.deleteIfExists(snapshot);
+    }
+
+    private static void assertSectionEquals(final Section expected, final Section actual) {
+        assertArrayEquals(Arrays.copyOfRange(expected.xs, expected.offset, expected.offset + expected.length()),
+                Arrays.copyOfRange(actual.xs, actual.offset, actual.offset + actual.length()), 0);
+        assertArrayEquals(Arrays.copyOfRange(expected.ys, expected.offset, expected.offset + expected.length()),
+                Arrays.copyOfRange(actual.ys, actual.offset, actual.offset + actual.length()), 0);
+    }
+
+    @Test
+    public void snapshotHoldsTheCompiledAnswers() throws IOException, CheckerException, ParseException {
+        assertEquals(2, AnswerSnapshot.build(directory, snapshot));
+        AnswerSnapshot opened = AnswerSnapshot.open(snapshot);
+        assertEquals(new HashSet<>(Arrays.asList("q1", "q2")), opened.getQuestionIds());
+        assertNull(opened.get("q3"));
+
+        String target = WholeFileReader.readFile(TARGET.toString());
+        CompiledAnswer compiled = CompiledAnswer.compile(target);
+        CompiledAnswer decoded = opened.get("q1");
+        assertEquals(compiled.getHash(), opened.getHash("q1"));
+        assertEquals(compiled.getHash(), decoded.getHash());
+        for (int i = 0; i < Checker.NUM_COLOR; i++) {
+            assertEquals(compiled.getCurves(i).length, decoded.getCurves(i).length);
+            for (int j = 0; j < compiled.getCurves(i).length; j++) {
+                CompiledCurve expected = compiled.getCurves(i)[j];
+                CompiledCurve actual = decoded.getCurves(i)[j];
+                assertSectionEquals(expected.getCurve().getSection(), actual.getCurve().getSection());
+                assertEquals(expected.getSections().length, actual.getSections().length);
+                for (int k = 0; k < expected.getSections().length; k++) {
+                    assertSectionEquals(expected.getSections()[k], actual.getSections()[k]);
+                    assertSame(actual.getCurve().getXs(), actual.getSections()[k].xs);
+                    assertSectionEquals(expected.getShapes()[k], actual.getShapes()[k]);
+                }
+                assertSectionEquals(expected.getPosition(), actual.getPosition());
+                assertEquals(expected.getCurve().getMaxima().length, actual.getCurve().getMaxima().length);
+            }
+        }
+
+        String test = WholeFileReader.readFile(TEST.toString());
+        assertEquals(Checker.test(compiled, test), Checker.test(decoded, test));
+        assertEquals(Checker.test(test, target), Checker.test(opened.get("q2"), target));
+    }
+
+    @Test
+    public void corruptEntryIsRejected() throws IOException, CheckerException, ParseException {
+        AnswerSnapshot.build(directory, snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(snapshot, bytes);
+
+        AnswerSnapshot opened = AnswerSnapshot.open(snapshot);
+        try {
+            opened.get("q2");
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("corrupt"));
+        }
+    }
+
+    @Test
+    public void otherFormatVersionIsRejected() throws IOException, CheckerException, ParseException {
+        AnswerSnapshot.build(directory, snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[7] = (byte) (AnswerSnapshot.FORMAT_VERSION + 1);
+        Files.write(snapshot, bytes);
+
+        try {
+            AnswerSnapshot.open(snapshot);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("format version"));
+        }
+    }
+
+    @Test
+    public void otherCompilerVersionIsRejected() throws IOException, CheckerException, ParseException {
+        AnswerSnapshot.build(directory, snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[11] = (byte) (CompiledAnswer.COMPILER_VERSION + 1);
+        Files.write(snapshot, bytes);
+
+        try {
+            AnswerSnapshot.open(snapshot);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("compiler version"));
+        }
+    }
+
+    @Test
+    public void snapshotOfOtherCompilerIsRebuilt() throws IOException, CheckerException, ParseException {
+        AnswerSnapshot.build(directory, snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[11] = (byte) (CompiledAnswer.COMPILER_VERSION + 1);
+        Files.write(snapshot, bytes);
+
+        try (AnswerRegistry registry = new AnswerRegistry(directory, snapshot)) {
+            assertEquals(2, registry.load());
+            assertEquals(ContentHash.of(Files.readAllBytes(TARGET)), registry.get("q1").getHash());
+        }
+        assertEquals(2, AnswerSnapshot.open(snapshot).getQuestionIds().size());
+    }
+
+    @Test
+    public void registryDecodesAnswersFromSnapshotLazily() throws IOException, CheckerException, ParseException {
+        AnswerSnapshot.build(directory, snapshot);
+        long written = Files.getLastModifiedTime(snapshot).toMillis();
+        byte[] before = Files.readAllBytes(snapshot);
+
+        try (AnswerRegistry registry = new AnswerRegistry(directory, snapshot)) {
+            assertEquals(2, registry.load());
+            assertEquals(2, registry.size());
+            assertEquals(ContentHash.of(Files.readAllBytes(TARGET)), registry.get("q1").getHash());
+        }
+        // up to date, so not written again
+        assertArrayEquals(before, Files.readAllBytes(snapshot));
+        assertEquals(written, Files.getLastModifiedTime(snapshot).toMillis());
+    }
+
+    @Test
+    public void staleSnapshotIsRebuilt() throws IOException, CheckerException, ParseException {
+        AnswerSnapshot.build(directory, snapshot);
+        Files.copy(TARGET, directory.resolve("q2.json"), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(TEST, directory.resolve("q3.json"));
+
+        try (AnswerRegistry registry = new AnswerRegistry(directory, snapshot)) {
+            assertEquals(3, registry.load());
+            assertEquals(ContentHash.of(Files.readAllBytes(TARGET)), registry.get("q2").getHash());
+        }
+
+        AnswerSnapshot rebuilt = AnswerSnapshot.open(snapshot);
+        assertEquals(new HashSet<>(Arrays.asList("q1", "q2", "q3")), rebuilt.getQuestionIds());
+        assertEquals(ContentHash.of(Files.readAllBytes(TARGET)), rebuilt.getHash("q2"));
+        assertEquals(ContentHash.of(Files.readAllBytes(TEST)), rebuilt.getHash("q3"));
+    }
+
+    @Test
+    public void missingSnapshotIsWritten() throws IOException {
+        Files.delete(snapshot);
+        try (AnswerRegistry registry = new AnswerRegistry(directory, snapshot)) {
+            assertEquals(2, registry.load());
+        }
+        assertEquals(2, AnswerSnapshot.open(snapshot).getQuestionIds().size());
+    }
+}
@@ -0,0 +1,135 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockServletConfig;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class BatchCheckerServletTest {
+
+    private BatchCheckerServlet servlet;
+
+    @Before
+    public void setUp() throws ServletException {
+        MockServletConfig config = new MockServletConfig();
+        config.addInitParameter("batchThreads", "4");
+        config.addInitParameter("batchMaxInFlight", "3");
+        servlet = new BatchCheckerServlet();
+        servlet.init(config);
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    /**
+     * The parts of a response the servlet uses. The mock response of spring-test needs spring-web for content types.
+     */
+    private static final class Response {
+        private final StringWriter content = new StringWriter();
+        private int status = HttpServletResponse.SC_OK;
+    }
+
+    private Response post(final String body) throws ServletException, IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(body));
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> {
+                if (method.getName().equals("getReader")) {
+                    return reader;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+        Response result = new Response();
+        PrintWriter writer = new PrintWriter(result.content);
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getWriter":
+                        return writer;
+                    case "setStatus":
+                        result.status = (Integer) args[0];
+                        return null;
+                    case "setContentType":
+                    case "setCharacterEncoding":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+        servlet.doPost(request, response);
+        writer.flush();
+        return result;
+    }
+
+    @Test
+    public void everySubmissionIsGradedOnce() throws IOException, ServletException, ParseException,
+                                                     CheckerException {
+        String target = WholeFileReader.readFile("src/main/json/target.json").trim();
+        String test = WholeFileReader.readFile("src/main/json/test.json").trim();
+
+        StringBuilder body = new StringBuilder(target).append('\n');
+        for (int i = 0; i < 20; i++) {
+            String graph = i % 2 == 0 ? target : test;
+            body.append("{\"id\":").append(i).append(",\"test\":").append(graph).append("}\n");
+        }
+        body.append("{\"id\":\"broken\",\"test\":{}}\n");
+
+        Response response = post(body.toString());
+        String[] lines = response.content.toString().trim().split("\n");
+        assertEquals(21, lines.length);
+
+        HashMap<String, JSONObject> results = new HashMap<>();
+        for (String line : lines) {
+            JSONObject result = (JSONObject) new JSONParser().parse(line);
+            assertNull(results.put((String) result.get("id"), result));
+        }
+        String expectedTest = Parser.getErrCause(Checker.test(target, test));
+        for (int i = 0; i < 20; i++) {
+            JSONObject result = results.get(String.valueOf(i));
+            assertEquals(i % 2 == 0, result.get("equal"));
+            assertEquals(i % 2 == 0 ? "null" : expectedTest, result.get("errCause"));
+        }
+        assertEquals("Invalid JSON: key information missing", results.get("broken").get("error"));
+    }
+
+    @Test
+    public void invalidTargetIsBadRequest() throws IOException, ServletException {
+        Response response = post("{\"canvasWidth\":\n");
+        assertEquals(400, response.status);
+    }
+
+}
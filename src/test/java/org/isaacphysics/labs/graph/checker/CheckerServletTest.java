@@ -15,19 +15,338 @@ package org.isaacphysics.labs.graph.checker;
  * limitations under the License.
  */
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.json.simple.parser.ParseException;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
 public class CheckerServletTest {
 
+    private CheckerServlet servlet;
+
+    @Before
+    public void setUp() throws ServletException {
+        MockServletConfig config = new MockServletConfig();
+        config.addInitParameter("gradingThreads", "1");
+        config.addInitParameter("gradingQueueSize", "1");
+        config.addInitParameter("retryAfterSeconds", "2");
+        servlet = new CheckerServlet();
+        servlet.init(config);
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    /**
+     * The parts of a response the servlet uses, and whether the request has been completed.
+     */
+    private static final class Response {
+        private final StringWriter content = new StringWriter();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private int status = HttpServletResponse.SC_OK;
+        private String retryAfter;
+        private AsyncListener listener;
+    }
+
+    /**
+     * An input stream that hands the whole body to its listener as soon as the listener is set.
+     */
+    private static final class BodyStream extends ServletInputStream {
+        private final ByteArrayInputStream body;
+
+        private BodyStream(final byte[] body) {
+            this.body = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return body.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(final ReadListener listener) {
+            try {
+                listener.onDataAvailable();
+                listener.onAllDataRead();
+            } catch (IOException e) {
+                listener.onError(e);
+            }
+        }
+
+        @Override
+        public int read() {
+            return body.read();
+        }
+    }
+
+    private Response post(final String body) throws ServletException, IOException, InterruptedException {
+        return post(body.getBytes(StandardCharsets.UTF_8), "application/json");
+    }
+
+    private Response post(final byte[] body, final String contentType)
+            throws ServletException, IOException, InterruptedException {
+        Response result = start(body, contentType);
+        assertTrue(result.completed.await(10, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private Response start(final byte[] body, final String contentType) throws ServletException, IOException {
+        Response result = new Response();
+        PrintWriter writer = new PrintWriter(result.content);
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getWriter":
+                        return writer;
+                    case "setStatus":
+                        result.status = (Integer) args[0];
+                        return null;
+                    case "setHeader":
+                        assertEquals("Retry-After", args[0]);
+                        result.retryAfter = (String) args[1];
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+        AsyncContext async = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {AsyncContext.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getResponse":
+                        return response;
+                    case "complete":
+                        writer.flush();
+                        result.completed.countDown();
+                        return null;
+                    case "addListener":
+                        result.listener = (AsyncListener) args[0];
+                        return null;
+                    case "setTimeout":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+        BodyStream input = new BodyStream(body);
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "startAsync":
+                        return async;
+                    case "getInputStream":
+                        return input;
+                    case "getContentType":
+                        return contentType;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+        servlet.doPost(request, response);
+        return result;
+    }
+
+    @Test
+    public void requestIsGradedOffTheRequestThread() throws Exception {
+        String target = WholeFileReader.readFile("src/main/json/target.json").trim();
+        String test = WholeFileReader.readFile("src/main/json/test.json").trim();
+        HashMap<String, String> request = new HashMap<>();
+        request.put("target", target);
+        request.put("test", test);
+
+        Response response = post(new ObjectMapper().writeValueAsString(request));
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+        assertEquals(Parser.getErrCause(Checker.test(target, test)),
+                Parser.getErrCause(response.content.toString().trim()));
+        assertEquals(1, servlet.getGradingQueue().getAccepted());
+    }
+
+    @Test
+    public void nestedRequestIsGradedLikeLegacy() throws Exception {
+        String target = WholeFileReader.readFile("src/main/json/target.json").trim();
+        String test = WholeFileReader.readFile("src/main/json/test.json").trim();
+
+        Response response = post("{\"target\" : " + target + ", \"test\" : " + test + "}");
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+        assertEquals(Parser.getErrCause(Checker.test(target, test)),
+                Parser.getErrCause(response.content.toString().trim()));
+
+        response = post("{\"target\" : " + target + "}");
+        assertEquals("{\"error\" : \"No input!\"}", response.content.toString().trim());
+    }
+
+    @Test
+    public void requestIsGradedAgainstRegisteredAnswer() throws Exception {
+        Path directory = Files.createTempDirectory("answers");
+        Path answer = directory.resolve("q1.json");
+        Files.copy(Paths.get("src/main/json/target.json"), answer);
+        servlet.destroy();
+        MockServletConfig config = new MockServletConfig();
+        config.addInitParameter("answerDirectory", directory.toString());
+        servlet = new CheckerServlet();
+        servlet.init(config);
+        try {
+            assertEquals(1, servlet.getAnswerRegistry().size());
+            String target = WholeFileReader.readFile("src/main/json/target.json");
+            String test = WholeFileReader.readFile("src/main/json/test.json").trim();
+            String expected = Parser.getErrCause(Checker.test(target, test));
+
+            Response response = post("{\"questionId\" : \"q1\", \"test\" : " + test + "}");
+            assertEquals(expected, Parser.getErrCause(response.content.toString().trim()));
+
+            HashMap<String, String> request = new HashMap<>();
+            request.put("questionId", "q1");
+            request.put("test", test);
+            response = post(new ObjectMapper().writeValueAsString(request));
+            assertEquals(expected, Parser.getErrCause(response.content.toString().trim()));
+
+            response = post("{\"questionId\" : \"q2\", \"test\" : " + test + "}");
+            assertEquals("{\"error\" : \"Unknown question!\"}", response.content.toString().trim());
+        } finally {
+            Files.delete(answer);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void binaryRequestIsGradedLikeJson() throws Exception {
+        String target = WholeFileReader.readFile("src/main/json/target.json").trim();
+        String test = WholeFileReader.readFile("src/main/json/test.json").trim();
+        byte[] body = GraphCodec.encodeRequest(target, "binary", Parser.parseGraph(test));
+
+        Response response = post(body, GraphCodec.CONTENT_TYPE);
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+        assertEquals(Parser.getErrCause(Checker.test(target, test)),
+                Parser.getErrCause(response.content.toString().trim()));
+
+        response = post(Arrays.copyOf(body, body.length - 1), GraphCodec.CONTENT_TYPE);
+        assertEquals("{\"error\" : true}", response.content.toString().trim());
+    }
+
+    @Test
+    public void requestIsRejectedWhenQueueIsFull() throws Exception {
+        GradingQueue queue = servlet.getGradingQueue();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // occupy the only grading thread, then the only place in the queue
+            assertTrue(queue.offer(() -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            assertTrue(queue.offer(() -> { }));
+            assertEquals(1, queue.getDepth());
+
+            Response response = post("{\"target\" : \"\", \"test\" : \"\"}");
+            assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.status);
+            assertEquals("2", response.retryAfter);
+            assertEquals(1, queue.getRejected());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void timedOutRequestIsNotGraded() throws Exception {
+        String target = WholeFileReader.readFile("src/main/json/target.json").trim();
+        String test = WholeFileReader.readFile("src/main/json/test.json").trim();
+        byte[] body = ("{\"target\" : " + target + ", \"test\" : " + test + "}").getBytes(StandardCharsets.UTF_8);
+
+        GradingQueue queue = servlet.getGradingQueue();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // occupy the only grading thread, so the request waits in the queue until it times out
+            assertTrue(queue.offer(() -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+
+            Response response = start(body, "application/json");
+            assertEquals(1, queue.getDepth());
+            response.listener.onTimeout(null);
+            assertTrue(response.completed.await(10, TimeUnit.SECONDS));
+            assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.status);
+            assertEquals("2", response.retryAfter);
+        } finally {
+            release.countDown();
+        }
+
+        // the queue runs in order, so once this has run the timed out request has had its turn
+        CountDownLatch drained = new CountDownLatch(1);
+        assertTrue(queue.offer(drained::countDown));
+        assertTrue(drained.await(10, TimeUnit.SECONDS));
+        assertEquals(0, servlet.getVerdictCache().getMisses());
+
+        Response response = post(body, "application/json");
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+        assertEquals(1, servlet.getVerdictCache().getMisses());
+    }
+
+    @Test
+    public void requestLargerThanLimitIsRejected() throws Exception {
+        servlet.destroy();
+        MockServletConfig config = new MockServletConfig();
+        config.addInitParameter("maxRequestBytes", "1000");
+        servlet = new CheckerServlet();
+        servlet.init(config);
+
+        String target = WholeFileReader.readFile("src/main/json/target.json").trim();
+        Response response = post("{\"target\" : " + target + ", \"test\" : " + target + "}");
+        assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, response.status);
+        assertEquals("{\"error\" : \"Request too large\"}", response.content.toString().trim());
+        assertEquals(0, servlet.getGradingQueue().getAccepted());
+
+        response = post("{\"target\" : \"\", \"test\" : \"\"}");
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+    }
+
 //    @Test
 //    public void testCase1() throws IOException, org.isaacphysics.labs.graph.checker.CheckerException, ServletException, ParseException {
 //
@@ -16,6 +16,9 @@ package org.isaacphysics.labs.graph.checker;
  */
 
 
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import org.junit.Rule;
 import org.junit.Test;
@@ -25,6 +28,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.FileReader;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
@@ -116,6 +120,71 @@ public class CheckerTest {
         String resultJSONString = Checker.test(trustedJSONString, untrustedJSONString);
     }
 
+    // adds a copy of the first curve of a graph, drawn in another color
+    @SuppressWarnings("unchecked")
+    private static String withCurveInColor(final String json, final int colorIdx) throws ParseException {
+        JSONObject graph = (JSONObject) new JSONParser().parse(json);
+        JSONArray curves = (JSONArray) graph.get("curves");
+        JSONObject copy = new JSONObject();
+        copy.putAll((JSONObject) curves.get(0));
+        copy.put("colorIdx", colorIdx);
+        curves.add(copy);
+        return graph.toJSONString();
+    }
+
+    // sets the errorPrecedence option of an answer
+    @SuppressWarnings("unchecked")
+    private static String withPrecedence(final String json, final String precedence) throws ParseException {
+        JSONObject graph = (JSONObject) new JSONParser().parse(json);
+        JSONObject options = new JSONObject();
+        options.put("errorPrecedence", precedence);
+        graph.put("options", options);
+        return graph.toJSONString();
+    }
+
+    @Test
+    public void parallelReportsSequentialErrCause() throws IOException, CheckerException, ParseException {
+        String target = WholeFileReader.readFile("src/main/json/target.json");
+        String test = WholeFileReader.readFile("src/main/json/test.json");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            String byColor = withPrecedence(target, Checker.BY_COLOR);
+            String[][] cases = {
+                {target, target},
+                {target, test},
+                {test, target},
+                {target, withCurveInColor(test, 1)},
+                {byColor, withCurveInColor(test, 1)},
+                {withCurveInColor(target, 1), withCurveInColor(test, 1)},
+                {withCurveInColor(target, 2), withCurveInColor(target, 2)},
+            };
+            for (String[] c : cases) {
+                assertEquals(Checker.test(c[0], c[1]), Checker.test(c[0], c[1], pool));
+            }
+
+            // Blue is the wrong shape, and Orange has the wrong number of curves: by default the cheaper error of
+            // Orange is reported, by color the error of Blue
+            assertEquals("Color Orange: You've drawn the wrong number of curves!",
+                    Parser.getErrCause(Checker.test(target, withCurveInColor(test, 1), pool)));
+            assertEquals("Color Blue: curve is the wrong shape!",
+                    Parser.getErrCause(Checker.test(byColor, withCurveInColor(test, 1), pool)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void cheapErrorIsFoundWithoutDtw() throws IOException, CheckerException, ParseException {
+        String target = WholeFileReader.readFile("src/main/json/target.json");
+        String test = withCurveInColor(WholeFileReader.readFile("src/main/json/test.json"), 1);
+        Checker.test(target, target);
+
+        long cells = Metrics.getDtwCells();
+        assertEquals("Color Orange: You've drawn the wrong number of curves!",
+                Parser.getErrCause(Checker.test(target, test)));
+        assertEquals(cells, Metrics.getDtwCells());
+    }
+
 //    @Test
 //    public void testCase7() throws IOException, org.isaacphysics.labs.graph.checker.CheckerException, ParseException {
 //        File file = new File("/Users/YUAN/Documents/workspace/isaac-graph-checker/src/test/java/checkerTestcase.txt");
@@ -0,0 +1,125 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CurveAssignmentTest {
+
+    private static double total(final double[][] cost, final int[] assignment) {
+        double sum = 0;
+        for (int i = 0; i < assignment.length; i++) {
+            sum += cost[i][assignment[i]];
+        }
+        return sum;
+    }
+
+    /**
+     * @return the least total cost over all assignments of rows from 'row' onwards, trying every one
+     */
+    private static double bruteForce(final double[][] cost, final int row, final boolean[] used) {
+        if (row == cost.length) {
+            return 0;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < cost.length; j++) {
+            if (!used[j]) {
+                used[j] = true;
+                best = Math.min(best, cost[row][j] + bruteForce(cost, row + 1, used));
+                used[j] = false;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void solveFindsLeastTotalCost() {
+        Random random = new Random(7);
+        for (int n = 1; n <= 7; n++) {
+            for (int trial = 0; trial < 20; trial++) {
+                double[][] cost = new double[n][n];
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        cost[i][j] = random.nextInt(10) + random.nextDouble();
+                    }
+                }
+                int[] assignment = CurveAssignment.solve(cost);
+                boolean[] seen = new boolean[n];
+                for (int col : assignment) {
+                    assertFalse(seen[col]);
+                    seen[col] = true;
+                }
+                assertEquals(bruteForce(cost, 0, new boolean[n]), total(cost, assignment), 1e-9);
+            }
+        }
+    }
+
+    private static Curve line(final double fromX, final double toX, final double slope, final double intercept) {
+        int n = 50;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = fromX + (toX - fromX) * i / (n - 1);
+            ys[i] = slope * xs[i] + intercept;
+        }
+        Curve curve = new Curve();
+        curve.setPts(xs, ys);
+        curve.setMinX(fromX);
+        curve.setMaxX(toX);
+        curve.setInterX(new Knot[0]);
+        curve.setInterY(new Knot[0]);
+        curve.setMaxima(new Knot[0]);
+        curve.setMinima(new Knot[0]);
+        return curve;
+    }
+
+    @Test
+    public void overlappingCurvesArePairedByPositionNotSmallestX() {
+        CompiledCurve rising = CompiledCurve.compile(line(-1, 1, 0.8, 0.1));
+        CompiledCurve falling = CompiledCurve.compile(line(-0.9, 0.9, -0.8, -0.1));
+
+        // user's rising curve starts to the right of user's falling curve, so sorting by smallest x pairs them wrongly
+        Curve userRising = line(-0.8, 1, 0.8, 0.1);
+        Curve userFalling = line(-0.95, 0.9, -0.8, -0.1);
+        Curve[] matched = CurveAssignment.match(new CompiledCurve[] {rising, falling},
+                new Curve[] {userFalling, userRising});
+
+        assertSame(userRising, matched[0]);
+        assertSame(userFalling, matched[1]);
+    }
+
+    @Test
+    public void knotCountsComeBeforePosition() {
+        Curve withIntercept = line(-1, 1, 0.8, 0.1);
+        withIntercept.setInterY(new Knot[] {new Knot(0, 0.1, null, null, null)});
+        CompiledCurve first = CompiledCurve.compile(withIntercept);
+        CompiledCurve second = CompiledCurve.compile(line(-1, 1, 0.8, 0.2));
+
+        // the nearer curve in position has the wrong number of intercepts
+        Curve userWithout = line(-1, 1, 0.8, 0.1);
+        Curve userWith = line(-1, 1, 0.8, 0.2);
+        userWith.setInterY(new Knot[] {new Knot(0, 0.2, null, null, null)});
+        Curve[] matched = CurveAssignment.match(new CompiledCurve[] {first, second},
+                new Curve[] {userWithout, userWith});
+
+        assertSame(userWith, matched[0]);
+        assertSame(userWithout, matched[1]);
+    }
+}
@@ -0,0 +1,68 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CurveTest {
+
+    @Test
+    public void knotsAreFoundWithinTolerance() {
+        Curve curve = Curves.cubic(101, 1e-12);
+        assertArrayEquals(new int[] {31}, curve.indexOf(curve.getMaxima()));
+        assertArrayEquals(new int[] {69}, curve.indexOf(curve.getMinima()));
+
+        Knot away = new Knot(0.01, 0, null, null, null);
+        assertArrayEquals(new int[] {-1, 50}, curve.indexOf(new Knot[] {away, new Knot(0, 0, null, null, null)}));
+        assertArrayEquals(new int[0], curve.indexOf(null));
+    }
+
+    @Test
+    public void sectionsAreViewsInOrder() {
+        Curve curve = Curves.cubic(101, 1e-12);
+        Section[] sections = Checker.splitCurve(curve);
+
+        assertEquals(3, sections.length);
+        int[] offsets = {0, 31, 69};
+        int[] lengths = {31, 38, 32};
+        for (int i = 0; i < sections.length; i++) {
+            assertSame(curve.getXs(), sections[i].xs);
+            assertSame(curve.getYs(), sections[i].ys);
+            assertEquals(offsets[i], sections[i].offset);
+            assertEquals(lengths[i], sections[i].length());
+        }
+    }
+
+    @Test
+    public void viewsAreNormalisedLikeCopies() {
+        Curve curve = Curves.cubic(101, 1e-12);
+        Section view = curve.getSection(31, 69);
+        Section copy = new Section(Arrays.copyOfRange(curve.getXs(), 31, 69),
+                Arrays.copyOfRange(curve.getYs(), 31, 69));
+
+        Section[] normalised = {Checker.normaliseShape(view), Checker.normalisePosition(view)};
+        Section[] expected = {Checker.normaliseShape(copy), Checker.normalisePosition(copy)};
+        for (int i = 0; i < normalised.length; i++) {
+            assertEquals(0, normalised[i].offset);
+            assertArrayEquals(expected[i].xs, normalised[i].xs, 0);
+            assertArrayEquals(expected[i].ys, normalised[i].ys, 0);
+        }
+    }
+}
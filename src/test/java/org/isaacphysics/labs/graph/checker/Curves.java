@@ -0,0 +1,54 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Curves shared by the tests.
+ */
+final class Curves {
+
+    private Curves() {
+        //
+    }
+
+    /**
+     * @param n number of points
+     * @param offset distance the maximum and minimum are moved off their points, as if rounded on the way to the checker
+     * @return y = x^3 - x sampled at 'n' points from -1.5 to 1.5, with its maximum and minimum at the nearest points
+     */
+    static Curve cubic(final int n, final double offset) {
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = -1.5 + 3.0 * i / (n - 1);
+            ys[i] = xs[i] * xs[i] * xs[i] - xs[i];
+        }
+        int maximum = (int) Math.round((1.5 - 1 / Math.sqrt(3)) / 3 * (n - 1));
+        int minimum = n - 1 - maximum;
+
+        Curve curve = new Curve();
+        curve.setPts(xs, ys);
+        curve.setMinX(-1.5);
+        curve.setMaxX(1.5);
+        curve.setMinY(ys[0]);
+        curve.setMaxY(ys[n - 1]);
+        curve.setInterX(new Knot[0]);
+        curve.setInterY(new Knot[0]);
+        curve.setMaxima(new Knot[] {new Knot(xs[maximum] + offset, ys[maximum], null, null, null)});
+        curve.setMinima(new Knot[] {new Knot(xs[minimum], ys[minimum] - offset, null, null, null)});
+        return curve;
+    }
+}
@@ -0,0 +1,90 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DiagnosticsTest {
+
+    @After
+    public void tearDown() {
+        Diagnostics.configure(Diagnostics.Level.ERROR, 1, null);
+    }
+
+    @Test
+    public void nothingIsTracedBelowInfo() {
+        List<String> records = new ArrayList<>();
+        Diagnostics.configure(Diagnostics.Level.ERROR, 1, records::add);
+        assertNull(Diagnostics.trace());
+        assertFalse(Diagnostics.isEnabled(Diagnostics.Level.DEBUG));
+
+        Diagnostics.error("broken");
+        assertEquals(Collections.singletonList("ERROR: broken"), records);
+
+        Diagnostics.configure(Diagnostics.Level.OFF, 1, records::add);
+        Diagnostics.error("broken");
+        assertEquals(1, records.size());
+    }
+
+    @Test
+    public void oneInEveryNRequestsIsTraced() {
+        Diagnostics.configure(Diagnostics.Level.INFO, 4, s -> { });
+        int traced = 0;
+        for (int i = 0; i < 100; i++) {
+            if (Diagnostics.trace() != null) {
+                traced++;
+            }
+        }
+        assertEquals(25, traced);
+    }
+
+    @Test
+    public void traceIsWrittenAsOneRecord() throws Exception {
+        List<String> records = Collections.synchronizedList(new ArrayList<>());
+        Diagnostics.configure(Diagnostics.Level.DEBUG, 1, records::add);
+
+        String target = WholeFileReader.readFile("src/main/json/target.json").trim();
+        String test = WholeFileReader.readFile("src/main/json/test.json").trim();
+        Checker.test(target, test);
+
+        assertEquals(1, records.size());
+        assertTrue(records.get(0).startsWith("class 0 start test\n    Curve 0\n        sec 0: "));
+    }
+
+    @Test
+    public void asyncSinkWritesEveryRecordBeforeClosing() {
+        List<String> records = Collections.synchronizedList(new ArrayList<>());
+        AsyncDiagnosticsSink sink = new AsyncDiagnosticsSink(records::add, 1000);
+        for (int i = 0; i < 500; i++) {
+            sink.write(String.valueOf(i));
+        }
+        sink.close();
+
+        assertEquals(0, sink.getDropped());
+        assertEquals(500, records.size());
+        assertEquals("499", records.get(499));
+
+        sink.write("late");
+        assertEquals(1, sink.getDropped());
+    }
+}
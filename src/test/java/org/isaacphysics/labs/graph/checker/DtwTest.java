@@ -0,0 +1,251 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DtwTest {
+
+    /**
+     * the original full-matrix implementation, run once forwards and once with the user's section reversed.
+     */
+    static double referenceError(final Section trusted, final Section untrusted) {
+        int n = trusted.length();
+        int m = untrusted.length();
+        double err = Double.POSITIVE_INFINITY;
+
+        for (int direction = 0; direction < 2; direction++) {
+            double[][] dtw = new double[n + 1][m + 1];
+            for (int i = 1; i <= n; i++) {
+                dtw[i][0] = 10000;
+            }
+            for (int j = 1; j <= m; j++) {
+                dtw[0][j] = 10000;
+            }
+            for (int i = 1; i <= n; i++) {
+                for (int j = 1; j <= m; j++) {
+                    int k = j - 1;
+                    if (direction == 1) {
+                        k = m - j;
+                    }
+                    double dist = Math.sqrt(Math.pow(untrusted.xs[k] - trusted.xs[i - 1], 2)
+                            + Math.pow(untrusted.ys[k] - trusted.ys[i - 1], 2));
+                    dtw[i][j] = Math.pow(dist, 2) + Math.min(Math.min(dtw[i - 1][j], dtw[i][j - 1]), dtw[i - 1][j - 1]);
+                }
+            }
+            err = Math.min(err, dtw[n][m]);
+        }
+        return err;
+    }
+
+    static Section randomSection(final Random random, final int length) {
+        double[] xs = new double[length];
+        double[] ys = new double[length];
+        double x = random.nextDouble();
+        double y = random.nextDouble();
+        for (int i = 0; i < length; i++) {
+            x += random.nextGaussian() * 0.05;
+            y += random.nextGaussian() * 0.05;
+            xs[i] = x;
+            ys[i] = y;
+        }
+        return new Section(xs, ys);
+    }
+
+    @Test
+    public void matchesFullMatrix() {
+        Random random = new Random(42);
+        for (int t = 0; t < 200; t++) {
+            Section trusted = randomSection(random, 1 + random.nextInt(60));
+            Section untrusted = randomSection(random, 1 + random.nextInt(60));
+            double expected = referenceError(trusted, untrusted);
+            assertEquals(expected, Dtw.error(trusted, untrusted), 1e-12 * Math.max(1, expected));
+        }
+    }
+
+    @Test
+    public void reversedSectionHasSameError() {
+        Random random = new Random(7);
+        Section trusted = randomSection(random, 40);
+        double[] xs = trusted.xs.clone();
+        double[] ys = trusted.ys.clone();
+        for (int i = 0; i < xs.length / 2; i++) {
+            double tx = xs[i];
+            xs[i] = xs[xs.length - i - 1];
+            xs[xs.length - i - 1] = tx;
+            double ty = ys[i];
+            ys[i] = ys[ys.length - i - 1];
+            ys[ys.length - i - 1] = ty;
+        }
+        assertEquals(0, Dtw.error(trusted, new Section(xs, ys)), 0);
+    }
+
+    @Test
+    public void bandedErrorIsNeverSmaller() {
+        Random random = new Random(11);
+        for (int t = 0; t < 200; t++) {
+            Section trusted = randomSection(random, 1 + random.nextInt(60));
+            Section untrusted = randomSection(random, 1 + random.nextInt(60));
+            double window = random.nextDouble() * 0.5;
+            double banded = Dtw.error(trusted, untrusted, window, Double.POSITIVE_INFINITY);
+            assertTrue(banded < Double.POSITIVE_INFINITY);
+            assertTrue(banded >= Dtw.error(trusted, untrusted));
+        }
+    }
+
+    @Test
+    public void fullWindowIsUnconstrained() {
+        Random random = new Random(13);
+        Section trusted = randomSection(random, 50);
+        Section untrusted = randomSection(random, 35);
+        assertEquals(Dtw.error(trusted, untrusted), Dtw.error(trusted, untrusted, 1, Double.POSITIVE_INFINITY), 0);
+    }
+
+    @Test
+    public void lowerBoundIsBelowBandedError() {
+        Random random = new Random(17);
+        for (int t = 0; t < 200; t++) {
+            Section trusted = randomSection(random, 2 + random.nextInt(60));
+            Section untrusted = randomSection(random, 2 + random.nextInt(60));
+            double window = 0.05 + random.nextDouble() * 0.3;
+            Envelope envelope = Envelope.of(trusted, Dtw.windowRadius(trusted.length(), window));
+            double bound = Dtw.lowerBound(envelope, untrusted, window);
+            assertTrue(bound <= Dtw.error(trusted, untrusted, window, Double.POSITIVE_INFINITY) * (1 + 1e-12));
+        }
+    }
+
+    @Test
+    public void thresholdOnlyChangesErrorsOverIt() {
+        Random random = new Random(19);
+        for (int t = 0; t < 200; t++) {
+            Section trusted = randomSection(random, 1 + random.nextInt(60));
+            Section untrusted = randomSection(random, 1 + random.nextInt(60));
+            double window = t % 2 == 0 ? 1 : 0.1 + random.nextDouble() * 0.4;
+            double threshold = random.nextDouble() * 2;
+            double exact = Dtw.error(trusted, untrusted, window, Double.POSITIVE_INFINITY);
+            double decided = Dtw.error(trusted, untrusted, window, threshold);
+            if (exact <= threshold) {
+                assertEquals(exact, decided, 0);
+            } else {
+                assertTrue(decided > threshold);
+                assertTrue(decided <= exact);
+            }
+        }
+    }
+
+    @Test
+    public void cascadeRefinesToExactErrorNearTolerance() {
+        Random random = new Random(23);
+        Section trusted = randomSection(random, 300);
+        Section untrusted = randomSection(random, 250);
+        double exact = Dtw.error(trusted, untrusted);
+
+        DtwCascade.Decision decision = DtwCascade.error(DtwCascade.pyramid(trusted), untrusted, exact);
+        assertEquals(0, decision.getLevel());
+        assertTrue(decision.getError() >= exact * (1 - 1e-12));
+    }
+
+    @Test
+    public void cascadeDecidesClearCasesCoarsely() {
+        Random random = new Random(29);
+        Section trusted = randomSection(random, 300);
+        double[] xs = trusted.xs.clone();
+        double[] ys = trusted.ys.clone();
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] += 10;
+        }
+        Section[] pyramid = DtwCascade.pyramid(trusted);
+        assertTrue(pyramid.length > 1);
+
+        DtwCascade.Decision far = DtwCascade.error(pyramid, new Section(xs, ys), 0.5);
+        assertTrue(far.getError() > 0.5);
+        assertTrue(far.getLevel() > 0);
+
+        DtwCascade.Decision same = DtwCascade.error(pyramid, trusted, 0.5);
+        assertTrue(same.getError() < 0.5);
+        assertTrue(same.getLevel() > 0);
+    }
+
+    @Test
+    public void selectedKernelMatchesScalar() {
+        DtwKernel selected = Dtw.selectKernel();
+        DtwKernel scalar = new ScalarDtwKernel();
+        Random random = new Random(31);
+        for (int t = 0; t < 200; t++) {
+            Section trusted = randomSection(random, 1 + random.nextInt(200));
+            Section untrusted = randomSection(random, 1 + random.nextInt(200));
+            double expected = scalar.error(trusted, untrusted, Double.POSITIVE_INFINITY);
+            double actual = selected.error(trusted, untrusted, Double.POSITIVE_INFINITY);
+            assertEquals(expected, actual, DtwKernel.EPSILON * Math.max(1, expected));
+
+            double threshold = expected * random.nextDouble() * 2;
+            double decided = selected.error(trusted, untrusted, threshold);
+            if (expected <= threshold) {
+                assertEquals(expected, decided, DtwKernel.EPSILON * Math.max(1, expected));
+            } else {
+                assertTrue(decided > threshold);
+            }
+        }
+    }
+
+    @Test
+    public void scalarKernelCanBeForced() {
+        String previous = System.getProperty(Dtw.KERNEL_PROPERTY);
+        System.setProperty(Dtw.KERNEL_PROPERTY, "scalar");
+        List<String> records = new ArrayList<>();
+        Diagnostics.configure(Diagnostics.Level.INFO, 1, records::add);
+        try {
+            assertTrue(Dtw.selectKernel() instanceof ScalarDtwKernel);
+            assertEquals(Collections.singletonList("INFO: DTW kernel: scalar, forced by " + Dtw.KERNEL_PROPERTY),
+                    records);
+        } finally {
+            Diagnostics.configure(Diagnostics.Level.ERROR, 1, null);
+            if (previous == null) {
+                System.clearProperty(Dtw.KERNEL_PROPERTY);
+            } else {
+                System.setProperty(Dtw.KERNEL_PROPERTY, previous);
+            }
+        }
+    }
+
+    @Test
+    public void selectedKernelIsRecorded() {
+        List<String> records = new ArrayList<>();
+        Diagnostics.configure(Diagnostics.Level.INFO, 1, records::add);
+        try {
+            DtwKernel selected = Dtw.selectKernel();
+            assertEquals(1, records.size());
+            if (Dtw.kernelName(selected).equals(Dtw.VECTOR)) {
+                assertEquals("INFO: DTW kernel: vector", records.get(0));
+            } else if (Dtw.javaVersion() >= 17) {
+                assertTrue(records.get(0).startsWith("ERROR: Cannot load the vector DTW kernel"));
+            } else {
+                assertTrue(records.get(0).startsWith("INFO: DTW kernel: scalar"));
+            }
+        } finally {
+            Diagnostics.configure(Diagnostics.Level.ERROR, 1, null);
+        }
+        assertEquals(Dtw.SCALAR, Dtw.kernelName(new ScalarDtwKernel()));
+    }
+
+}
@@ -0,0 +1,206 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class GraphCodecTest {
+
+    private static final String[] FIXTURES = {"target", "test", "trusted1", "trusted2", "trusted3", "trusted4",
+        "trusted5", "trusted6", "trusted7", "untrusted1", "untrusted2", "untrusted3", "untrusted4", "untrusted5",
+        "untrusted6", "untrusted7"};
+
+    private static String fixture(final String name) throws IOException {
+        return WholeFileReader.readFile("src/main/json/" + name + ".json").trim();
+    }
+
+    /**
+     * @return the graph in a fixture, or null if the fixture is not a graph in the current format
+     */
+    private static Graph parse(final String name) throws IOException {
+        try {
+            return Parser.parseGraph(fixture(name));
+        } catch (CheckerException | ParseException e) {
+            return null;
+        }
+    }
+
+    private static void assertKnotsEqual(final Knot[] expected, final Knot[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals((float) expected[i].x, actual[i].x, Math.ulp((float) expected[i].x));
+            assertEquals((float) expected[i].y, actual[i].y, Math.ulp((float) expected[i].y));
+            assertSymbolEquals(expected[i].symbol, actual[i].symbol);
+            assertSymbolEquals(expected[i].xSymbol, actual[i].xSymbol);
+            assertSymbolEquals(expected[i].ySymbol, actual[i].ySymbol);
+        }
+    }
+
+    private static void assertSymbolEquals(final Symbol expected, final Symbol actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals((float) expected.x, actual.x, 0);
+        assertEquals((float) expected.y, actual.y, 0);
+        assertEquals(expected.text, actual.text);
+    }
+
+    @Test
+    public void fixturesRoundTripAtFloatPrecision() throws IOException, CheckerException {
+        int roundTripped = 0;
+        for (String name : FIXTURES) {
+            Graph graph = parse(name);
+            if (graph == null) {
+                continue;
+            }
+            Graph decoded = GraphCodec.decode(GraphCodec.encode(graph));
+            roundTripped++;
+
+            assertEquals((float) graph.getCanvasWidth(), decoded.getCanvasWidth(), 0);
+            assertEquals((float) graph.getCanvasHeight(), decoded.getCanvasHeight(), 0);
+            assertEquals(graph.getDescriptor(), decoded.getDescriptor());
+            assertEquals(name, graph.getCurves().length, decoded.getCurves().length);
+            for (int i = 0; i < graph.getCurves().length; i++) {
+                Curve expected = graph.getCurves()[i];
+                Curve actual = decoded.getCurves()[i];
+                assertEquals(expected.getColorIdx(), actual.getColorIdx());
+                assertEquals((float) expected.getMinX(), actual.getMinX(), 0);
+                assertEquals((float) expected.getMaxY(), actual.getMaxY(), 0);
+                assertEquals(expected.getNumPts(), actual.getNumPts());
+                for (int j = 0; j < expected.getNumPts(); j++) {
+                    // deltas are rounded against the reconstructed point, so the error does not accumulate
+                    float x = (float) expected.getXs()[j];
+                    float y = (float) expected.getYs()[j];
+                    assertEquals(name, x, actual.getXs()[j], 2 * Math.ulp(x));
+                    assertEquals(name, y, actual.getYs()[j], 2 * Math.ulp(y));
+                }
+                assertKnotsEqual(expected.getInterX(), actual.getInterX());
+                assertKnotsEqual(expected.getInterY(), actual.getInterY());
+                assertKnotsEqual(expected.getMaxima(), actual.getMaxima());
+                assertKnotsEqual(expected.getMinima(), actual.getMinima());
+            }
+        }
+        assertTrue(roundTripped > 0);
+    }
+
+    @Test
+    public void reencodingIsExact() throws IOException, CheckerException {
+        for (String name : FIXTURES) {
+            Graph graph = parse(name);
+            if (graph != null) {
+                byte[] encoded = GraphCodec.encode(graph);
+                assertArrayEquals(name, encoded, GraphCodec.encode(GraphCodec.decode(encoded)));
+            }
+        }
+    }
+
+    @Test
+    public void knotOnPointStaysOnPoint() throws CheckerException {
+        Curve curve = new Curve();
+        curve.setPts(new double[] {-1.1, 0.30000000000000004, 2.7}, new double[] {3.3, 0, -4.9});
+        curve.setInterX(new Knot[] {new Knot(0.30000000000000004, 0, new Symbol(0.3, 0.1, "A"), null, null)});
+        curve.setInterY(new Knot[0]);
+        curve.setMaxima(new Knot[] {new Knot(0.5, 1.5, null, null, null)});
+        curve.setMinima(new Knot[0]);
+        Graph graph = new Graph();
+        graph.setCurves(new Curve[] {curve});
+
+        Curve decoded = GraphCodec.decode(GraphCodec.encode(graph)).getCurves()[0];
+        Knot knot = decoded.getInterX()[0];
+        assertEquals(decoded.getXs()[1], knot.x, 0);
+        assertEquals(decoded.getYs()[1], knot.y, 0);
+        assertArrayEquals(new int[] {1}, decoded.indexOf(decoded.getInterX()));
+        assertEquals("A", knot.symbol.text);
+        assertEquals(0.5, decoded.getMaxima()[0].x, 0);
+    }
+
+    @Test
+    public void binaryIsGradedLikeJson() throws IOException, CheckerException, ParseException {
+        String[][] pairs = {{"target", "test"}, {"test", "target"}, {"target", "target"}, {"trusted2", "test"}};
+        for (String[] pair : pairs) {
+            String target = fixture(pair[0]);
+            assertEquals(Arrays.toString(pair), Checker.test(target, fixture(pair[1])),
+                    Checker.test(target, GraphCodec.encode(parse(pair[1])), null, null));
+        }
+    }
+
+    @Test
+    public void binaryIsMuchSmallerThanJson() throws IOException {
+        for (String name : FIXTURES) {
+            Graph graph = parse(name);
+            if (graph != null && graph.getCurves().length > 0) {
+                int json = fixture(name).getBytes(StandardCharsets.UTF_8).length;
+                assertTrue(name, GraphCodec.encode(graph).length * 3 < json);
+            }
+        }
+    }
+
+    @Test
+    public void requestRoundTrips() throws IOException, CheckerException {
+        String target = fixture("target");
+        Graph test = parse("test");
+        GraphCodec.Submission submission = GraphCodec.decodeRequest(GraphCodec.encodeRequest(target, "case 1", test));
+        assertEquals(target, submission.getTarget());
+        assertEquals("case 1", submission.getDescription());
+        assertArrayEquals(GraphCodec.encode(test), submission.getTest());
+
+        assertNull(GraphCodec.decodeRequest(GraphCodec.encodeRequest(target, null, test)).getDescription());
+    }
+
+    @Test
+    public void contentTypeIsMatchedWithoutParameters() {
+        assertTrue(GraphCodec.isBinary(GraphCodec.CONTENT_TYPE));
+        assertTrue(GraphCodec.isBinary("Application/X-Graph-Binary; charset=binary"));
+        assertFalse(GraphCodec.isBinary("application/json"));
+        assertFalse(GraphCodec.isBinary(null));
+    }
+
+    @Test
+    public void malformedInputIsRejected() throws IOException {
+        byte[] encoded = GraphCodec.encode(parse("test"));
+        byte[][] malformed = {
+            new byte[0],
+            Arrays.copyOf(encoded, encoded.length - 1),
+            Arrays.copyOf(encoded, encoded.length + 1),
+            {0x7f, (byte) 0x80, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0},
+        };
+        for (byte[] bytes : malformed) {
+            try {
+                GraphCodec.decode(bytes);
+                fail("decoded " + bytes.length + " bytes");
+            } catch (CheckerException e) {
+                assertTrue(e.getMessage().startsWith("Invalid"));
+            }
+        }
+
+        byte[] request = GraphCodec.encodeRequest("{}", null, parse("test"));
+        request[2] = (byte) (GraphCodec.VERSION + 1);
+        try {
+            GraphCodec.decodeRequest(request);
+            fail();
+        } catch (CheckerException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+}
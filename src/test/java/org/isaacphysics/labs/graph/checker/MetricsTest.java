@@ -0,0 +1,123 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void valuesFallInTheBucketOfTheirUpperBound() {
+        Histogram histogram = new Histogram(10, 3);
+        long[] values = {-5, 0, 10, 11, 20, 21, 40, 41, 1000};
+        for (long value : values) {
+            histogram.record(value);
+        }
+        assertEquals(4, histogram.size());
+        assertEquals(40, histogram.upperBound(2));
+        assertEquals(3, histogram.count(0));
+        assertEquals(2, histogram.count(1));
+        assertEquals(2, histogram.count(2));
+        assertEquals(2, histogram.count(3));
+        assertEquals(1143, histogram.sum());
+    }
+
+    @Test
+    public void histogramIsCumulativeInPrometheusFormat() {
+        Histogram histogram = new Histogram(1, 2);
+        histogram.record(1);
+        histogram.record(5);
+        StringBuilder out = new StringBuilder();
+        histogram.writePrometheus(out, "x", "stage=\"a\",", 1);
+        assertEquals("x_bucket{stage=\"a\",le=\"1.0\"} 1\n"
+                + "x_bucket{stage=\"a\",le=\"2.0\"} 1\n"
+                + "x_bucket{stage=\"a\",le=\"+Inf\"} 2\n"
+                + "x_sum{stage=\"a\"} 6.0\n"
+                + "x_count{stage=\"a\"} 2\n", out.toString());
+    }
+
+    @Test
+    public void everyCheckIsCountedAndTimed() throws Exception {
+        String target = WholeFileReader.readFile("src/main/json/target.json").trim();
+        String test = WholeFileReader.readFile("src/main/json/test.json").trim();
+        Metrics.Outcome outcome = Checker.outcome(Parser.getErrCause(Checker.test(target, test)));
+
+        long outcomes = Metrics.getOutcomes(outcome);
+        long parsed = Metrics.getStage(Metrics.Stage.PARSE).sum();
+        long checks = count(Metrics.getChecks());
+        long cells = Metrics.getDtwCells();
+
+        Checker.test(target, test);
+
+        assertEquals(outcomes + 1, Metrics.getOutcomes(outcome));
+        assertEquals(checks + 1, count(Metrics.getChecks()));
+        assertTrue(Metrics.getStage(Metrics.Stage.PARSE).sum() > parsed);
+        assertTrue(Metrics.getDtwCells() > cells);
+
+        StringBuilder out = new StringBuilder();
+        Metrics.writePrometheus(out);
+        assertTrue(out.toString().contains("# TYPE graph_checker_stage_seconds histogram\n"));
+        assertTrue(out.toString().contains("graph_checker_outcomes_total{outcome=\"correct\"} "));
+    }
+
+    @Test
+    public void timingsOfAThreadAreReused() {
+        long checks = count(Metrics.getChecks());
+        Metrics.Timings first = Metrics.Timings.start(false);
+        Metrics.Timings nested = Metrics.Timings.start(false);
+        assertNotSame(first, nested);
+        nested.record(Metrics.Outcome.INVALID);
+        first.add(Metrics.Stage.PARSE, System.nanoTime());
+        first.record(Metrics.Outcome.INVALID);
+        assertEquals(checks + 2, count(Metrics.getChecks()));
+
+        assertSame(first, Metrics.Timings.start(false));
+        Metrics.Timings parallel = Metrics.Timings.start(true);
+        assertNotSame(first, parallel);
+        parallel.record(Metrics.Outcome.INVALID);
+        first.record(Metrics.Outcome.INVALID);
+    }
+
+    @Test
+    public void dtwKernelInUseIsExported() {
+        StringBuilder out = new StringBuilder();
+        MetricsServlet.writeDtwKernel(out, Dtw.SCALAR);
+        assertEquals("# HELP graph_checker_dtw_kernel Kernel computing DTW, 1 for the one in use.\n"
+                + "# TYPE graph_checker_dtw_kernel gauge\n"
+                + "graph_checker_dtw_kernel{kernel=\"vector\"} 0\n"
+                + "graph_checker_dtw_kernel{kernel=\"scalar\"} 1\n", out.toString());
+    }
+
+    @Test
+    public void errCausesAreClassified() {
+        assertEquals(Metrics.Outcome.CORRECT, Checker.outcome(null));
+        assertEquals(Metrics.Outcome.WRONG_CURVE_COUNT,
+                Checker.outcome("Color Blue: You've drawn the wrong number of curves!"));
+        assertEquals(Metrics.Outcome.WRONG_TURNING_POINTS,
+                Checker.outcome("Color Red:One of the curve contains wrong number of turning points."));
+        assertEquals(Metrics.Outcome.WRONG_SHAPE, Checker.outcome("Color Blue: curve is the wrong shape!"));
+    }
+
+    private static long count(final Histogram histogram) {
+        long count = 0;
+        for (int i = 0; i < histogram.size(); i++) {
+            count += histogram.count(i);
+        }
+        return count;
+    }
+}
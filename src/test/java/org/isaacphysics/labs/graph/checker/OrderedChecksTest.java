@@ -0,0 +1,126 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OrderedChecksTest {
+
+    @Test
+    public void firstFailureInOrderWins() throws CheckerException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        CountDownLatch laterFailed = new CountDownLatch(1);
+
+        OrderedChecks checks = new OrderedChecks();
+        checks.add(() -> null);
+        checks.add(() -> {
+            // fail only after the check after it has already failed
+            try {
+                laterFailed.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "first";
+        });
+        checks.add(() -> {
+            laterFailed.countDown();
+            return "second";
+        });
+
+        assertEquals("first", checks.run(pool));
+        pool.shutdown();
+    }
+
+    @Test
+    public void sequentialAndParallelAgree() throws CheckerException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        OrderedChecks checks = new OrderedChecks();
+        for (int i = 0; i < 50; i++) {
+            final int idx = i;
+            checks.add(() -> idx % 17 == 16 ? "failed " + idx : null);
+        }
+        assertEquals("failed 16", checks.run());
+        assertEquals("failed 16", checks.run(pool));
+        pool.shutdown();
+    }
+
+    @Test(expected = CheckerException.class)
+    public void exceptionBeforeFailureIsThrown() throws CheckerException {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        OrderedChecks checks = new OrderedChecks();
+        checks.add(() -> {
+            throw new CheckerException("wrong number of sections.");
+        });
+        checks.add(() -> "failed");
+        try {
+            checks.run(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void cheapFailureSkipsLaterChecks() throws CheckerException {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        AtomicInteger expensive = new AtomicInteger();
+        OrderedChecks checks = new OrderedChecks();
+        checks.add(() -> {
+            expensive.incrementAndGet();
+            return null;
+        });
+        checks.add(() -> "cheap", true);
+        checks.add(() -> {
+            expensive.incrementAndGet();
+            return "expensive";
+        });
+
+        assertEquals("cheap", checks.run());
+        assertEquals("cheap", checks.run(pool));
+        assertEquals(2, expensive.get());
+        pool.shutdown();
+    }
+
+    @Test
+    public void earlierExpensiveFailureWinsOverCheapFailure() throws CheckerException {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        OrderedChecks checks = new OrderedChecks();
+        checks.add(() -> null, true);
+        checks.add(() -> "expensive");
+        checks.add(() -> "cheap", true);
+
+        assertEquals("expensive", checks.run());
+        assertEquals("expensive", checks.run(pool));
+        pool.shutdown();
+    }
+
+    @Test
+    public void passesWhenEveryCheckPasses() throws CheckerException {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        OrderedChecks checks = new OrderedChecks();
+        checks.add(() -> null);
+        checks.add(() -> null);
+        assertNull(checks.run(pool));
+        pool.shutdown();
+    }
+
+}
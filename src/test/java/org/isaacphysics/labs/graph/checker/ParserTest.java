@@ -29,4 +29,53 @@ public class ParserTest {
         }
     }
 
+    @Test
+    public void parseGraphReadsCurves() throws IOException, CheckerException, ParseException {
+        Graph graph = Parser.parseGraph(WholeFileReader.readFile("src/main/json/target.json"));
+        assertEquals(1377, graph.getCanvasWidth(), 0);
+        assertEquals(737, graph.getCanvasHeight(), 0);
+        assertEquals("", graph.getDescriptor());
+        assertEquals(1, graph.getCurves().length);
+
+        Curve curve = graph.getCurves()[0];
+        assertEquals(-0.0708, curve.getXs()[0], 0);
+        assertEquals(0.3629, curve.getYs()[0], 0);
+    }
+
+    @Test
+    public void problemsAreReportedInFieldOrder() throws CheckerException, ParseException {
+        // colorIdx is missing, and minima, which comes first in the document, has the wrong format
+        String json = "{\"curves\":[{\"minima\":{},\"pts\":[],\"minX\":0,\"maxX\":0,\"minY\":0,\"maxY\":0,"
+                + "\"interX\":[],\"interY\":[],\"maxima\":[]}],\"canvasWidth\":600,\"canvasHeight\":600}";
+        try {
+            Parser.parseGraph(json);
+            fail("expected CheckerException");
+        } catch (CheckerException exn) {
+            assertThat(exn.getMessage(), is("Invalid JSON: key information missing"));
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void malformedJSONIsParseException() throws CheckerException, ParseException {
+        Parser.parseGraph("{\"canvasWidth\":600} {");
+    }
+
+    @Test
+    public void parseGraphReadsOptions() throws CheckerException, ParseException {
+        Graph graph = Parser.parseGraph("{\"canvasWidth\":600,\"canvasHeight\":400,\"curves\":[],"
+                + "\"options\":{\"warpingWindow\":10,\"coarseToFine\":true}}");
+        assertEquals(10, graph.getOptions().getWarpingWindow(), 0);
+        assertTrue(graph.getOptions().isCoarseToFine());
+
+        graph = Parser.parseGraph("{\"canvasWidth\":600,\"canvasHeight\":400,\"curves\":[]}");
+        assertEquals(100, graph.getOptions().getWarpingWindow(), 0);
+        assertFalse(graph.getOptions().isCoarseToFine());
+    }
+
+    @Test(expected = CheckerException.class)
+    public void invalidWarpingWindowIsRejected() throws CheckerException, ParseException {
+        Parser.parseGraph("{\"canvasWidth\":600,\"canvasHeight\":400,\"curves\":[],"
+                + "\"options\":{\"warpingWindow\":120}}");
+    }
+
 }
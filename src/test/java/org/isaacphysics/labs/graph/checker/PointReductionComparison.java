@@ -0,0 +1,108 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Shows how the verdicts on the fixtures change when points are reduced before checking. For every fixture, the
+ * answer is checked with each method of PointReduction, and the verdict and total number of points are printed.
+ *
+ * Run from the root of the project, optionally with the fixture files to use as arguments.
+ */
+public final class PointReductionComparison {
+
+    private static final String[] METHODS = {PointReduction.NONE, PointReduction.RDP, PointReduction.ARC_LENGTH};
+
+    private PointReductionComparison() {
+        //
+    }
+
+    private static int countPts(final Graph graph) {
+        int count = 0;
+        for (Curve curve : graph.getCurves()) {
+            count += curve.getNumPts();
+        }
+        return count;
+    }
+
+    private static String check(final String target, final String test, final String method) {
+        try {
+            Graph graph = Parser.parseGraph(target);
+            graph.getOptions().setPointReduction(method);
+            CompiledAnswer answer = CompiledAnswer.compile(ContentHash.of(target) + ":" + method, graph);
+
+            Graph reduced = Parser.parseGraph(test);
+            int before = countPts(reduced);
+            PointReduction.reduce(reduced.getCurves(), graph.getOptions());
+            String verdict = Parser.getErrCause(Checker.test(answer, test));
+            return verdict + " [" + before + " -> " + countPts(reduced) + " pts]";
+        } catch (Exception e) {
+            return "error: " + e.getMessage();
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        ArrayList<String[]> cases = new ArrayList<>();
+        String[] files = args.length > 0 ? args
+                : new String[] {"src/test/java/org/isaacphysics/labs/graph/checker/checkerTestcase.txt"};
+        for (String file : files) {
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            while (true) {
+                String descriptor = br.readLine();
+                String target = br.readLine();
+                String test = br.readLine();
+                br.readLine();
+                br.readLine();
+                br.readLine();
+                if (test == null) {
+                    break;
+                }
+                cases.add(new String[] {descriptor, target, test});
+            }
+            br.close();
+        }
+        String target = WholeFileReader.readFile("src/main/json/target.json");
+        String test = WholeFileReader.readFile("src/main/json/test.json");
+        cases.add(new String[] {"target.json vs test.json", target, test});
+        cases.add(new String[] {"target.json vs target.json", target, target});
+
+        int changed = 0;
+        for (String[] c : cases) {
+            System.out.println(c[0]);
+            String baseline = null;
+            boolean same = true;
+            for (String method : METHODS) {
+                String result = check(c[1], c[2], method);
+                String verdict = result.replaceAll(" \\[.*\\]$", "");
+                if (baseline == null) {
+                    baseline = verdict;
+                } else {
+                    same &= baseline.equals(verdict);
+                }
+                System.out.println("    " + method + ": " + result);
+            }
+            if (!same) {
+                changed++;
+                System.out.println("    CHANGED");
+            }
+        }
+        System.out.println(changed + " of " + cases.size() + " verdicts change");
+    }
+}
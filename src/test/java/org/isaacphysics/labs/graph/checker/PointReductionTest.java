@@ -0,0 +1,84 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class PointReductionTest {
+
+    private static Curve targetCurve() throws IOException, CheckerException, ParseException {
+        return Parser.parseGraph(WholeFileReader.readFile("src/main/json/target.json")).getCurves()[0];
+    }
+
+    private static boolean hasPoint(final Curve curve, final Knot knot) {
+        for (int i = 0; i < curve.getNumPts(); i++) {
+            if (curve.getXs()[i] == knot.x && curve.getYs()[i] == knot.y) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // intercepts are not always points of the curve, but every one that is must be kept
+    private static void assertKnotsKept(final Knot[] knots, final Curve original, final Curve curve) {
+        for (Knot knot : knots) {
+            assertEquals("knot (" + knot.x + ", " + knot.y + ")", hasPoint(original, knot), hasPoint(curve, knot));
+        }
+    }
+
+    private static void assertReduced(final CheckerOptions options) throws IOException, CheckerException,
+                                                                             ParseException {
+        Curve original = targetCurve();
+        Curve curve = targetCurve();
+        PointReduction.reduce(curve, options);
+
+        assertTrue(curve.getNumPts() < original.getNumPts());
+        assertKnotsKept(curve.getInterX(), original, curve);
+        assertKnotsKept(curve.getInterY(), original, curve);
+        assertKnotsKept(curve.getMaxima(), original, curve);
+        assertKnotsKept(curve.getMinima(), original, curve);
+        assertEquals(Checker.splitCurve(original).length, Checker.splitCurve(curve).length);
+    }
+
+    @Test
+    public void rdpKeepsKnots() throws IOException, CheckerException, ParseException {
+        CheckerOptions options = new CheckerOptions();
+        options.setPointReduction(PointReduction.RDP);
+        assertReduced(options);
+    }
+
+    @Test
+    public void arcLengthKeepsKnots() throws IOException, CheckerException, ParseException {
+        CheckerOptions options = new CheckerOptions();
+        options.setPointReduction(PointReduction.ARC_LENGTH);
+        options.setArcLengthPoints(8);
+        assertReduced(options);
+    }
+
+    @Test
+    public void noneKeepsEveryPoint() throws IOException, CheckerException, ParseException {
+        Curve curve = targetCurve();
+        double[] xs = curve.getXs();
+        PointReduction.reduce(curve, new CheckerOptions());
+        assertSame(xs, curve.getXs());
+    }
+
+}
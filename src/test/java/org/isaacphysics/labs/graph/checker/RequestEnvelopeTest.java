@@ -0,0 +1,93 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class RequestEnvelopeTest {
+
+    private static String fixture(final String name) throws IOException {
+        return WholeFileReader.readFile("src/main/json/" + name + ".json").trim();
+    }
+
+    private static RequestEnvelope parse(final String body) throws CheckerException, IOException {
+        return RequestEnvelope.parse(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void graphsAreParsedFromNestedObjects() throws IOException, CheckerException, ParseException {
+        String target = fixture("target");
+        String test = fixture("test");
+        RequestEnvelope req = parse("{\"description\" : \"v2\", \"test\" : " + test + ", \"target\" : " + target + "}");
+
+        assertTrue(req.isComplete());
+        assertFalse(req.isLegacy());
+        assertEquals("v2", req.getDescription());
+        assertEquals(target, req.getTargetJSONString());
+        assertEquals(test, req.getTestJSONString());
+        assertEquals(ContentHash.of(target), req.getTargetHash());
+        assertEquals(ContentHash.of(test), req.getTestHash());
+        assertEquals(Parser.parseGraph(test).getCurves().length, req.getTest().getCurves().length);
+
+        assertEquals(Checker.test(target, test),
+                Checker.test(req.getTargetHash(), req.getTarget(), req.getTest(), null, null));
+    }
+
+    @Test
+    public void legacyEnvelopeKeepsGraphsAsStrings() throws IOException, CheckerException {
+        HashMap<String, String> request = new HashMap<>();
+        request.put("target", fixture("target"));
+        request.put("test", fixture("test"));
+        request.put("unknown", "ignored");
+        RequestEnvelope req = parse(new ObjectMapper().writeValueAsString(request));
+
+        assertTrue(req.isComplete());
+        assertTrue(req.isLegacy());
+        assertNull(req.getDescription());
+        assertEquals(fixture("target"), req.getTargetJSONString());
+        assertEquals(fixture("test"), req.getTestJSONString());
+    }
+
+    @Test
+    public void missingGraphIsIncomplete() throws IOException, CheckerException {
+        assertFalse(parse("{\"target\" : " + fixture("target") + "}").isComplete());
+        assertFalse(parse("{\"test\" : \"{}\"}").isComplete());
+    }
+
+    @Test(expected = CheckerException.class)
+    public void mixedEnvelopeIsRejected() throws IOException, CheckerException {
+        parse("{\"target\" : " + fixture("target") + ", \"test\" : \"{}\"}");
+    }
+
+    @Test(expected = CheckerException.class)
+    public void invalidGraphIsRejected() throws IOException, CheckerException {
+        parse("{\"target\" : {\"canvasWidth\" : 600}, \"test\" : {\"canvasWidth\" : 600}}");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void malformedBodyIsRejected() throws IOException, CheckerException {
+        parse("{\"target\" : {\"canvasWidth\" : 600,");
+    }
+}
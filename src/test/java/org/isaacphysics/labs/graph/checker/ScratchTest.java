@@ -0,0 +1,77 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class ScratchTest {
+
+    /**
+     * @return bytes allocated by the current thread so far, or -1 if the JVM does not count them
+     */
+    private static long allocated() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean counted = (com.sun.management.ThreadMXBean) threads;
+        if (!counted.isThreadAllocatedMemorySupported() || !counted.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return counted.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void checkingACurveAllocatesAlmostNothing() throws CheckerException {
+        Assume.assumeTrue(allocated() >= 0);
+        CompiledCurve trusted = CompiledCurve.compile(Curves.cubic(300, 0));
+        Curve untrusted = Curves.cubic(300, 0);
+
+        for (int i = 0; i < 500; i++) {
+            assertTrue(Checker.testShape(trusted, untrusted, 0, null));
+            assertTrue(Checker.testPosition(trusted, untrusted, 0, null));
+        }
+
+        int checks = 50;
+        long before = allocated();
+        for (int i = 0; i < checks; i++) {
+            Checker.testShape(trusted, untrusted, 0, null);
+            Checker.testPosition(trusted, untrusted, 0, null);
+        }
+        long perCheck = (allocated() - before) / checks;
+
+        // what is left is in proportion to the number of sections, not of points; a single array of the normalised
+        // x-coordinates would take 2400 bytes
+        assertTrue(perCheck + " bytes per check", perCheck < 1024);
+    }
+
+    @Test
+    public void buffersOnlyGrow() {
+        Scratch scratch = Scratch.get();
+        double[] row = scratch.row(0, 100);
+        assertSame(row, scratch.row(0, 10));
+        assertTrue(scratch.row(0, 1000).length >= 1000);
+
+        double[] xs = scratch.xs(5, 100);
+        assertSame(xs, scratch.xs(5, 50));
+        assertEquals(100, scratch.ys(5, 100).length);
+    }
+}
@@ -0,0 +1,105 @@
+package org.isaacphysics.labs.graph.checker;
+/**
+ * Copyright 2016 Junwei Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class VerdictCacheTest {
+
+    @Test
+    public void identicalCheckIsAnsweredFromCache() throws IOException, CheckerException, ParseException {
+        String target = WholeFileReader.readFile("src/main/json/target.json");
+        String test = WholeFileReader.readFile("src/main/json/test.json");
+        VerdictCache cache = new VerdictCache(10, 1, TimeUnit.HOURS);
+
+        String first = cache.test(target, test);
+        String second = cache.test(target, test);
+
+        assertEquals(Checker.test(target, test), first);
+        assertEquals(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void expiredResultIsComputedAgain() throws IOException, CheckerException, ParseException {
+        String target = WholeFileReader.readFile("src/main/json/target.json");
+        VerdictCache cache = new VerdictCache(10, 0, TimeUnit.SECONDS);
+
+        cache.test(target, target);
+        cache.test(target, target);
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void failedCheckIsNotCached() throws IOException, ParseException {
+        String target = WholeFileReader.readFile("src/main/json/target.json");
+        VerdictCache cache = new VerdictCache(10, 1, TimeUnit.HOURS);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.test(target, "{\"canvasHeight\":600,\"curves\":[]}");
+                fail("expected CheckerException");
+            } catch (CheckerException exn) {
+                assertEquals("Invalid JSON: key information missing", exn.getMessage());
+            }
+        }
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void concurrentIdenticalChecksAgree() throws Exception {
+        final String target = WholeFileReader.readFile("src/main/json/target.json");
+        final String test = WholeFileReader.readFile("src/main/json/test.json");
+        final VerdictCache cache = new VerdictCache(10, 1, TimeUnit.HOURS);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            results.add(pool.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return cache.test(target, test);
+                }
+            }));
+        }
+
+        String expected = Checker.test(target, test);
+        for (Future<String> result : results) {
+            assertEquals(expected, result.get());
+        }
+        pool.shutdown();
+
+        assertEquals(32, cache.getHits() + cache.getMisses() + cache.getCoalesced());
+        assertTrue(cache.getMisses() < 32);
+    }
+
+}